@@ -8,25 +8,50 @@ import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Configuración de caché en memoria para el historial temporal del chatbot
- * El historial NO se persiste en BD, solo en memoria durante la sesión
+ * Configuración de caché en memoria
+ * - Usuarios autenticados (por userId del JWT) para no consultar la BD en cada request
+ * - Contexto del chatbot ya renderizado por usuario y día
+ *
+ * El historial reciente del chatbot vive en ChatSessionStore (persistido por ChatHistoryWriter)
  */
 @Configuration
 @EnableCaching
 public class CacheConfig {
 
-    @Value("${chatbot.session.timeout:3600}")
-    private int sessionTimeout;
+    @Value("${security.principal-cache.ttl:600}")
+    private int principalCacheTtl;
+
+    @Value("${security.principal-cache.max-size:5000}")
+    private int principalCacheMaxSize;
+
+    @Value("${chatbot.context.cache-ttl:1800}")
+    private int contextCacheTtl;
+
+    @Value("${chatbot.context.cache-max-size:5000}")
+    private int contextCacheMaxSize;
 
     @Bean
     public CacheManager cacheManager() {
-        CaffeineCacheManager cacheManager = new CaffeineCacheManager("chatHistory");
-        cacheManager.setCaffeine(Caffeine.newBuilder()
-                .expireAfterWrite(sessionTimeout, TimeUnit.SECONDS) // Expira después de 1 hora
-                .maximumSize(1000)); // Máximo 1000 conversaciones en memoria
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setCacheNames(List.of()); // Solo las cachés registradas abajo
+
+        // Usuarios autenticados: se invalida al modificar perfil, contraseña o preferencias
+        cacheManager.registerCustomCache("userPrincipals", Caffeine.newBuilder()
+                .expireAfterWrite(principalCacheTtl, TimeUnit.SECONDS)
+                .maximumSize(principalCacheMaxSize)
+                .build());
+
+        // Contexto renderizado del chatbot (clave: userId:fecha)
+        // Se invalida al modificar tareas, eventos o hábitos; el TTL es solo un respaldo
+        cacheManager.registerCustomCache("chatContext", Caffeine.newBuilder()
+                .expireAfterWrite(contextCacheTtl, TimeUnit.SECONDS)
+                .maximumSize(contextCacheMaxSize)
+                .build());
+
         return cacheManager;
     }
-}
\ No newline at end of file
+}
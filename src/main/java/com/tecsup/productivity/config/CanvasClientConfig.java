@@ -0,0 +1,67 @@
+package com.tecsup.productivity.config;
+
+import com.tecsup.productivity.util.ConnectionPoolStats;
+import io.netty.channel.ChannelOption;
+import io.netty.resolver.DefaultAddressResolverGroup;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Cliente HTTP compartido para la API de Canvas (TECSUP)
+ * - Pool de conexiones con keep-alive (un sub-pool por host, cada uno con su límite)
+ * - gzip, timeouts de conexión y de respuesta (tecsup.api.*)
+ * - Métricas del pool en /api/diagnostic/canvas
+ */
+@Configuration
+public class CanvasClientConfig {
+
+    // Timeout de respuesta (ms)
+    @Value("${tecsup.api.timeout:30000}")
+    private int timeout;
+
+    @Value("${tecsup.api.connect-timeout:5000}")
+    private int connectTimeout;
+
+    @Value("${tecsup.api.max-connections-per-host:20}")
+    private int maxConnectionsPerHost;
+
+    // Tiempo que una conexión ociosa se mantiene abierta para reutilizarla (ms)
+    @Value("${tecsup.api.keep-alive:30000}")
+    private long keepAlive;
+
+    @Bean
+    public ConnectionPoolStats canvasPoolStats() {
+        return new ConnectionPoolStats();
+    }
+
+    @Bean
+    public RestTemplate canvasRestTemplate(ConnectionPoolStats canvasPoolStats) {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("canvas-pool")
+                .maxConnections(maxConnectionsPerHost)
+                .pendingAcquireTimeout(Duration.ofMillis(timeout))
+                .maxIdleTime(Duration.ofMillis(keepAlive))
+                .evictInBackground(Duration.ofSeconds(60))
+                .metrics(true, () -> canvasPoolStats)
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                // Mismo resolver DNS que el cliente de Gemini
+                .resolver(DefaultAddressResolverGroup.INSTANCE)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
+                .responseTimeout(Duration.ofMillis(timeout))
+                .keepAlive(true)
+                .compress(true);
+
+        ReactorClientHttpRequestFactory requestFactory = new ReactorClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(timeout));
+
+        return new RestTemplate(requestFactory);
+    }
+}
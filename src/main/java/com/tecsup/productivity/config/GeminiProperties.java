@@ -11,6 +11,7 @@ public class GeminiProperties {
     private String key;
     private String url;
     private String model;
+    private String lightModel;
     private int maxTokens = 500;
     private double temperature = 0.7;
 }
@@ -5,6 +5,7 @@ package com.tecsup.productivity.controller;
 
 import com.tecsup.productivity.dto.request.CompleteRegisterRequest;
 import com.tecsup.productivity.dto.request.LoginRequest;
+import com.tecsup.productivity.dto.request.RefreshTokenRequest;
 import com.tecsup.productivity.dto.request.ValidateRegisterRequest;
 import com.tecsup.productivity.dto.response.ApiResponse;
 import com.tecsup.productivity.dto.response.AuthResponse;
@@ -59,8 +60,25 @@ public class AuthController {
         );
     }
 
+    @PostMapping("/refresh")
+    public ResponseEntity<ApiResponse<AuthResponse>> refresh(
+            @Valid @RequestBody RefreshTokenRequest request
+    ) {
+        AuthResponse response = authService.refresh(request);
+        return ResponseEntity.ok(
+                ApiResponse.success("Token renovado exitosamente", response)
+        );
+    }
+
     @PostMapping("/logout")
-    public ResponseEntity<ApiResponse<Void>> logout() {
+    public ResponseEntity<ApiResponse<Void>> logout(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @RequestBody(required = false) RefreshTokenRequest request
+    ) {
+        String accessToken = authHeader != null && authHeader.startsWith("Bearer ")
+                ? authHeader.substring(7)
+                : null;
+        authService.logout(accessToken, request != null ? request.getRefreshToken() : null);
         return ResponseEntity.ok(
                 ApiResponse.success("Sesión cerrada exitosamente", null)
         );
@@ -3,15 +3,28 @@ package com.tecsup.productivity.controller;
 import com.tecsup.productivity.dto.request.ChatMessageRequest;
 import com.tecsup.productivity.dto.response.ApiResponse;
 import com.tecsup.productivity.dto.response.ChatMessageResponse;
+import com.tecsup.productivity.dto.response.DailyBriefingResponse;
+import com.tecsup.productivity.service.ChatHistoryWriter;
+import com.tecsup.productivity.service.ChatIntentRouter;
 import com.tecsup.productivity.service.ChatService;
 import com.tecsup.productivity.service.ChatbotContextService;
+import com.tecsup.productivity.service.ConversationSummarizer;
+import com.tecsup.productivity.service.DailyBriefingService;
+import com.tecsup.productivity.service.GeminiAIService;
 import com.tecsup.productivity.util.SecurityUtil;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -26,6 +39,11 @@ public class ChatController {
 
     private final ChatService chatService;
     private final ChatbotContextService chatbotContextService;
+    private final GeminiAIService geminiAIService;
+    private final ChatIntentRouter chatIntentRouter;
+    private final ChatHistoryWriter chatHistoryWriter;
+    private final ConversationSummarizer conversationSummarizer;
+    private final DailyBriefingService dailyBriefingService;
     private final SecurityUtil securityUtil;
 
     /**
@@ -35,34 +53,59 @@ public class ChatController {
      * Body: { "mensaje": "¿Qué tengo hoy?" }
      *
      * Para: Chatbot flotante (enviar pregunta)
+     * Asíncrono: el hilo del servlet se libera mientras se espera a Gemini
      */
     @PostMapping
-    public ResponseEntity<ApiResponse<ChatMessageResponse>> sendMessage(
+    public Mono<ResponseEntity<ApiResponse<ChatMessageResponse>>> sendMessage(
             @Valid @RequestBody ChatMessageRequest request
     ) {
         log.info("💬 [POST] /api/chat - Mensaje: {}", request.getMensaje());
 
-        ChatMessageResponse response = chatService.sendMessage(request);
+        return chatService.sendMessage(request)
+                .map(response -> ResponseEntity.ok(
+                        ApiResponse.success("Respuesta generada", response)
+                ));
+    }
 
-        return ResponseEntity.ok(
-                ApiResponse.success("Respuesta generada", response)
-        );
+    /**
+     * POST /api/chat/stream
+     *
+     * Enviar mensaje al chatbot y recibir la respuesta en streaming (SSE)
+     * Body: { "mensaje": "¿Qué tengo hoy?" }
+     * Eventos: chunk { "text" }, done { ChatMessageResponse }, error { "message" }
+     *
+     * Para: Chatbot flotante (mostrar la respuesta mientras se genera)
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamMessage(
+            @Valid @RequestBody ChatMessageRequest request
+    ) {
+        log.info("💬 [POST] /api/chat/stream - Mensaje: {}", request.getMensaje());
+
+        return chatService.streamMessage(request);
     }
 
     /**
-     * GET /api/chat/history
+     * GET /api/chat/history?before=2025-01-15T10:30:00&beforeId=120&limit=20
      *
-     * Obtener historial temporal de la sesión
-     * (No persiste en BD, solo en caché)
+     * Obtener historial de la conversación (orden cronológico)
+     * Sin "before": los mensajes más recientes
+     * Con "before" y "beforeId": la página anterior (createdAt e id del mensaje más antiguo recibido;
+     * el id desempata mensajes con la misma fecha)
      *
      * Para: Mostrar conversación anterior en el chatbot
      */
     @GetMapping("/history")
-    public ResponseEntity<ApiResponse<List<ChatMessageResponse>>> getSessionHistory() {
+    public ResponseEntity<ApiResponse<List<ChatMessageResponse>>> getSessionHistory(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime before,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
         log.info("📋 [GET] /api/chat/history");
 
-        Long userId = securityUtil.getCurrentUser().getId();
-        List<ChatMessageResponse> history = chatService.getSessionHistory(userId);
+        Long userId = securityUtil.getCurrentUserId();
+        List<ChatMessageResponse> history = chatService.getSessionHistory(
+                userId, before, beforeId, Math.min(Math.max(limit, 1), 100));
 
         return ResponseEntity.ok(
                 ApiResponse.success("Historial obtenido", history)
@@ -72,7 +115,7 @@ public class ChatController {
     /**
      * DELETE /api/chat/history
      *
-     * Limpiar historial temporal
+     * Limpiar historial (también el persistido)
      *
      * Para: Botón "Limpiar conversación" en chatbot
      */
@@ -80,7 +123,7 @@ public class ChatController {
     public ResponseEntity<ApiResponse<Void>> clearHistory() {
         log.info("🗑️ [DELETE] /api/chat/history");
 
-        Long userId = securityUtil.getCurrentUser().getId();
+        Long userId = securityUtil.getCurrentUserId();
         chatService.clearHistory(userId);
 
         return ResponseEntity.ok(
@@ -88,6 +131,24 @@ public class ChatController {
         );
     }
 
+    /**
+     * GET /api/chat/briefing
+     *
+     * Resumen del día generado por el chatbot
+     * (Precalculado en la noche; se regenera si los datos del día cambiaron)
+     *
+     * Para: Tarjeta "Tu día" al abrir la app
+     */
+    @GetMapping("/briefing")
+    public Mono<ResponseEntity<ApiResponse<DailyBriefingResponse>>> getBriefing() {
+        log.info("🌅 [GET] /api/chat/briefing");
+
+        return dailyBriefingService.getTodayBriefing()
+                .map(briefing -> ResponseEntity.ok(
+                        ApiResponse.success("Resumen del día obtenido", briefing)
+                ));
+    }
+
     /**
      * GET /api/chat/context
      *
@@ -118,11 +179,16 @@ public class ChatController {
     public ResponseEntity<ApiResponse<Map<String, Object>>> getStatus() {
         log.info("✅ [GET] /api/chat/status");
 
-        Map<String, Object> status = Map.of(
-                "active", true,
-                "service", "Gemini AI",
-                "version", "1.0"
-        );
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("active", geminiAIService.isAvailable());
+        status.put("service", "Gemini AI");
+        status.put("version", "1.0");
+        status.put("resilience", geminiAIService.getResilienceStats());
+        status.put("responseCache", geminiAIService.getResponseCacheStats());
+        status.put("intentRouter", chatIntentRouter.getStats());
+        status.put("historyWriter", chatHistoryWriter.getStats());
+        status.put("summary", conversationSummarizer.getStats());
+        status.put("prompt", chatbotContextService.getPromptStats());
 
         return ResponseEntity.ok(
                 ApiResponse.success("Chatbot activo", status)
@@ -1,5 +1,9 @@
 package com.tecsup.productivity.controller;
 
+import com.tecsup.productivity.service.GeminiAIService;
+import com.tecsup.productivity.service.SyncJobService;
+import com.tecsup.productivity.util.ConnectionPoolStats;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -18,6 +22,7 @@ import java.util.Map;
 @Slf4j
 @RestController
 @RequestMapping("/api/diagnostic")
+@RequiredArgsConstructor
 public class NetworkDiagnosticController {
 
     private static final String GEMINI_HOST = "generativelanguage.googleapis.com";
@@ -27,6 +32,10 @@ public class NetworkDiagnosticController {
             GEMINI_HOST
     };
 
+    private final GeminiAIService geminiAIService;
+    private final ConnectionPoolStats canvasPoolStats;
+    private final SyncJobService syncJobService;
+
     /**
      * GET /api/diagnostic/network
      *
@@ -122,6 +131,24 @@ public class NetworkDiagnosticController {
         Map<String, Object> dnsTest = testDNS(GEMINI_HOST);
         info.put("dns_status", dnsTest);
 
+        // Circuit breaker y bulkhead de las llamadas a Gemini
+        info.put("resilience", geminiAIService.getResilienceStats());
+        info.put("response_cache", geminiAIService.getResponseCacheStats());
+        info.put("instruction_cache", geminiAIService.getInstructionCacheStats());
+
+        return ResponseEntity.ok(info);
+    }
+
+    /**
+     * GET /api/diagnostic/canvas
+     *
+     * Uso del pool de conexiones hacia Canvas y cola de sincronizaciones
+     */
+    @GetMapping("/canvas")
+    public ResponseEntity<Map<String, Object>> checkCanvas() {
+        Map<String, Object> info = new HashMap<>();
+        info.put("connection_pools", canvasPoolStats.getStats());
+        info.put("sync_jobs", syncJobService.getStats());
         return ResponseEntity.ok(info);
     }
 }
\ No newline at end of file
@@ -5,7 +5,8 @@ package com.tecsup.productivity.controller;
 
 import com.tecsup.productivity.dto.request.SyncTecsupRequest;
 import com.tecsup.productivity.dto.response.ApiResponse;
-import com.tecsup.productivity.dto.response.SyncResponse;
+import com.tecsup.productivity.dto.response.SyncJobResponse;
+import com.tecsup.productivity.service.SyncJobService;
 import com.tecsup.productivity.service.TecsupSyncService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -13,6 +14,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+
 @Slf4j
 @RestController
     @RequestMapping("/api/sync")
@@ -20,20 +23,21 @@ import org.springframework.web.bind.annotation.*;
 public class SyncController {
 
     private final TecsupSyncService tecsupSyncService;
+    private final SyncJobService syncJobService;
 
     /**
      * ✅ Habilitar sincronización TECSUP
      * POST /api/sync/tecsup/enable
+     * Valida y guarda el token; la importación corre en segundo plano (202 + id del trabajo)
      */
     @PostMapping("/tecsup/enable")
-    public ResponseEntity<ApiResponse<SyncResponse>> enableSync(
+    public ResponseEntity<ApiResponse<SyncJobResponse>> enableSync(
             @Valid @RequestBody SyncTecsupRequest request
     ) {
         log.info("[SYNC] Habilitando sincronización TECSUP");
-        SyncResponse response = tecsupSyncService.enableSync(request);
-        return ResponseEntity.ok(
-                ApiResponse.success("Sincronización TECSUP habilitada", response)
-        );
+        tecsupSyncService.enableSync(request);
+        SyncJobResponse job = syncJobService.submitForCurrentUser();
+        return accepted("Sincronización TECSUP habilitada. Importando datos...", job);
     }
 
     /**
@@ -54,11 +58,20 @@ public class SyncController {
      * POST /api/sync/tecsup/refresh
      */
     @PostMapping("/tecsup/refresh")
-    public ResponseEntity<ApiResponse<SyncResponse>> refreshSync() {
+    public ResponseEntity<ApiResponse<SyncJobResponse>> refreshSync() {
         log.info("[SYNC] Re-sincronizando datos TECSUP");
-        SyncResponse response = tecsupSyncService.refreshSync();
+        SyncJobResponse job = syncJobService.submitForCurrentUser();
+        return accepted("Actualización de datos TECSUP en curso", job);
+    }
+
+    /**
+     * ✅ Estado de una sincronización
+     * GET /api/sync/jobs/{jobId}
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ApiResponse<SyncJobResponse>> getJob(@PathVariable Long jobId) {
         return ResponseEntity.ok(
-                ApiResponse.success("Datos TECSUP actualizados", response)
+                ApiResponse.success("Estado de la sincronización", syncJobService.getJob(jobId))
         );
     }
 
@@ -68,13 +81,16 @@ public class SyncController {
      */
     @Deprecated
     @PostMapping("/tecsup")
-    public ResponseEntity<ApiResponse<SyncResponse>> syncTecsup(
+    public ResponseEntity<ApiResponse<SyncJobResponse>> syncTecsup(
             @Valid @RequestBody SyncTecsupRequest request
     ) {
         log.warn("[SYNC] Endpoint /sync/tecsup está deprecado, usa /sync/tecsup/enable");
-        SyncResponse response = tecsupSyncService.enableSync(request);
-        return ResponseEntity.ok(
-                ApiResponse.success("Sincronización completada", response)
-        );
+        return enableSync(request);
+    }
+
+    private ResponseEntity<ApiResponse<SyncJobResponse>> accepted(String message, SyncJobResponse job) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/sync/jobs/" + job.getJobId()))
+                .body(ApiResponse.success(message, job));
     }
 }
\ No newline at end of file
@@ -11,5 +11,7 @@ import lombok.NoArgsConstructor;
 @Builder
 public class AuthResponse {
     private String token;
+    private String refreshToken;
+    private Long expiresIn; // segundos de vida del access token
     private UserResponse user;
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.tecsup.productivity.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DailyBriefingResponse {
+    private LocalDate date;
+    private String content;
+    private LocalDateTime generatedAt;
+    // true si se generó con datos que ya cambiaron (no se pudo regenerar)
+    private Boolean stale;
+}
@@ -0,0 +1,36 @@
+package com.tecsup.productivity.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.tecsup.productivity.entity.SyncJob;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SyncJobResponse {
+    private Long jobId;
+    private SyncJob.JobStatus status;
+
+    // Progreso: cursos descargados de Canvas
+    private Integer cursosTotal;
+    private Integer cursosProcesados;
+
+    // Resultado (al terminar)
+    private Integer eventosSincronizados;
+    private Integer tareasSincronizadas;
+    private String mensaje;
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<SyncResponse.CourseError> cursosConError;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -1,10 +1,13 @@
 package com.tecsup.productivity.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -13,4 +16,17 @@ public class SyncResponse {
     private Integer eventosSincronizados;
     private Integer tareasSincronizadas;
     private String mensaje;
-}
\ No newline at end of file
+
+    // Cursos que no se pudieron importar (el resto sí se sincronizó)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<CourseError> cursosConError;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CourseError {
+        private Long courseId;
+        private String curso;
+        private String error;
+    }
+}
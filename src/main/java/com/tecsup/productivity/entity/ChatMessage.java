@@ -0,0 +1,38 @@
+package com.tecsup.productivity.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Mensaje del chatbot (pregunta + respuesta)
+ * Se inserta en lotes desde ChatHistoryWriter (write-behind), no con save()
+ */
+@Entity
+@Table(name = "chat_messages",
+        indexes = @Index(name = "idx_chat_user_created", columnList = "user_id, created_at")
+)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String mensaje;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String respuesta;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,43 @@
+package com.tecsup.productivity.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Resumen del día generado por el chatbot (uno por usuario y fecha)
+ * context_hash identifica el contexto con el que se generó: si cambia, se regenera
+ */
+@Entity
+@Table(name = "daily_briefings",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "date"}),
+        indexes = @Index(name = "idx_briefing_user_date", columnList = "user_id, date")
+)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DailyBriefing {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private LocalDate date;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String content;
+
+    @Column(name = "context_hash", nullable = false, length = 64)
+    private String contextHash;
+
+    @Column(name = "generated_at", nullable = false)
+    private LocalDateTime generatedAt;
+}
@@ -15,6 +15,10 @@ import java.time.LocalTime;
         @Index(name = "idx_user_fecha", columnList = "user_id, fecha"),
         @Index(name = "idx_user_categoria", columnList = "user_id, categoria"),
         @Index(name = "idx_event_user_source", columnList = "user_id, source") // ✅ Único
+}, uniqueConstraints = {
+        // Un registro por item de Canvas (la sincronización hace upsert por esta clave)
+        @UniqueConstraint(name = "uk_event_user_source_external",
+                columnNames = {"user_id", "source", "tecsup_external_id"})
 })
 @Getter
 @Setter
@@ -61,6 +65,10 @@ public class Event {
     @Column(name = "tecsup_external_id", length = 100)
     private String tecsupExternalId; // ID remoto de Canvas
 
+    // Hash de los campos que vienen de Canvas: si no cambia, la sincronización no escribe
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     @Column(name = "sincronizado_tecsup")
     @Builder.Default
     private Boolean sincronizadoTecsup = false;
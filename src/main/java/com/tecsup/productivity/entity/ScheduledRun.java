@@ -0,0 +1,36 @@
+package com.tecsup.productivity.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Ejecución reclamada de una tarea programada (una por nombre y fecha)
+ * Con varias instancias, solo la que inserta la fila ejecuta la tarea ese día
+ */
+@Entity
+@Table(name = "scheduled_runs",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"name", "run_date"})
+)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ScheduledRun {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 50)
+    private String name;
+
+    @Column(name = "run_date", nullable = false)
+    private LocalDate runDate;
+
+    @Column(name = "claimed_at", nullable = false)
+    private LocalDateTime claimedAt;
+}
@@ -0,0 +1,84 @@
+package com.tecsup.productivity.entity;
+
+import com.tecsup.productivity.dto.response.SyncResponse;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Sincronización TECSUP en cola (la procesa SyncJobService en segundo plano)
+ * active_user_id solo tiene valor mientras el trabajo está pendiente o en curso:
+ * su índice único garantiza un único trabajo activo por usuario
+ */
+@Entity
+@Table(name = "sync_jobs", indexes = {
+        @Index(name = "idx_sync_job_status_created", columnList = "status, created_at"),
+        @Index(name = "idx_sync_job_user", columnList = "user_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SyncJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "active_user_id", unique = true)
+    private Long activeUserId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private JobStatus status;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    @Column(name = "cursos_total")
+    private Integer cursosTotal;
+
+    @Column(name = "cursos_procesados")
+    private Integer cursosProcesados;
+
+    @Column(name = "eventos_sincronizados")
+    private Integer eventosSincronizados;
+
+    @Column(name = "tareas_sincronizadas")
+    private Integer tareasSincronizadas;
+
+    @Column(columnDefinition = "TEXT")
+    private String mensaje;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "cursos_con_error", columnDefinition = "jsonb")
+    private List<SyncResponse.CourseError> cursosConError;
+
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    // Lo renueva periódicamente el worker que lo ejecuta: sin latido = trabajo abandonado
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    public enum JobStatus {
+        PENDING, RUNNING, COMPLETED, FAILED
+    }
+}
@@ -14,6 +14,10 @@ import java.time.LocalDateTime;
         @Index(name = "idx_user_completed", columnList = "user_id, completed"),
         @Index(name = "idx_user_prioridad", columnList = "user_id, prioridad"),
         @Index(name = "idx_task_user_source", columnList = "user_id, source")
+}, uniqueConstraints = {
+        // Un registro por item de Canvas (la sincronización hace upsert por esta clave)
+        @UniqueConstraint(name = "uk_task_user_source_external",
+                columnNames = {"user_id", "source", "tecsup_external_id"})
 })
 @Getter
 @Setter
@@ -58,6 +62,10 @@ public class Task {
     @Column(name = "tecsup_external_id", length = 100)
     private String tecsupExternalId; // ID remoto de Canvas
 
+    // Hash de los campos que vienen de Canvas: si no cambia, la sincronización no escribe
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     @Column(name = "sincronizado_tecsup")
     @Builder.Default
     private Boolean sincronizadoTecsup = false;
@@ -0,0 +1,18 @@
+// ============================================
+// TooManyRequestsException.java
+// ============================================
+package com.tecsup.productivity.exception;
+
+import lombok.Getter;
+
+@Getter
+public class TooManyRequestsException extends RuntimeException {
+
+    // Segundos sugeridos al cliente antes de reintentar (header Retry-After)
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+}
@@ -0,0 +1,44 @@
+package com.tecsup.productivity.repository;
+
+import com.tecsup.productivity.entity.ChatMessage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
+
+    /**
+     * Mensajes más recientes del usuario (más nuevo primero)
+     */
+    @Query("SELECT m FROM ChatMessage m " +
+            "WHERE m.userId = :userId " +
+            "ORDER BY m.createdAt DESC, m.id DESC")
+    List<ChatMessage> findLatest(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * Página anterior a un mensaje (keyset por (createdAt, id), mismo orden que findLatest)
+     * Con beforeId = 0 solo cuentan los mensajes con createdAt estrictamente anterior
+     */
+    @Query("SELECT m FROM ChatMessage m " +
+            "WHERE m.userId = :userId " +
+            "AND (m.createdAt < :before OR (m.createdAt = :before AND m.id < :beforeId)) " +
+            "ORDER BY m.createdAt DESC, m.id DESC")
+    List<ChatMessage> findBefore(
+            @Param("userId") Long userId,
+            @Param("before") LocalDateTime before,
+            @Param("beforeId") Long beforeId,
+            Pageable pageable
+    );
+
+    /**
+     * Usuarios que usaron el chatbot desde una fecha (para el resumen del día)
+     */
+    @Query("SELECT DISTINCT m.userId FROM ChatMessage m WHERE m.createdAt > :since")
+    List<Long> findActiveUserIdsSince(@Param("since") LocalDateTime since);
+}
@@ -0,0 +1,24 @@
+package com.tecsup.productivity.repository;
+
+import com.tecsup.productivity.entity.DailyBriefing;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface DailyBriefingRepository extends JpaRepository<DailyBriefing, Long> {
+
+    Optional<DailyBriefing> findByUserIdAndDate(Long userId, LocalDate date);
+
+    /**
+     * Eliminar resúmenes de días anteriores
+     */
+    @Modifying
+    @Query("DELETE FROM DailyBriefing b WHERE b.date < :date")
+    int deleteOlderThan(@Param("date") LocalDate date);
+}
@@ -142,4 +142,14 @@ public interface EventRepository extends JpaRepository<Event, Long> {
             @Param("userId") Long userId,
             @Param("fecha") LocalDate fecha
     );
-}
\ No newline at end of file
+
+    /**
+     * Eventos desde una fecha (índice de relevancia del chatbot)
+     */
+    @Query("SELECT e FROM Event e WHERE e.user.id = :userId " +
+            "AND e.fecha >= :fromDate")
+    List<Event> findByUserIdAndFechaGreaterThanEqual(
+            @Param("userId") Long userId,
+            @Param("fromDate") LocalDate fromDate
+    );
+}
@@ -0,0 +1,55 @@
+package com.tecsup.productivity.repository;
+
+import com.tecsup.productivity.entity.RevokedToken;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, Long> {
+
+    /**
+     * Inserta la revocación si el jti aún no existe
+     * @return 1 si esta llamada la registró, 0 si ya estaba revocado
+     * (el índice único de jti decide entre peticiones concurrentes, sin abortar la transacción)
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO revoked_tokens (jti, user_id, expires_at, revoked_at) " +
+            "VALUES (:jti, :userId, :expiresAt, CURRENT_TIMESTAMP) " +
+            "ON CONFLICT (jti) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(
+            @Param("jti") String jti,
+            @Param("userId") Long userId,
+            @Param("expiresAt") LocalDateTime expiresAt
+    );
+
+    /**
+     * Carga incremental de revocaciones vigentes, en orden de revocación
+     * (keyset por revoked_at + id: la página siguiente empieza tras el último leído)
+     */
+    @Query("SELECT r FROM RevokedToken r " +
+            "WHERE r.expiresAt > :now " +
+            "AND (r.revokedAt > :afterAt OR (r.revokedAt = :afterAt AND r.id > :afterId)) " +
+            "ORDER BY r.revokedAt ASC, r.id ASC")
+    List<RevokedToken> findActiveRevokedAfter(
+            @Param("afterAt") LocalDateTime afterAt,
+            @Param("afterId") Long afterId,
+            @Param("now") LocalDateTime now,
+            Pageable pageable
+    );
+
+    /**
+     * Eliminar revocaciones de tokens ya expirados
+     */
+    @Modifying
+    @Query("DELETE FROM RevokedToken r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
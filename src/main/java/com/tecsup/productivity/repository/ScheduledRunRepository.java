@@ -0,0 +1,34 @@
+package com.tecsup.productivity.repository;
+
+import com.tecsup.productivity.entity.ScheduledRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+
+@Repository
+public interface ScheduledRunRepository extends JpaRepository<ScheduledRun, Long> {
+
+    /**
+     * Reclama la ejecución del día
+     * @return 1 si esta instancia la reclamó, 0 si otra ya lo hizo
+     * (el índice único decide entre instancias, sin abortar la transacción)
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO scheduled_runs (name, run_date, claimed_at) " +
+            "VALUES (:name, :runDate, CURRENT_TIMESTAMP) " +
+            "ON CONFLICT (name, run_date) DO NOTHING", nativeQuery = true)
+    int claim(@Param("name") String name, @Param("runDate") LocalDate runDate);
+
+    /**
+     * Eliminar reclamos de días anteriores
+     */
+    @Modifying
+    @Query("DELETE FROM ScheduledRun r WHERE r.runDate < :date")
+    int deleteOlderThan(@Param("date") LocalDate date);
+}
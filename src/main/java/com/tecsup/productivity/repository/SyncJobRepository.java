@@ -0,0 +1,55 @@
+package com.tecsup.productivity.repository;
+
+import com.tecsup.productivity.dto.response.SyncResponse;
+import com.tecsup.productivity.entity.SyncJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface SyncJobRepository extends JpaRepository<SyncJob, Long> {
+
+    Optional<SyncJob> findByIdAndUserId(Long id, Long userId);
+
+    /**
+     * Trabajo pendiente o en curso del usuario (como máximo uno)
+     */
+    Optional<SyncJob> findByActiveUserId(Long userId);
+
+    /**
+     * Cierra el trabajo solo si este worker sigue siendo dueño del intento
+     * (si se reencoló y otro worker lo reclamó, attempts ya no coincide)
+     * @return 1 si se cerró, 0 si el intento ya no era de este worker
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE SyncJob j SET j.status = :status, j.activeUserId = NULL, j.finishedAt = :finishedAt, " +
+            "j.mensaje = :mensaje, j.eventosSincronizados = :eventos, j.tareasSincronizadas = :tareas, " +
+            "j.cursosConError = :cursosConError " +
+            "WHERE j.id = :id AND j.status = com.tecsup.productivity.entity.SyncJob.JobStatus.RUNNING " +
+            "AND j.attempts = :attempt")
+    int finishAttempt(
+            @Param("id") Long id,
+            @Param("attempt") Integer attempt,
+            @Param("status") SyncJob.JobStatus status,
+            @Param("finishedAt") LocalDateTime finishedAt,
+            @Param("mensaje") String mensaje,
+            @Param("eventos") Integer eventos,
+            @Param("tareas") Integer tareas,
+            @Param("cursosConError") List<SyncResponse.CourseError> cursosConError
+    );
+
+    /**
+     * Limpieza de trabajos terminados
+     */
+    @Modifying
+    @Query("DELETE FROM SyncJob j WHERE j.activeUserId IS NULL AND j.finishedAt < :before")
+    int deleteFinishedBefore(@Param("before") LocalDateTime before);
+}
@@ -3,18 +3,26 @@ package com.tecsup.productivity.security;
 import com.tecsup.productivity.entity.User;
 import com.tecsup.productivity.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.util.ArrayList;
-
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class CustomUserDetailsService implements UserDetailsService {
 
+    private static final String PRINCIPAL_CACHE = "userPrincipals";
+
     private final UserRepository userRepository;
+    private final CacheManager cacheManager;
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
@@ -23,10 +31,43 @@ public class CustomUserDetailsService implements UserDetailsService {
                         "Usuario no encontrado con email: " + email
                 ));
 
-        return new org.springframework.security.core.userdetails.User(
-                user.getEmail(),
-                user.getPassword(),
-                new ArrayList<>()
-        );
+        return UserPrincipal.from(user);
+    }
+
+    /**
+     * Obtiene una copia inmutable del usuario por id (claim userId del JWT)
+     * Se cachea para que la mayoría de requests no consulten la BD
+     */
+    @Cacheable(value = PRINCIPAL_CACHE, key = "#userId")
+    public UserSnapshot loadSnapshotById(Long userId) throws UsernameNotFoundException {
+        log.debug("👤 Cargando usuario {} en caché de principals", userId);
+        return userRepository.findById(userId)
+                .map(UserSnapshot::from)
+                .orElseThrow(() -> new UsernameNotFoundException(
+                        "Usuario no encontrado con id: " + userId
+                ));
+    }
+
+    /**
+     * Invalida el usuario cacheado
+     * Si hay una transacción activa, se invalida después del commit
+     * para que otro request no vuelva a cachear el estado anterior
+     */
+    public void evictUser(Long userId) {
+        Cache cache = cacheManager.getCache(PRINCIPAL_CACHE);
+        if (cache == null || userId == null) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.evict(userId);
+                }
+            });
+        } else {
+            cache.evict(userId);
+        }
     }
 }
@@ -9,7 +9,6 @@ import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -21,7 +20,8 @@ import java.io.IOException;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
-    private final UserDetailsService userDetailsService;
+    private final CustomUserDetailsService userDetailsService;
+    private final TokenRevocationService tokenRevocationService;
 
     @Override
     protected void doFilterInternal(
@@ -32,7 +32,6 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         final String authHeader = request.getHeader("Authorization");
         final String jwt;
-        final String userEmail;
 
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
             filterChain.doFilter(request, response);
@@ -40,12 +39,23 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         jwt = authHeader.substring(7);
-        userEmail = jwtUtil.extractEmail(jwt);
 
-        if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(userEmail);
+        // Una sola verificación por request (con caché de tokens recientes)
+        // Los refresh tokens no autentican requests y los revocados se descartan (sin BD)
+        VerifiedToken token = jwtUtil.verifyToken(jwt)
+                .filter(VerifiedToken::isAccessToken)
+                .filter(verified -> !tokenRevocationService.isRevoked(verified.getTokenId()))
+                .orElse(null);
 
-            if (jwtUtil.validateToken(jwt, userDetails)) {
+        if (token != null && token.getEmail() != null
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            // Principal construido solo con los claims (sin BD)
+            // Tokens antiguos sin userId se resuelven por email
+            UserDetails userDetails = token.getUserId() != null
+                    ? UserPrincipal.fromToken(token)
+                    : this.userDetailsService.loadUserByUsername(token.getEmail());
+
+            if (token.getEmail().equals(userDetails.getUsername())) {
                 UsernamePasswordAuthenticationToken authToken =
                         new UsernamePasswordAuthenticationToken(
                                 userDetails,
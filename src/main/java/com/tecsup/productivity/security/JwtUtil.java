@@ -1,56 +1,167 @@
 package com.tecsup.productivity.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tecsup.productivity.entity.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.function.Function;
 
+@Slf4j
 @Component
 public class JwtUtil {
 
+    public static final String ACCESS_TOKEN = "access";
+    public static final String REFRESH_TOKEN = "refresh";
+
     @Value("${jwt.secret}")
     private String secret;
 
     @Value("${jwt.expiration}")
     private Long expiration;
 
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    @Value("${jwt.refresh-expiration:604800000}")
+    private Long refreshExpiration;
+
+    @Value("${jwt.verified-cache.max-size:10000}")
+    private int verifiedCacheMaxSize;
+
+    // Llave y parser se construyen una sola vez
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    // Tokens verificados recientemente (clave: hash SHA-256 del token)
+    private Cache<String, VerifiedToken> verifiedTokens;
+
+    @PostConstruct
+    public void init() {
+        this.signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheMaxSize)
+                .build();
     }
 
     public String generateToken(String email, Long userId) {
+        return generateToken(email, userId, null);
+    }
+
+    /**
+     * Genera el token con los datos del principal (userId y tipo)
+     * para que los requests no necesiten cargar el usuario
+     */
+    public String generateToken(String email, Long userId, User.UserType tipo) {
+        return createToken(buildClaims(userId, tipo, ACCESS_TOKEN), email, expiration);
+    }
+
+    /**
+     * Refresh token de larga duración: solo sirve para /api/auth/refresh
+     */
+    public String generateRefreshToken(String email, Long userId, User.UserType tipo) {
+        return createToken(buildClaims(userId, tipo, REFRESH_TOKEN), email, refreshExpiration);
+    }
+
+    /**
+     * Duración del access token en segundos
+     */
+    public long getAccessTokenExpirationSeconds() {
+        return expiration / 1000;
+    }
+
+    private Map<String, Object> buildClaims(Long userId, User.UserType tipo, String type) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("userId", userId);
-        return createToken(claims, email);
+        claims.put("type", type);
+        if (tipo != null) {
+            claims.put("tipo", tipo.name());
+        }
+        return claims;
     }
 
-    private String createToken(Map<String, Object> claims, String subject) {
+    private String createToken(Map<String, Object> claims, String subject, long ttlMillis) {
+        long now = System.currentTimeMillis();
         return Jwts.builder()
-                .setClaims(claims)
-                .setSubject(subject)
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .claims(claims)
+                .id(UUID.randomUUID().toString())
+                .subject(subject)
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + ttlMillis))
+                .signWith(signingKey, Jwts.SIG.HS256)
                 .compact();
     }
 
+    /**
+     * Verifica firma y expiración UNA sola vez por token
+     * Los tokens válidos quedan en una caché LRU acotada, así los tokens
+     * frecuentes no vuelven a pasar por el parser ni por el HMAC
+     */
+    public Optional<VerifiedToken> verifyToken(String token) {
+        if (token == null || token.isBlank()) {
+            return Optional.empty();
+        }
+
+        String key = hashToken(token);
+        VerifiedToken cached = verifiedTokens.getIfPresent(key);
+        if (cached != null) {
+            if (cached.isExpired()) {
+                verifiedTokens.invalidate(key);
+                return Optional.empty();
+            }
+            return Optional.of(cached);
+        }
+
+        try {
+            Claims claims = extractAllClaims(token);
+            VerifiedToken verified = new VerifiedToken(
+                    claims.getSubject(),
+                    claims.get("userId", Long.class),
+                    parseUserType(claims.get("tipo", String.class)),
+                    claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null,
+                    claims.getExpiration() != null ? claims.getExpiration().toInstant() : null,
+                    claims.getId(),
+                    claims.get("type", String.class)
+            );
+
+            if (verified.isExpired()) {
+                return Optional.empty();
+            }
+
+            verifiedTokens.put(key, verified);
+            return Optional.of(verified);
+
+        } catch (JwtException | IllegalArgumentException e) {
+            log.debug("⚠️ JWT inválido: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
     public String extractEmail(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return verifyToken(token).map(VerifiedToken::getEmail).orElse(null);
     }
 
     public Long extractUserId(String token) {
-        return extractClaim(token, claims -> claims.get("userId", Long.class));
+        return verifyToken(token).map(VerifiedToken::getUserId).orElse(null);
     }
 
     public Date extractExpiration(String token) {
@@ -63,31 +174,41 @@ public class JwtUtil {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseSignedClaims(token).getPayload();
     }
 
     public Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+        return verifyToken(token).isEmpty();
     }
 
     public Boolean validateToken(String token, UserDetails userDetails) {
-        final String email = extractEmail(token);
-        return (email.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        return verifyToken(token)
+                .map(verified -> verified.getEmail().equals(userDetails.getUsername()))
+                .orElse(false);
     }
 
     public Boolean validateToken(String token) {
+        return verifyToken(token).isPresent();
+    }
+
+    private User.UserType parseUserType(String tipo) {
+        if (tipo == null) {
+            return null;
+        }
+        try {
+            return User.UserType.valueOf(tipo);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private String hashToken(String token) {
         try {
-            Jwts.parser()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token);
-            return !isTokenExpired(token);
-        } catch (Exception e) {
-            return false;
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
         }
     }
 }
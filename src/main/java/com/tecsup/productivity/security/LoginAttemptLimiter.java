@@ -0,0 +1,88 @@
+package com.tecsup.productivity.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tecsup.productivity.exception.TooManyRequestsException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Contador de intentos fallidos de login por email (ventana deslizante)
+ * Si se supera el máximo, el intento se rechaza ANTES de calcular BCrypt
+ */
+@Slf4j
+@Component
+public class LoginAttemptLimiter {
+
+    @Value("${security.login.max-failures:5}")
+    private int maxFailures;
+
+    @Value("${security.login.window:900}")
+    private long windowSeconds;
+
+    // email -> timestamps (ms) de los fallos dentro de la ventana
+    private Cache<String, Deque<Long>> failures;
+
+    @PostConstruct
+    public void init() {
+        this.failures = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(windowSeconds))
+                .maximumSize(100_000)
+                .build();
+    }
+
+    /**
+     * Lanza 429 si el email superó los intentos permitidos en la ventana
+     */
+    public void checkAllowed(String email) {
+        Deque<Long> attempts = failures.getIfPresent(email);
+        if (attempts == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long windowMillis = windowSeconds * 1000;
+        long retryAfterMillis;
+
+        synchronized (attempts) {
+            evictOld(attempts, now - windowMillis);
+            if (attempts.size() < maxFailures) {
+                return;
+            }
+            retryAfterMillis = attempts.peekFirst() + windowMillis - now;
+        }
+
+        log.warn("🚫 Login bloqueado temporalmente para {}", email);
+        throw new TooManyRequestsException(
+                "Demasiados intentos fallidos. Intenta nuevamente más tarde.",
+                Math.max(1, retryAfterMillis / 1000));
+    }
+
+    public void recordFailure(String email) {
+        long now = System.currentTimeMillis();
+        failures.asMap().compute(email, (key, attempts) -> {
+            Deque<Long> updated = attempts != null ? attempts : new ArrayDeque<>();
+            synchronized (updated) {
+                evictOld(updated, now - windowSeconds * 1000);
+                updated.addLast(now);
+            }
+            return updated;
+        });
+    }
+
+    public void reset(String email) {
+        failures.invalidate(email);
+    }
+
+    private void evictOld(Deque<Long> attempts, long threshold) {
+        while (!attempts.isEmpty() && attempts.peekFirst() < threshold) {
+            attempts.pollFirst();
+        }
+    }
+}
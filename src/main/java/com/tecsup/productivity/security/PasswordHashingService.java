@@ -0,0 +1,120 @@
+package com.tecsup.productivity.security;
+
+import com.tecsup.productivity.exception.TooManyRequestsException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ejecuta BCrypt en un pool dedicado y acotado
+ * Evita que el hashing (CPU intensivo) de login/registro consuma los hilos
+ * de Tomcat que atienden dashboard, tareas, etc. Si la cola está llena
+ * se rechaza de inmediato con 429 en lugar de acumular espera.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PasswordHashingService {
+
+    private final PasswordEncoder passwordEncoder;
+
+    @Value("${security.password-hashing.threads:0}")
+    private int threads;
+
+    @Value("${security.password-hashing.queue-capacity:50}")
+    private int queueCapacity;
+
+    @Value("${security.password-hashing.timeout:5000}")
+    private long timeoutMillis;
+
+    private ThreadPoolExecutor executor;
+
+    // Hash de referencia para usuarios inexistentes (mismo costo que un login real)
+    private String unknownUserHash;
+
+    @PostConstruct
+    public void init() {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+
+        this.executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.unknownUserHash = passwordEncoder.encode("unknown-user-placeholder");
+
+        log.info("🔐 Pool de hashing: {} hilos, cola de {}", poolSize, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public String encode(String rawPassword) {
+        return execute(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    /**
+     * Compara la contraseña con el hash
+     * Si encodedPassword es null (usuario inexistente) se compara contra un hash
+     * de referencia para que el tiempo de respuesta no revele si el email existe
+     */
+    public boolean matches(String rawPassword, String encodedPassword) {
+        if (encodedPassword == null) {
+            execute(() -> passwordEncoder.matches(rawPassword, unknownUserHash));
+            return false;
+        }
+        return execute(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    private <T> T execute(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("⚠️ Pool de hashing saturado (cola: {})", executor.getQueue().size());
+            throw new TooManyRequestsException(
+                    "Demasiadas solicitudes de autenticación. Intenta nuevamente en unos segundos.", 2);
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new TooManyRequestsException(
+                    "El servicio de autenticación está ocupado. Intenta nuevamente.", 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Hashing interrumpido", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Error al procesar la contraseña", e.getCause());
+        }
+    }
+}
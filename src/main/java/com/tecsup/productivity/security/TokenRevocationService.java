@@ -0,0 +1,194 @@
+package com.tecsup.productivity.security;
+
+import com.tecsup.productivity.entity.RevokedToken;
+import com.tecsup.productivity.repository.RevokedTokenRepository;
+import com.tecsup.productivity.util.BloomFilter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lista de tokens revocados
+ * - Persistida en BD (tabla revoked_tokens)
+ * - En memoria: filtro de Bloom + set exacto, consulta O(1) sin ir a la BD
+ * - Se reconstruye de forma incremental al iniciar y se sincroniza periódicamente
+ *   con revocaciones de otras instancias (por revoked_at, releyendo un margen de solape:
+ *   una transacción lenta puede confirmar una revocación con hora anterior a la última vista)
+ * - Una revocación propia se guarda en memoria solo cuando la transacción confirma
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenRevocationService {
+
+    private static final int LOAD_PAGE_SIZE = 1000;
+    private static final LocalDateTime LOAD_FROM = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final RevokedTokenRepository revokedTokenRepository;
+
+    @Value("${jwt.revocation.expected-entries:100000}")
+    private int expectedEntries;
+
+    @Value("${jwt.revocation.sync-overlap:300000}")
+    private long syncOverlap;
+
+    // jti -> expiración del token
+    private final Map<String, Instant> revoked = new ConcurrentHashMap<>();
+    private volatile BloomFilter bloomFilter;
+    // Mayor revoked_at leído (hora de la BD); null = aún no se cargó nada
+    private volatile LocalDateTime lastRevokedAt;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        this.bloomFilter = new BloomFilter(expectedEntries, 0.01);
+        int loaded = loadIncrement();
+        log.info("🔒 Lista de revocación cargada: {} tokens", loaded);
+    }
+
+    /**
+     * ¿El token fue revocado? (sin consultar la BD)
+     */
+    public boolean isRevoked(String jti) {
+        if (jti == null) {
+            return false;
+        }
+        BloomFilter filter = bloomFilter;
+        if (filter != null && !filter.mightContain(jti)) {
+            return false;
+        }
+        return revoked.containsKey(jti);
+    }
+
+    /**
+     * Revoca un token hasta su expiración
+     * @return true si esta llamada lo revocó; false si ya estaba revocado (aquí o en otra instancia)
+     */
+    public boolean revoke(VerifiedToken token) {
+        if (token == null || token.getTokenId() == null || isRevoked(token.getTokenId())) {
+            return false;
+        }
+
+        Instant expiresAt = token.getExpiration() != null ? token.getExpiration() : Instant.now();
+
+        // INSERT ... ON CONFLICT DO NOTHING: no lanza excepción ni marca la transacción del llamador
+        int inserted = revokedTokenRepository.insertIfAbsent(
+                token.getTokenId(),
+                token.getUserId(),
+                LocalDateTime.ofInstant(expiresAt, ZoneId.systemDefault())
+        );
+        if (inserted == 0) {
+            // La fila ya está confirmada por otra transacción
+            remember(token.getTokenId(), expiresAt);
+            log.debug("Token ya revocado por otra petición");
+            return false;
+        }
+
+        // Si la transacción del llamador hace rollback, el token no queda revocado en memoria
+        afterCommit(() -> remember(token.getTokenId(), expiresAt));
+        log.debug("🔒 Token revocado para usuario {}", token.getUserId());
+        return true;
+    }
+
+    /**
+     * Sincroniza revocaciones nuevas (p. ej. hechas en otra instancia)
+     */
+    @Scheduled(fixedDelayString = "${jwt.revocation.sync-interval:30000}",
+            initialDelayString = "${jwt.revocation.sync-interval:30000}")
+    public void syncIncrement() {
+        if (bloomFilter == null) {
+            return;
+        }
+        int loaded = loadIncrement();
+        if (loaded > 0) {
+            log.debug("🔒 {} revocaciones nuevas sincronizadas", loaded);
+        }
+    }
+
+    /**
+     * Limpia revocaciones de tokens ya expirados (memoria y BD)
+     */
+    @Scheduled(cron = "${jwt.revocation.purge-cron:0 15 * * * *}")
+    @Transactional
+    public void purgeExpired() {
+        Instant now = Instant.now();
+        revoked.entrySet().removeIf(entry -> entry.getValue().isBefore(now));
+
+        // El filtro de Bloom no permite borrar: se reconstruye desde el set exacto
+        BloomFilter rebuilt = new BloomFilter(Math.max(expectedEntries, revoked.size() * 2), 0.01);
+        revoked.keySet().forEach(rebuilt::put);
+        this.bloomFilter = rebuilt;
+        // Revocaciones registradas durante la reconstrucción pudieron ir solo al filtro anterior
+        revoked.keySet().forEach(rebuilt::put);
+
+        int deleted = revokedTokenRepository.deleteExpired(LocalDateTime.now());
+        log.info("🧹 Revocaciones expiradas eliminadas: {} (vigentes: {})", deleted, revoked.size());
+    }
+
+    /**
+     * Lee las revocaciones desde la última vista menos el margen de solape
+     * @return cantidad de tokens que no estaban en memoria
+     */
+    private int loadIncrement() {
+        LocalDateTime afterAt = lastRevokedAt != null
+                ? lastRevokedAt.minus(Duration.ofMillis(syncOverlap))
+                : LOAD_FROM;
+        long afterId = 0L;
+        LocalDateTime now = LocalDateTime.now();
+
+        int added = 0;
+        List<RevokedToken> page;
+        do {
+            page = revokedTokenRepository.findActiveRevokedAfter(
+                    afterAt, afterId, now, PageRequest.of(0, LOAD_PAGE_SIZE));
+            for (RevokedToken token : page) {
+                if (remember(token.getJti(), token.getExpiresAt().atZone(ZoneId.systemDefault()).toInstant())) {
+                    added++;
+                }
+                afterAt = token.getRevokedAt();
+                afterId = token.getId();
+                if (lastRevokedAt == null || afterAt.isAfter(lastRevokedAt)) {
+                    lastRevokedAt = afterAt;
+                }
+            }
+        } while (page.size() == LOAD_PAGE_SIZE);
+        return added;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private boolean remember(String jti, Instant expiresAt) {
+        boolean added = revoked.put(jti, expiresAt) == null;
+        BloomFilter filter = bloomFilter;
+        if (filter != null) {
+            filter.put(jti);
+        }
+        return added;
+    }
+}
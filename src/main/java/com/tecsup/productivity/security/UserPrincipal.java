@@ -0,0 +1,48 @@
+package com.tecsup.productivity.security;
+
+import com.tecsup.productivity.entity.User;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Principal autenticado liviano (id, email y tipo)
+ * En requests con JWT se construye solo con los claims verificados,
+ * sin consultar la BD. La contraseña solo existe en el flujo de login.
+ */
+@Getter
+public class UserPrincipal implements UserDetails {
+
+    private final Long id;
+    private final String email;
+    private final User.UserType tipo;
+    private final String password;
+
+    public UserPrincipal(Long id, String email, User.UserType tipo, String password) {
+        this.id = id;
+        this.email = email;
+        this.tipo = tipo;
+        this.password = password;
+    }
+
+    public static UserPrincipal from(User user) {
+        return new UserPrincipal(user.getId(), user.getEmail(), user.getTipo(), user.getPassword());
+    }
+
+    public static UserPrincipal fromToken(VerifiedToken token) {
+        return new UserPrincipal(token.getUserId(), token.getEmail(), token.getTipo(), null);
+    }
+
+    @Override
+    public String getUsername() {
+        return email;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,32 @@
+package com.tecsup.productivity.security;
+
+import com.tecsup.productivity.entity.User;
+import lombok.Value;
+
+/**
+ * Copia inmutable de los datos del usuario que usan los requests de solo lectura
+ * Es lo que se guarda en la caché de principals (nunca la entidad JPA)
+ */
+@Value
+public class UserSnapshot {
+    Long id;
+    String email;
+    String name;
+    User.UserType tipo;
+    boolean tecsupSync;
+    boolean chatEnabled;
+
+    public static UserSnapshot from(User user) {
+        Object chatEnabled = user.getPreferences() != null
+                ? user.getPreferences().getOrDefault("chatEnabled", true)
+                : true;
+        return new UserSnapshot(
+                user.getId(),
+                user.getEmail(),
+                user.getName(),
+                user.getTipo(),
+                user.getTecsupToken() != null && !user.getTecsupToken().isBlank(),
+                !Boolean.FALSE.equals(chatEnabled)
+        );
+    }
+}
@@ -0,0 +1,36 @@
+package com.tecsup.productivity.security;
+
+import com.tecsup.productivity.entity.User;
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Claims inmutables de un JWT ya verificado (firma + formato)
+ * Se obtiene de JwtUtil.verifyToken y puede cachearse sin riesgo
+ */
+@Value
+public class VerifiedToken {
+    String email;
+    Long userId;
+    User.UserType tipo;
+    Instant issuedAt;
+    Instant expiration;
+    String tokenId;
+    String type;
+
+    public boolean isExpired() {
+        return expiration != null && expiration.isBefore(Instant.now());
+    }
+
+    /**
+     * Los tokens sin claim "type" (emitidos antes de los refresh tokens) son de acceso
+     */
+    public boolean isAccessToken() {
+        return type == null || JwtUtil.ACCESS_TOKEN.equals(type);
+    }
+
+    public boolean isRefreshToken() {
+        return JwtUtil.REFRESH_TOKEN.equals(type);
+    }
+}
@@ -2,33 +2,33 @@ package com.tecsup.productivity.service;
 
 import com.tecsup.productivity.dto.request.CompleteRegisterRequest;
 import com.tecsup.productivity.dto.request.LoginRequest;
+import com.tecsup.productivity.dto.request.RefreshTokenRequest;
 import com.tecsup.productivity.dto.request.ValidateRegisterRequest;
 import com.tecsup.productivity.dto.response.AuthResponse;
 import com.tecsup.productivity.dto.response.UserResponse;
 import com.tecsup.productivity.dto.response.ValidationResponse;
-import com.tecsup.productivity.entity.Event;
 import com.tecsup.productivity.entity.Habit;
-import com.tecsup.productivity.entity.Task;
 import com.tecsup.productivity.entity.User;
 import com.tecsup.productivity.exception.BadRequestException;
-import com.tecsup.productivity.repository.EventRepository;
 import com.tecsup.productivity.repository.HabitRepository;
-import com.tecsup.productivity.repository.TaskRepository;
 import com.tecsup.productivity.repository.UserRepository;
 import com.tecsup.productivity.security.JwtUtil;
+import com.tecsup.productivity.security.LoginAttemptLimiter;
+import com.tecsup.productivity.security.PasswordHashingService;
+import com.tecsup.productivity.security.TokenRevocationService;
+import com.tecsup.productivity.security.VerifiedToken;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.*;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 
-import java.time.LocalDate;
-import java.time.LocalTime;
 import java.util.*;
 
 @Slf4j
@@ -37,12 +37,14 @@ import java.util.*;
 public class AuthService {
 
     private final UserRepository userRepository;
-    private final EventRepository eventRepository;
-    private final TaskRepository taskRepository; // ✅ AGREGADO
     private final HabitRepository habitRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
+    private final LoginAttemptLimiter loginAttemptLimiter;
     private final JwtUtil jwtUtil;
-    private final AuthenticationManager authenticationManager;
+    private final TokenRevocationService tokenRevocationService;
+    private final CanvasClient canvasClient;
+    private final SyncJobService syncJobService;
+    private final PlatformTransactionManager transactionManager;
 
     // ============================================
     // ✅ PASO 1: Validar sin crear usuario
@@ -90,7 +92,7 @@ public class AuthService {
     // ============================================
     // ✅ PASO 2: Completar registro con preferencias
     // ============================================
-    @Transactional
+    // Sin @Transactional: BCrypt y la validación contra Canvas van antes de abrir la transacción
     public AuthResponse completeRegistration(CompleteRegisterRequest request) {
 
         log.info("✅ Completando registro para: {}", request.getEmail());
@@ -125,54 +127,36 @@ public class AuthService {
             log.info("✅ Token TECSUP válido");
         }
 
-        // Crear usuario
+        // Crear usuario (hash calculado fuera de la transacción)
         User user = User.builder()
                 .email(request.getEmail().toLowerCase().trim())
-                .password(passwordEncoder.encode(request.getPassword()))
+                .password(passwordHashingService.encode(request.getPassword()))
                 .name(request.getName().trim())
                 .tipo(request.getTipo())
                 .tecsupToken(validatedToken)
                 .preferences(request.getPreferences())
                 .build();
 
-        user = userRepository.save(user);
-        log.info("✅ Usuario creado: {} ({})", user.getEmail(), user.getTipo());
-
         // ============================================
-        // ✅ Crear hábitos por defecto
+        // ✅ Guardar usuario + hábitos por defecto (única transacción)
         // ============================================
-        createDefaultHabits(user);
+        user = saveWithDefaultHabits(user);
+        log.info("✅ Usuario creado: {} ({})", user.getEmail(), user.getTipo());
 
         // ============================================
-        // ✅ CORREGIDO - Sincronizar EVENTOS + TAREAS
+        // ✅ Sincronizar EVENTOS + TAREAS (en segundo plano)
         // ============================================
         if (user.getTipo() == User.UserType.STUDENT && validatedToken != null) {
-            try {
-                log.info("🔄 Sincronizando datos de Canvas (eventos + tareas)...");
-                Map<String, Integer> syncResult = fetchAndSyncTecsupData(user, validatedToken);
-
-                int totalEvents = syncResult.get("events");
-                int totalTasks = syncResult.get("tasks");
-
-                log.info("✅ Sincronización completada: {} eventos, {} tareas",
-                        totalEvents, totalTasks);
-            } catch (Exception e) {
-                log.warn("⚠️ Error al sincronizar datos de TECSUP: {}", e.getMessage());
-            }
+            enqueueInitialSync(user.getId());
         }
 
-        String token = jwtUtil.generateToken(user.getEmail(), user.getId());
-
-        return AuthResponse.builder()
-                .token(token)
-                .user(mapToUserResponse(user))
-                .build();
+        return buildAuthResponse(user);
     }
 
     // ============================================
     // Registro directo (1 paso) - Mantener para compatibilidad
     // ============================================
-    @Transactional
+    // Sin @Transactional: igual que completeRegistration
     public AuthResponse register(ValidateRegisterRequest request) {
 
         if (userRepository.existsByEmail(request.getEmail())) {
@@ -220,72 +204,106 @@ public class AuthService {
 
         User user = User.builder()
                 .email(request.getEmail().toLowerCase().trim())
-                .password(passwordEncoder.encode(request.getPassword()))
+                .password(passwordHashingService.encode(request.getPassword()))
                 .name(request.getName().trim())
                 .tipo(request.getTipo())
                 .tecsupToken(validatedToken)
                 .preferences(preferences)
                 .build();
 
-        user = userRepository.save(user);
-        log.info("✅ Usuario registrado exitosamente: {} ({})",
-                user.getEmail(), user.getTipo());
-
         // ============================================
-        // ✅ Crear hábitos por defecto
+        // ✅ Guardar usuario + hábitos por defecto (única transacción)
         // ============================================
-        createDefaultHabits(user);
+        user = saveWithDefaultHabits(user);
+        log.info("✅ Usuario registrado exitosamente: {} ({})",
+                user.getEmail(), user.getTipo());
 
         // ============================================
-        // ✅ CORREGIDO - Sincronizar EVENTOS + TAREAS
+        // ✅ Sincronizar EVENTOS + TAREAS (en segundo plano)
         // ============================================
         if (user.getTipo() == User.UserType.STUDENT && validatedToken != null) {
-            try {
-                log.info("🔄 Sincronizando datos de Canvas (eventos + tareas)...");
-                Map<String, Integer> syncResult = fetchAndSyncTecsupData(user, validatedToken);
+            enqueueInitialSync(user.getId());
+        }
 
-                int totalEvents = syncResult.get("events");
-                int totalTasks = syncResult.get("tasks");
+        return buildAuthResponse(user);
+    }
 
-                log.info("✅ Sincronización automática completada: {} eventos, {} tareas",
-                        totalEvents, totalTasks);
-            } catch (Exception e) {
-                log.warn("⚠️ No se pudieron sincronizar datos durante el registro: {}",
-                        e.getMessage());
-            }
+    // ============================================
+    // Login
+    // ============================================
+    // Sin @Transactional: no se retiene una conexión de BD mientras se calcula BCrypt
+    public AuthResponse login(LoginRequest request) {
+        String email = request.getEmail().toLowerCase().trim();
+
+        // 1️⃣ Rechazar antes de calcular el hash si hay demasiados fallos recientes
+        loginAttemptLimiter.checkAllowed(email);
+
+        // 2️⃣ Una sola consulta: se usa para autenticar y para la respuesta
+        User user = userRepository.findByEmail(email).orElse(null);
+
+        // 3️⃣ BCrypt en el pool dedicado
+        boolean valid = passwordHashingService.matches(
+                request.getPassword(),
+                user != null ? user.getPassword() : null
+        );
+
+        if (user == null || !valid) {
+            loginAttemptLimiter.recordFailure(email);
+            throw new BadCredentialsException("Credenciales inválidas");
         }
 
-        String token = jwtUtil.generateToken(user.getEmail(), user.getId());
+        loginAttemptLimiter.reset(email);
 
-        return AuthResponse.builder()
-                .token(token)
-                .user(mapToUserResponse(user))
-                .build();
+        return buildAuthResponse(user);
     }
 
     // ============================================
-    // Login (sin cambios)
+    // Refresh: rota el par de tokens (el refresh usado queda revocado)
     // ============================================
-    @Transactional(readOnly = true)
-    public AuthResponse login(LoginRequest request) {
-        authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(
-                        request.getEmail().toLowerCase().trim(),
-                        request.getPassword()
-                )
-        );
+    @Transactional
+    public AuthResponse refresh(RefreshTokenRequest request) {
+        VerifiedToken refreshToken = jwtUtil.verifyToken(request.getRefreshToken())
+                .filter(VerifiedToken::isRefreshToken)
+                .filter(token -> !tokenRevocationService.isRevoked(token.getTokenId()))
+                .orElseThrow(() -> new BadCredentialsException("Refresh token inválido o expirado"));
+
+        User user = userRepository.findById(refreshToken.getUserId())
+                .orElseThrow(() -> new BadCredentialsException("Refresh token inválido o expirado"));
+
+        // La inserción del jti es la puerta atómica: solo una petición puede rotar este refresh token
+        if (!tokenRevocationService.revoke(refreshToken)) {
+            throw new BadCredentialsException("Refresh token inválido o expirado");
+        }
 
-        User user = userRepository.findByEmail(request.getEmail().toLowerCase().trim())
-                .orElseThrow(() -> new BadRequestException("Usuario no encontrado"));
+        return buildAuthResponse(user);
+    }
 
-        String token = jwtUtil.generateToken(user.getEmail(), user.getId());
+    // ============================================
+    // Logout: revoca el access token y, si se envía, el refresh token
+    // ============================================
+    @Transactional
+    public void logout(String accessToken, String refreshToken) {
+        jwtUtil.verifyToken(accessToken).ifPresent(tokenRevocationService::revoke);
+        jwtUtil.verifyToken(refreshToken).ifPresent(tokenRevocationService::revoke);
+    }
 
+    private AuthResponse buildAuthResponse(User user) {
         return AuthResponse.builder()
-                .token(token)
+                .token(jwtUtil.generateToken(user.getEmail(), user.getId(), user.getTipo()))
+                .refreshToken(jwtUtil.generateRefreshToken(user.getEmail(), user.getId(), user.getTipo()))
+                .expiresIn(jwtUtil.getAccessTokenExpirationSeconds())
                 .user(mapToUserResponse(user))
                 .build();
     }
 
+    private User saveWithDefaultHabits(User user) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            User saved = userRepository.save(user);
+            createDefaultHabits(saved);
+            return saved;
+        });
+    }
+
     // ============================================
     // ✅ Crear hábitos por defecto
     // ============================================
@@ -355,166 +373,29 @@ public class AuthService {
     }
 
     // ============================================
-    // ✅ NUEVO MÉTODO - Sincronizar EVENTOS + TAREAS (igual que TecsupSyncService)
+    // ✅ Importación inicial de Canvas: se encola como cualquier sincronización
+    // (mismo mapeo y upsert que /tecsup/refresh) y solo si el registro se confirma
     // ============================================
-    private Map<String, Integer> fetchAndSyncTecsupData(User user, String token) {
-
-        String baseUrl = "https://tecsup.instructure.com/api/v1";
-        RestTemplate rest = new RestTemplate();
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", "Bearer " + token);
-        HttpEntity<String> entity = new HttpEntity<>(headers);
-
-        List<Event> eventos = new ArrayList<>();
-        List<Task> tareas = new ArrayList<>();
-
-        try {
-            // 1️⃣ Obtener cursos
-            ResponseEntity<List> courseResp = rest.exchange(
-                    baseUrl + "/courses",
-                    HttpMethod.GET,
-                    entity,
-                    List.class
-            );
-
-            List<Map<String, Object>> cursos = courseResp.getBody();
-            if (cursos == null) {
-                log.warn("[SYNC] No se encontraron cursos");
-                return Map.of("events", 0, "tasks", 0);
+    private void enqueueInitialSync(Long userId) {
+        Runnable enqueue = () -> {
+            try {
+                syncJobService.submit(userId);
+                log.info("🔄 Importación de Canvas encolada para usuario {}", userId);
+            } catch (Exception e) {
+                log.warn("⚠️ No se pudo encolar la importación de Canvas: {}", e.getMessage());
             }
+        };
 
-            for (Map<String, Object> curso : cursos) {
-
-                Integer courseId = (Integer) curso.get("id");
-                String courseName = (String) curso.get("name");
-
-                log.info("[SYNC] Procesando curso: {} | {}", courseId, courseName);
-
-                // ============================================
-                // ✅ 2️⃣ Canvas /assignments → Task entity
-                // ============================================
-                try {
-                    ResponseEntity<List> assignmentsResp = rest.exchange(
-                            baseUrl + "/courses/" + courseId + "/assignments",
-                            HttpMethod.GET,
-                            entity,
-                            List.class
-                    );
-
-                    List<Map<String, Object>> assignments = assignmentsResp.getBody();
-                    if (assignments != null) {
-                        for (Map<String, Object> assignment : assignments) {
-                            Integer assignmentId = (Integer) assignment.get("id");
-                            String name = (String) assignment.get("name");
-                            String dueDate = (String) assignment.get("due_at");
-                            String description = (String) assignment.get("description");
-
-                            if (dueDate != null && !dueDate.isBlank()) {
-                                tareas.add(Task.builder()
-                                        .user(user)
-                                        .titulo(name)
-                                        .descripcion("Tarea de " + courseName) // ✅ CORREGIDO - Solo nombre del curso
-                                        .fechaLimite(LocalDate.parse(dueDate.substring(0, 10)))
-                                        .prioridad(Task.TaskPriority.MEDIA)
-                                        .completed(false)
-                                        .source("tecsup")
-                                        .tecsupExternalId(String.valueOf(assignmentId))
-                                        .sincronizadoTecsup(true)
-                                        .build());
-                            }
-                        }
-                    }
-                } catch (HttpClientErrorException e) {
-                    log.error("[SYNC] Error al obtener assignments del curso {}: {}",
-                            courseId, e.getStatusCode());
-                }
-
-                // ============================================
-                // ✅ 3️⃣ Canvas /calendar_events → Event entity
-                // ============================================
-                try {
-                    ResponseEntity<List> calendarResp = rest.exchange(
-                            baseUrl + "/calendar_events?context_codes[]=course_" + courseId,
-                            HttpMethod.GET,
-                            entity,
-                            List.class
-                    );
-
-                    List<Map<String, Object>> calendarEvents = calendarResp.getBody();
-                    if (calendarEvents != null) {
-                        for (Map<String, Object> ev : calendarEvents) {
-                            Integer eventId = (Integer) ev.get("id");
-                            String title = (String) ev.get("title");
-                            String start = (String) ev.get("start_at");
-                            String description = (String) ev.get("description");
-
-                            if (start != null && !start.isBlank()) {
-                                LocalDate fecha = LocalDate.parse(start.substring(0, 10));
-                                LocalTime hora;
-                                try {
-                                    hora = LocalTime.parse(start.substring(11, 16));
-                                } catch (Exception ex) {
-                                    hora = LocalTime.of(0, 0);
-                                }
-
-                                Event.EventCategory categoria = Event.EventCategory.CLASE;
-
-                                if (title != null &&
-                                        (title.toLowerCase().contains("examen") ||
-                                                title.toLowerCase().contains("exam") ||
-                                                title.toLowerCase().contains("evaluación"))) {
-                                    categoria = Event.EventCategory.EXAMEN;
-                                }
-
-                                eventos.add(Event.builder()
-                                        .user(user)
-                                        .titulo(title)
-                                        .fecha(fecha)
-                                        .hora(hora)
-                                        .categoria(categoria)
-                                        .curso(courseName)
-                                        .descripcion(description != null ?
-                                                description :
-                                                "Evento de " + courseName)
-                                        .source("tecsup")
-                                        .tecsupExternalId(String.valueOf(eventId))
-                                        .sincronizadoTecsup(true)
-                                        .build());
-                            }
-                        }
-                    }
-                } catch (HttpClientErrorException e) {
-                    log.error("[SYNC] Error al obtener calendar events del curso {}: {}",
-                            courseId, e.getStatusCode());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue.run();
                 }
-            }
-
-        } catch (HttpClientErrorException e) {
-            log.error("[SYNC] Error al obtener cursos: {} - {}",
-                    e.getStatusCode(), e.getResponseBodyAsString());
-            throw new BadRequestException("Token TECSUP inválido o expirado");
-        } catch (Exception e) {
-            log.error("[SYNC] Error inesperado", e);
-            throw new BadRequestException("Error al sincronizar con TECSUP");
-        }
-
-        // ============================================
-        // ✅ 4️⃣ Guardar en BD
-        // ============================================
-        if (!eventos.isEmpty()) {
-            eventRepository.saveAll(eventos);
-            log.info("[SYNC] {} eventos guardados", eventos.size());
-        }
-        if (!tareas.isEmpty()) {
-            taskRepository.saveAll(tareas);
-            log.info("[SYNC] {} tareas guardadas", tareas.size());
+            });
+        } else {
+            enqueue.run();
         }
-
-        return Map.of(
-                "events", eventos.size(),
-                "tasks", tareas.size()
-        );
     }
 
     // ============================================
@@ -522,19 +403,7 @@ public class AuthService {
     // ============================================
     private boolean validateTecsupToken(String token) {
         try {
-            String baseUrl = "https://tecsup.instructure.com/api/v1";
-            RestTemplate rest = new RestTemplate();
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Bearer " + token);
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-
-            ResponseEntity<Map> response = rest.exchange(
-                    baseUrl + "/users/self",
-                    HttpMethod.GET,
-                    entity,
-                    Map.class
-            );
+            ResponseEntity<Map<String, Object>> response = canvasClient.get("/users/self", token);
 
             return response.getStatusCode() == HttpStatus.OK;
 
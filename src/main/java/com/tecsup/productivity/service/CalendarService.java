@@ -32,10 +32,10 @@ public class CalendarService {
     @Transactional(readOnly = true)
     public Map<String, Object> getMonthView(int year, int month) {
 
-        User user = securityUtil.getCurrentUser();
+        User user = securityUtil.getCurrentUserReference();
         LocalDate today = LocalDate.now();
 
-        log.info("📅 Generando vista de calendario: {}-{} para {}", year, month, user.getEmail());
+        log.info("📅 Generando vista de calendario: {}-{} para {}", year, month, securityUtil.getCurrentUserEmail());
 
         YearMonth yearMonth = YearMonth.of(year, month);
         LocalDate startDate = yearMonth.atDay(1);
@@ -117,9 +117,9 @@ public class CalendarService {
     @Transactional(readOnly = true)
     public Map<String, Object> getDayDetails(LocalDate date) {
 
-        User user = securityUtil.getCurrentUser();
+        User user = securityUtil.getCurrentUserReference();
 
-        log.info("📆 Obteniendo detalle de {} para {}", date, user.getEmail());
+        log.info("📆 Obteniendo detalle de {} para {}", date, securityUtil.getCurrentUserEmail());
 
         // 1️⃣ Tareas del día
         List<Task> tasks = taskRepository.findByUserIdAndFechaLimite(user.getId(), date);
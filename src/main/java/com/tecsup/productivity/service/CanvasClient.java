@@ -0,0 +1,152 @@
+package com.tecsup.productivity.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lectura paginada de la API de Canvas (TECSUP)
+ * - Pide páginas grandes (per_page) y sigue el header Link rel="next"
+ * - Entrega cada página al consumidor apenas llega: no se acumula la respuesta completa
+ * - Solo sigue enlaces al mismo esquema y host de tecsup.api.url (el token no sale de Canvas)
+ * - Usa el RestTemplate con pool de conexiones de CanvasClientConfig
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CanvasClient {
+
+    private static final Pattern NEXT_LINK = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"next\"");
+    private static final ParameterizedTypeReference<List<Map<String, Object>>> PAGE_TYPE =
+            new ParameterizedTypeReference<>() {};
+
+    // Cliente con pool compartido (CanvasClientConfig)
+    private final RestTemplate canvasRestTemplate;
+
+    @Value("${tecsup.api.url:https://tecsup.instructure.com/api/v1}")
+    private String baseUrl;
+
+    // Canvas devuelve 10 items por defecto; 100 es el máximo habitual
+    @Value("${tecsup.api.per-page:100}")
+    private int perPage;
+
+    // Límite de seguridad ante enlaces "next" que no terminan (al superarlo se lanza PageLimitExceededException)
+    @Value("${tecsup.api.max-pages:50}")
+    private int maxPages;
+
+    /**
+     * Recorre todas las páginas de {@code path} (relativo a tecsup.api.url)
+     * @return total de items recibidos
+     * @throws PageLimitExceededException si quedan páginas después de max-pages: el resultado
+     *         está incompleto y no debe usarse para decidir qué desapareció en Canvas
+     */
+    public int forEachPage(String path, String token, Consumer<List<Map<String, Object>>> pageConsumer) {
+        HttpEntity<Void> entity = new HttpEntity<>(authHeaders(token));
+        URI base = URI.create(baseUrl);
+
+        URI next = UriComponentsBuilder.fromUriString(baseUrl + path)
+                .replaceQueryParam("per_page", perPage)
+                .encode()
+                .build()
+                .toUri();
+
+        int pages = 0;
+        int items = 0;
+
+        while (next != null) {
+            if (pages >= maxPages) {
+                log.warn("[CANVAS] {} alcanzó el límite de {} páginas", path, maxPages);
+                throw new PageLimitExceededException(path, maxPages);
+            }
+
+            ResponseEntity<List<Map<String, Object>>> response =
+                    canvasRestTemplate.exchange(next, HttpMethod.GET, entity, PAGE_TYPE);
+            pages++;
+
+            List<Map<String, Object>> page = response.getBody();
+            if (page != null && !page.isEmpty()) {
+                items += page.size();
+                pageConsumer.accept(page);
+            }
+
+            next = nextLink(response.getHeaders(), base);
+        }
+
+        log.debug("[CANVAS] {}: {} items en {} páginas", path, items, pages);
+        return items;
+    }
+
+    /**
+     * Todas las páginas en una lista (solo para colecciones pequeñas, p. ej. cursos)
+     */
+    public List<Map<String, Object>> getAll(String path, String token) {
+        List<Map<String, Object>> all = new ArrayList<>();
+        forEachPage(path, token, all::addAll);
+        return all;
+    }
+
+    /**
+     * GET de un recurso simple (p. ej. /users/self)
+     */
+    public ResponseEntity<Map<String, Object>> get(String path, String token) {
+        return canvasRestTemplate.exchange(URI.create(baseUrl + path), HttpMethod.GET,
+                new HttpEntity<>(authHeaders(token)), new ParameterizedTypeReference<>() {});
+    }
+
+    private URI nextLink(HttpHeaders headers, URI base) {
+        List<String> links = headers.get(HttpHeaders.LINK);
+        if (links == null) {
+            return null;
+        }
+
+        for (String link : links) {
+            Matcher matcher = NEXT_LINK.matcher(link);
+            if (matcher.find()) {
+                // El enlace ya viene codificado: no volver a codificarlo
+                URI next = URI.create(matcher.group(1));
+                // Mismo esquema y host: el token nunca viaja por http ni a otro servidor
+                if (!Objects.equals(next.getScheme(), base.getScheme())
+                        || !Objects.equals(next.getHost(), base.getHost())) {
+                    log.warn("[CANVAS] Enlace de paginación a otro origen ignorado: {}://{}",
+                            next.getScheme(), next.getHost());
+                    return null;
+                }
+                return next;
+            }
+        }
+        return null;
+    }
+
+    private HttpHeaders authHeaders(String token) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(token);
+        return headers;
+    }
+
+    /**
+     * La colección tiene más páginas que tecsup.api.max-pages (lectura incompleta)
+     */
+    public static class PageLimitExceededException extends RestClientException {
+        public PageLimitExceededException(String path, int maxPages) {
+            super("Más de " + maxPages + " páginas en " + path);
+        }
+    }
+}
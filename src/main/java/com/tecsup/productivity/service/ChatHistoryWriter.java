@@ -0,0 +1,216 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.dto.response.ChatMessageResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistencia del historial del chatbot en segundo plano (write-behind)
+ * - El request solo encola el mensaje: nunca espera un INSERT
+ * - Se escribe en lotes JDBC al llegar a batch-size o cada flush-interval
+ * - Si la BD falla, el lote vuelve a la cola y se reintenta en el siguiente flush
+ * - Tras max-batch-attempts fallos seguidos se inserta fila por fila: una fila inválida
+ *   se descarta (y se registra) en lugar de bloquear la persistencia de todos
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatHistoryWriter {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO chat_messages (user_id, mensaje, respuesta, created_at) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${chatbot.history.batch-size:100}")
+    private int batchSize;
+
+    @Value("${chatbot.history.buffer-capacity:10000}")
+    private int bufferCapacity;
+
+    @Value("${chatbot.history.max-batch-attempts:3}")
+    private int maxBatchAttempts;
+
+    private BlockingQueue<ChatMessageResponse> buffer;
+    private ExecutorService flushExecutor;
+
+    // Serializa flush y borrado (un borrado no debe cruzarse con un lote en curso)
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong rejectedRows = new AtomicLong();
+    private int consecutiveFailures = 0; // protegido por flushLock
+
+    @PostConstruct
+    public void init() {
+        this.buffer = new LinkedBlockingQueue<>(bufferCapacity);
+        this.flushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-history-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Escribe lo pendiente antes de apagar la aplicación
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Encola un mensaje para persistirlo (no bloquea)
+     */
+    public void enqueue(ChatMessageResponse message) {
+        if (!buffer.offer(message)) {
+            dropped.incrementAndGet();
+            log.warn("⚠️ Buffer de historial lleno, mensaje de usuario {} no persistido", message.getUserId());
+            return;
+        }
+
+        if (buffer.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            flushExecutor.execute(() -> {
+                flushRequested.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * Flush periódico (aunque no se haya llenado un lote)
+     */
+    @Scheduled(fixedDelayString = "${chatbot.history.flush-interval:2000}")
+    public void flush() {
+        synchronized (flushLock) {
+            while (!buffer.isEmpty()) {
+                List<ChatMessageResponse> batch = new ArrayList<>(batchSize);
+                buffer.drainTo(batch, batchSize);
+                if (batch.isEmpty()) {
+                    return;
+                }
+
+                if (consecutiveFailures >= maxBatchAttempts) {
+                    if (!insertRowByRow(batch)) {
+                        return;
+                    }
+                    consecutiveFailures = 0;
+                    continue;
+                }
+
+                try {
+                    jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, message) -> bind(ps, message));
+                    written.addAndGet(batch.size());
+                    consecutiveFailures = 0;
+                    log.debug("💾 Historial persistido: {} mensajes", batch.size());
+                } catch (Exception e) {
+                    failedBatches.incrementAndGet();
+                    consecutiveFailures++;
+                    log.error("❌ Error persistiendo historial ({} mensajes): {}", batch.size(), e.getMessage());
+                    requeue(batch);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserta el lote fila por fila: las filas con datos inválidos se descartan;
+     * si la BD no está disponible se reencola lo que falta
+     * @return false si hubo que detenerse (BD no disponible)
+     */
+    private boolean insertRowByRow(List<ChatMessageResponse> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            ChatMessageResponse message = batch.get(i);
+            try {
+                jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, message));
+                written.incrementAndGet();
+            } catch (NonTransientDataAccessResourceException e) {
+                // Conexión o recurso de BD (no es culpa de la fila)
+                log.error("❌ BD no disponible persistiendo historial: {}", e.getMessage());
+                requeue(batch.subList(i, batch.size()));
+                return false;
+            } catch (NonTransientDataAccessException e) {
+                rejectedRows.incrementAndGet();
+                log.error("❌ Mensaje de usuario {} descartado, no se puede persistir: {}",
+                        message.getUserId(), e.getMessage());
+            } catch (Exception e) {
+                log.error("❌ BD no disponible persistiendo historial: {}", e.getMessage());
+                requeue(batch.subList(i, batch.size()));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void bind(PreparedStatement ps, ChatMessageResponse message) throws SQLException {
+        ps.setLong(1, message.getUserId());
+        ps.setString(2, message.getMensaje());
+        ps.setString(3, message.getRespuesta());
+        ps.setTimestamp(4, Timestamp.valueOf(message.getCreatedAt() != null
+                ? message.getCreatedAt()
+                : LocalDateTime.now()));
+    }
+
+    /**
+     * Borra el historial persistido del usuario y lo que tenga pendiente en el buffer
+     */
+    public void deleteUserHistory(Long userId) {
+        synchronized (flushLock) {
+            buffer.removeIf(message -> userId.equals(message.getUserId()));
+            int deleted = jdbcTemplate.update("DELETE FROM chat_messages WHERE user_id = ?", userId);
+            log.debug("🗑️ {} mensajes persistidos eliminados para usuario {}", deleted, userId);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", buffer.size());
+        stats.put("writtenCount", written.get());
+        stats.put("droppedCount", dropped.get());
+        stats.put("failedBatches", failedBatches.get());
+        stats.put("rejectedRows", rejectedRows.get());
+        return stats;
+    }
+
+    private void requeue(List<ChatMessageResponse> batch) {
+        for (ChatMessageResponse message : batch) {
+            if (!buffer.offer(message)) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.tecsup.productivity.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Clasificador de intenciones por reglas (español e inglés)
+ * Responde consultas simples ("¿qué tareas tengo hoy?", "how many habits did I complete")
+ * directamente desde el contexto estructurado, sin llamar a Gemini.
+ * Las preguntas abiertas (consejos, explicaciones) siguen yendo al LLM
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatIntentRouter {
+
+    // El orden define la prioridad de las reglas (la más específica primero)
+    public enum Intent {
+        OVERDUE_TASKS,
+        TOMORROW,
+        UPCOMING_TASKS,
+        EVENTS_TODAY,
+        HABITS_TODAY,
+        PROGRESS_TODAY,
+        TASKS_TODAY
+    }
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^a-z0-9ñ ]+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    // "en la mañana" / "esta mañana" es la mañana de hoy, no el día siguiente
+    private static final Pattern MORNING = Pattern.compile(
+            "\\b((en|por|de) la manana|esta manana|in the morning|this morning)\\b");
+
+    // Si aparece alguna de estas palabras la pregunta es abierta (o pide una acción): va al LLM
+    private static final Pattern OPEN_ENDED = Pattern.compile(
+            "\\b(consejo|consejos|recomienda|recomiendas|recomendacion|sugiere|sugerencia|ayudame|ayuda|"
+                    + "por que|como puedo|como hago|deberia|organiza|organizar|planifica|motiva|explica|"
+                    + "que estudio|primero|priorizo|priorizar|"
+                    + "crea|crear|creame|agrega|agregar|anade|anadir|elimina|eliminar|borra|borrar|"
+                    + "quiero|quisiera|dejar|empezar|recuerdame|"
+                    + "advice|recommend|suggest|help|why|how can|how do|should|plan|organize|explain|motivate|"
+                    + "first|create|add|delete|remove|want|quit|start|remind)\\b");
+
+    // Ancla de tiempo o pregunta directa por la lista (sin ella, la mención no basta)
+    private static final String TOMORROW = "(manana|tomorrow)";
+    private static final String WEEK = "(esta semana|proximos dias|this week|next days)";
+    private static final String AGENDA_ITEMS = "(tareas?|pendientes|entregas?|eventos?|clases?|reuniones?|examen|examenes|"
+            + "tasks?|due|events?|classes?|meetings?|exams?)";
+    private static final String LIST_QUESTION = "(que|cuales|cuantos|cuantas|mis|what|which|how many|my)";
+
+    private static final Map<Intent, Pattern> RULES = new EnumMap<>(Intent.class);
+
+    static {
+        RULES.put(Intent.OVERDUE_TASKS, Pattern.compile(
+                "\\b(vencid[oa]s?|atrasad[oa]s?|pendientes? atrasad|overdue|late tasks?|past due)\\b"));
+        RULES.put(Intent.TOMORROW, Pattern.compile(
+                "\\b" + AGENDA_ITEMS + "\\b.*\\b" + TOMORROW + "\\b"
+                        + "|\\b" + TOMORROW + "\\b.*\\b" + AGENDA_ITEMS + "\\b"
+                        + "|\\bque tengo (para )?" + TOMORROW + "\\b|\\bwhat do i have (for )?" + TOMORROW + "\\b"));
+        // Solo tareas: la semana completa con eventos ("¿qué tengo esta semana?") va al LLM
+        RULES.put(Intent.UPCOMING_TASKS, Pattern.compile(
+                "\\b(proxim[oa]s? tareas?|tareas? proxim[oa]s?|upcoming tasks?|next tasks?)\\b"
+                        + "|\\b(tareas?|pendientes|entregas?|tasks?|due)\\b.*\\b" + WEEK + "\\b"
+                        + "|\\b" + WEEK + "\\b.*\\b(tareas?|pendientes|entregas?|tasks?|due)\\b"));
+        RULES.put(Intent.EVENTS_TODAY, Pattern.compile(
+                "\\b(eventos?|clases?|reuniones?|events?|meetings?|classes?)\\b.*\\b(hoy|today)\\b"
+                        + "|\\b(hoy|today)\\b.*\\b(eventos?|clases?|reuniones?|events?|meetings?|classes?)\\b"));
+        RULES.put(Intent.HABITS_TODAY, Pattern.compile(
+                "\\b(habitos?|habits?)\\b.*\\b(hoy|today)\\b"
+                        + "|\\b(hoy|today)\\b.*\\b(habitos?|habits?)\\b"
+                        + "|\\b" + LIST_QUESTION + "( \\w+)? (habitos?|habits?)\\b"));
+        RULES.put(Intent.PROGRESS_TODAY, Pattern.compile(
+                "\\b(mi progreso|progreso de hoy|como voy|avance de hoy|my progress|how am i doing|progress today)\\b"));
+        RULES.put(Intent.TASKS_TODAY, Pattern.compile(
+                "\\b(tareas?|tasks?|pendientes)\\b.*\\b(hoy|today)\\b"
+                        + "|\\b(hoy|today)\\b.*\\b(tareas?|tasks?|pendientes)\\b"
+                        + "|\\bque tengo (para )?hoy\\b|\\bwhat do i have today\\b|\\bdue today\\b"));
+    }
+
+    @Value("${chatbot.intent-router.enabled:true}")
+    private boolean enabled;
+
+    // Mensajes más largos se consideran abiertos
+    @Value("${chatbot.intent-router.max-length:120}")
+    private int maxLength;
+
+    private final ChatbotContextService chatbotContextService;
+
+    private final AtomicLong routed = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final Map<Intent, AtomicLong> routedByIntent = new EnumMap<>(Intent.class);
+
+    {
+        for (Intent intent : Intent.values()) {
+            routedByIntent.put(intent, new AtomicLong());
+        }
+    }
+
+    /**
+     * Intenta responder localmente. Vacío = enviar a Gemini
+     */
+    public Optional<String> tryAnswer(String message) {
+        Optional<Intent> intent = enabled ? classify(message) : Optional.empty();
+        if (intent.isEmpty()) {
+            forwarded.incrementAndGet();
+            return Optional.empty();
+        }
+
+        Map<String, Object> context = chatbotContextService.getFullContext();
+        String answer = answer(intent.get(), context);
+
+        routed.incrementAndGet();
+        routedByIntent.get(intent.get()).incrementAndGet();
+        log.info("🧭 Mensaje respondido localmente (intención {})", intent.get());
+        return Optional.of(answer);
+    }
+
+    public Optional<Intent> classify(String message) {
+        if (message == null || message.isBlank() || message.length() > maxLength) {
+            return Optional.empty();
+        }
+
+        String text = MORNING.matcher(normalize(message)).replaceAll(" ");
+        if (OPEN_ENDED.matcher(text).find()) {
+            return Optional.empty();
+        }
+
+        for (Map.Entry<Intent, Pattern> rule : RULES.entrySet()) {
+            if (rule.getValue().matcher(text).find()) {
+                return Optional.of(rule.getKey());
+            }
+        }
+        return Optional.empty();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("routed", routed.get());
+        stats.put("forwarded", forwarded.get());
+
+        Map<String, Long> byIntent = new LinkedHashMap<>();
+        routedByIntent.forEach((intent, count) -> byIntent.put(intent.name(), count.get()));
+        stats.put("routedByIntent", byIntent);
+        return stats;
+    }
+
+    // ============================================
+    // RESPUESTAS DESDE EL CONTEXTO
+    // ============================================
+
+    private String answer(Intent intent, Map<String, Object> context) {
+        Map<String, Object> today = section(context, "today");
+
+        return switch (intent) {
+            case TASKS_TODAY -> answerTasksToday(list(today, "tasks"));
+            case OVERDUE_TASKS -> answerOverdue(list(section(context, "overdue"), "tasks"));
+            case TOMORROW -> answerTomorrow(section(context, "tomorrow"));
+            case UPCOMING_TASKS -> answerUpcoming(list(section(context, "upcoming"), "tasks"));
+            case EVENTS_TODAY -> answerEventsToday(list(today, "events"));
+            case HABITS_TODAY -> answerHabitsToday(list(today, "habits"));
+            case PROGRESS_TODAY -> answerProgress(today);
+        };
+    }
+
+    private String answerTasksToday(List<Map<String, Object>> tasks) {
+        if (tasks.isEmpty()) {
+            return "🎉 No tienes tareas para hoy.";
+        }
+
+        List<Map<String, Object>> pending = tasks.stream()
+                .filter(t -> !Boolean.TRUE.equals(t.get("completed")))
+                .toList();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("📋 Tienes ").append(tasks.size()).append(tasks.size() == 1 ? " tarea" : " tareas")
+                .append(" para hoy (").append(tasks.size() - pending.size()).append(" completadas).\n");
+        if (pending.isEmpty()) {
+            sb.append("✅ ¡Ya completaste todas!");
+        } else {
+            sb.append("Pendientes:\n");
+            pending.forEach(t -> appendTask(sb, t));
+        }
+        return sb.toString().trim();
+    }
+
+    private String answerOverdue(List<Map<String, Object>> tasks) {
+        if (tasks.isEmpty()) {
+            return "✅ No tienes tareas vencidas. ¡Bien hecho!";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("⚠️ Tienes ").append(tasks.size()).append(tasks.size() == 1 ? " tarea vencida" : " tareas vencidas")
+                .append(":\n");
+        tasks.forEach(t -> sb.append("• ").append(t.get("titulo"))
+                .append(" (venció: ").append(t.get("fechaLimite")).append(")\n"));
+        return sb.toString().trim();
+    }
+
+    private String answerTomorrow(Map<String, Object> tomorrow) {
+        List<Map<String, Object>> pending = list(tomorrow, "tasks").stream()
+                .filter(t -> !Boolean.TRUE.equals(t.get("completed")))
+                .toList();
+        List<Map<String, Object>> events = list(tomorrow, "events");
+        if (pending.isEmpty() && events.isEmpty()) {
+            return "🌙 No tienes tareas ni eventos para mañana.";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("🌙 Mañana (").append(tomorrow.get("date")).append("):\n");
+        if (!events.isEmpty()) {
+            sb.append("📅 Eventos:\n");
+            events.forEach(e -> appendEvent(sb, e));
+        }
+        if (!pending.isEmpty()) {
+            sb.append("📋 Tareas:\n");
+            pending.forEach(t -> appendTask(sb, t));
+        }
+        return sb.toString().trim();
+    }
+
+    private String answerUpcoming(List<Map<String, Object>> tasks) {
+        if (tasks.isEmpty()) {
+            return "🔜 No tienes tareas en los próximos 7 días.";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("🔜 Próximas tareas (7 días): ").append(tasks.size()).append("\n");
+        tasks.forEach(t -> sb.append("• ").append(t.get("titulo"))
+                .append(" (").append(t.get("fechaLimite")).append(")\n"));
+        return sb.toString().trim();
+    }
+
+    private String answerEventsToday(List<Map<String, Object>> events) {
+        if (events.isEmpty()) {
+            return "📅 No tienes eventos programados para hoy.";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("📅 Eventos de hoy: ").append(events.size()).append("\n");
+        events.forEach(e -> appendEvent(sb, e));
+        return sb.toString().trim();
+    }
+
+    private String answerHabitsToday(List<Map<String, Object>> habits) {
+        if (habits.isEmpty()) {
+            return "💪 No tienes hábitos activos.";
+        }
+
+        long completed = habits.stream().filter(h -> Boolean.TRUE.equals(h.get("completado"))).count();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("💪 Hábitos completados hoy: ").append(completed).append("/").append(habits.size()).append("\n");
+        habits.forEach(h -> {
+            sb.append(Boolean.TRUE.equals(h.get("completado")) ? "✅ " : "⏳ ").append(h.get("nombre"));
+            if (!Boolean.TRUE.equals(h.get("esComida")) && h.get("metaDiaria") != null) {
+                sb.append(" (").append(h.get("valorActual")).append("/").append(h.get("metaDiaria")).append(")");
+            }
+            sb.append("\n");
+        });
+        return sb.toString().trim();
+    }
+
+    private String answerProgress(Map<String, Object> today) {
+        List<Map<String, Object>> tasks = list(today, "tasks");
+        List<Map<String, Object>> habits = list(today, "habits");
+        long completedTasks = tasks.stream().filter(t -> Boolean.TRUE.equals(t.get("completed"))).count();
+        long completedHabits = habits.stream().filter(h -> Boolean.TRUE.equals(h.get("completado"))).count();
+
+        return "📊 Tu progreso de hoy: " + today.getOrDefault("progress", 0) + "%\n"
+                + "• Tareas: " + completedTasks + "/" + tasks.size() + "\n"
+                + "• Hábitos: " + completedHabits + "/" + habits.size();
+    }
+
+    private static void appendTask(StringBuilder sb, Map<String, Object> task) {
+        sb.append("• ").append(task.get("titulo")).append(" [").append(task.get("prioridad")).append("]");
+        if ("tecsup".equals(task.get("source"))) {
+            sb.append(" 🎓");
+        }
+        sb.append("\n");
+    }
+
+    private static void appendEvent(StringBuilder sb, Map<String, Object> event) {
+        sb.append("• ");
+        if (event.get("hora") != null) {
+            sb.append(event.get("hora")).append(" - ");
+        }
+        sb.append(event.get("titulo"));
+        Object curso = event.get("curso");
+        if (curso != null && !curso.toString().isEmpty()) {
+            sb.append(" (").append(curso).append(")");
+        }
+        sb.append("\n");
+    }
+
+    // ============================================
+    // UTILIDADES
+    // ============================================
+
+    private static String normalize(String message) {
+        String text = Normalizer.normalize(message.toLowerCase(), Normalizer.Form.NFD);
+        text = DIACRITICS.matcher(text).replaceAll("");
+        text = NON_WORD.matcher(text).replaceAll(" ");
+        return SPACES.matcher(text).replaceAll(" ").trim();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> section(Map<String, Object> context, String key) {
+        Object value = context.get(key);
+        return value instanceof Map ? (Map<String, Object>) value : Map.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> list(Map<String, Object> section, String key) {
+        Object value = section.get(key);
+        return value instanceof List ? (List<Map<String, Object>>) value : List.of();
+    }
+}
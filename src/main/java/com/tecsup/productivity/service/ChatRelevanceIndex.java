@@ -0,0 +1,329 @@
+package com.tecsup.productivity.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tecsup.productivity.entity.Event;
+import com.tecsup.productivity.entity.Task;
+import com.tecsup.productivity.repository.EventRepository;
+import com.tecsup.productivity.repository.TaskRepository;
+import com.tecsup.productivity.util.Bm25Index;
+import com.tecsup.productivity.util.PromptUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Índice de relevancia por usuario (BM25) sobre tareas pendientes y eventos próximos
+ * - Se construye al primer uso y luego se actualiza por item (crear, editar, borrar)
+ * - Guarda los datos necesarios para mostrar cada item: la consulta no vuelve a la BD
+ * - Los cambios que llegan mientras se construye se encolan y se aplican al terminar
+ * - Los eventos pasados se descartan al consultar (una vez por día)
+ * - La sincronización con TECSUP descarta el índice (se reconstruye en la siguiente consulta)
+ * - Todo local: sin servicios externos de embeddings
+ * Claves de documento: "T:{id}" para tareas, "E:{id}" para eventos
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatRelevanceIndex {
+
+    public static final String TASK_PREFIX = "T:";
+    public static final String EVENT_PREFIX = "E:";
+
+    private final TaskRepository taskRepository;
+    private final EventRepository eventRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${chatbot.relevance.cache-ttl:1800}")
+    private long cacheTtl;
+
+    @Value("${chatbot.relevance.cache-max-size:2000}")
+    private long cacheMaxSize;
+
+    private Cache<Long, UserIndex> indexes;
+    // Cambios recibidos mientras se construye el índice del usuario
+    private final Map<Long, PendingUpdates> building = new ConcurrentHashMap<>();
+
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        this.indexes = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofSeconds(cacheTtl))
+                .maximumSize(cacheMaxSize)
+                .build();
+    }
+
+    /**
+     * Items más relevantes para el mensaje (mayor puntaje primero)
+     */
+    public List<IndexedItem> search(Long userId, String message, int limit) {
+        queries.incrementAndGet();
+        UserIndex index = indexes.get(userId, this::build);
+        finishBuild(userId, index);
+        return index.search(message, limit, LocalDate.now());
+    }
+
+    /**
+     * Tarea creada o modificada (completada = sale del índice)
+     */
+    public void onTaskSaved(Long userId, Task task) {
+        String key = TASK_PREFIX + task.getId();
+        Update update = Boolean.TRUE.equals(task.getCompleted())
+                ? new Update(key, null, null)
+                : new Update(key, taskItem(task), taskText(task));
+        afterCommit(() -> apply(userId, update));
+    }
+
+    public void onTaskDeleted(Long userId, Long taskId) {
+        afterCommit(() -> apply(userId, new Update(TASK_PREFIX + taskId, null, null)));
+    }
+
+    /**
+     * Evento creado o modificado (pasado = sale del índice)
+     */
+    public void onEventSaved(Long userId, Event event) {
+        String key = EVENT_PREFIX + event.getId();
+        boolean past = event.getFecha() != null && event.getFecha().isBefore(LocalDate.now());
+        Update update = past
+                ? new Update(key, null, null)
+                : new Update(key, eventItem(event), eventText(event));
+        afterCommit(() -> apply(userId, update));
+    }
+
+    public void onEventDeleted(Long userId, Long eventId) {
+        afterCommit(() -> apply(userId, new Update(EVENT_PREFIX + eventId, null, null)));
+    }
+
+    /**
+     * Descarta el índice del usuario (cambios masivos, p. ej. sincronización)
+     */
+    public void invalidate(Long userId) {
+        afterCommit(() -> indexes.invalidate(userId));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("indexedUsers", indexes.estimatedSize());
+        stats.put("buildCount", builds.get());
+        stats.put("queryCount", queries.get());
+        return stats;
+    }
+
+    private UserIndex build(Long userId) {
+        long start = System.nanoTime();
+        UserIndex index = new UserIndex();
+
+        // Se registra antes de leer: lo que se confirme desde ahora se reaplica sobre lo leído
+        PendingUpdates pending = new PendingUpdates();
+        building.put(userId, pending);
+
+        try {
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            readOnly.executeWithoutResult(status -> {
+                taskRepository.findByUserIdAndCompletedOrderByPrioridadAscCreatedAtDesc(userId, false)
+                        .forEach(task -> index.put(taskItem(task), taskText(task)));
+                eventRepository.findByUserIdAndFechaGreaterThanEqual(userId, LocalDate.now())
+                        .forEach(event -> index.put(eventItem(event), eventText(event)));
+            });
+        } catch (RuntimeException e) {
+            building.remove(userId, pending);
+            throw e;
+        }
+
+        pending.target = index;
+        builds.incrementAndGet();
+        log.debug("🔎 Índice de relevancia construido para usuario {}: {} items en {} ms",
+                userId, index.size(), Duration.ofNanos(System.nanoTime() - start).toMillis());
+        return index;
+    }
+
+    /**
+     * Aplica los cambios encolados durante la construcción (el índice ya está en la caché,
+     * así que los cambios posteriores van directo a él)
+     */
+    private void finishBuild(Long userId, UserIndex index) {
+        PendingUpdates pending = building.get(userId);
+        if (pending == null || pending.target != index) {
+            return;
+        }
+        synchronized (pending) {
+            if (pending.closed) {
+                return;
+            }
+            pending.updates.forEach(index::apply);
+            pending.closed = true;
+            building.remove(userId, pending);
+        }
+    }
+
+    /**
+     * Solo se actualiza un índice ya construido o en construcción;
+     * si no existe se armará completo al consultarlo
+     */
+    private void apply(Long userId, Update update) {
+        PendingUpdates pending = building.get(userId);
+        if (pending != null) {
+            synchronized (pending) {
+                if (!pending.closed) {
+                    pending.updates.add(update);
+                    return;
+                }
+            }
+        }
+
+        UserIndex index = indexes.getIfPresent(userId);
+        if (index != null) {
+            index.apply(update);
+        }
+    }
+
+    private static IndexedItem taskItem(Task task) {
+        return new IndexedItem(TASK_PREFIX + task.getId(), task.getTitulo(),
+                PromptUtil.stripHtml(task.getDescripcion()), task.getFechaLimite(), null,
+                task.getPrioridad(), task.getSource(), null);
+    }
+
+    private static IndexedItem eventItem(Event event) {
+        return new IndexedItem(EVENT_PREFIX + event.getId(), event.getTitulo(),
+                PromptUtil.stripHtml(event.getDescripcion()), event.getFecha(), event.getHora(),
+                null, event.getSource(), event.getCurso());
+    }
+
+    private String taskText(Task task) {
+        return task.getTitulo() + " " + PromptUtil.stripHtml(task.getDescripcion());
+    }
+
+    private String eventText(Event event) {
+        return event.getTitulo() + " "
+                + (event.getCurso() != null ? event.getCurso() + " " : "")
+                + PromptUtil.stripHtml(event.getDescripcion());
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Datos de un item para mostrarlo en el prompt (copia inmutable, sin entidades JPA)
+     * fecha: fecha límite de la tarea o fecha del evento
+     */
+    @lombok.Value
+    public static class IndexedItem {
+        String key;
+        String titulo;
+        String descripcion;
+        LocalDate fecha;
+        LocalTime hora;
+        Task.TaskPriority prioridad;
+        String source;
+        String curso;
+
+        public boolean isEvent() {
+            return key.startsWith(EVENT_PREFIX);
+        }
+    }
+
+    /**
+     * item null = quitar del índice
+     */
+    private record Update(String key, IndexedItem item, String text) {
+    }
+
+    private static class PendingUpdates {
+        final List<Update> updates = new ArrayList<>();
+        volatile UserIndex target;
+        boolean closed;
+    }
+
+    /**
+     * Índice BM25 de un usuario + los datos de cada item
+     */
+    private static class UserIndex {
+        private final Bm25Index bm25 = new Bm25Index();
+        private final Map<String, IndexedItem> items = new ConcurrentHashMap<>();
+        private volatile LocalDate purgedOn = LocalDate.now();
+
+        void put(IndexedItem item, String text) {
+            items.put(item.getKey(), item);
+            bm25.put(item.getKey(), text);
+        }
+
+        void apply(Update update) {
+            if (update.item() == null) {
+                items.remove(update.key());
+                bm25.remove(update.key());
+            } else {
+                put(update.item(), update.text());
+            }
+        }
+
+        int size() {
+            return bm25.size();
+        }
+
+        List<IndexedItem> search(String message, int limit, LocalDate today) {
+            dropPastEvents(today);
+            return bm25.search(message, limit).stream()
+                    .map(document -> items.get(document.getKey()))
+                    .filter(Objects::nonNull)
+                    .filter(item -> !isPastEvent(item, today))
+                    .toList();
+        }
+
+        /**
+         * Un evento de ayer ya no es "próximo": se quita la primera vez que se consulta cada día
+         */
+        private void dropPastEvents(LocalDate today) {
+            if (!today.isAfter(purgedOn)) {
+                return;
+            }
+            synchronized (this) {
+                if (!today.isAfter(purgedOn)) {
+                    return;
+                }
+                items.values().stream()
+                        .filter(item -> isPastEvent(item, today))
+                        .map(IndexedItem::getKey)
+                        .toList()
+                        .forEach(key -> {
+                            items.remove(key);
+                            bm25.remove(key);
+                        });
+                purgedOn = today;
+            }
+        }
+
+        private static boolean isPastEvent(IndexedItem item, LocalDate today) {
+            return item.isEvent() && item.getFecha() != null && item.getFecha().isBefore(today);
+        }
+    }
+}
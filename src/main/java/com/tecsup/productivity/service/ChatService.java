@@ -2,18 +2,26 @@ package com.tecsup.productivity.service;
 
 import com.tecsup.productivity.dto.request.ChatMessageRequest;
 import com.tecsup.productivity.dto.response.ChatMessageResponse;
-import com.tecsup.productivity.entity.User;
+import com.tecsup.productivity.entity.ChatMessage;
+import com.tecsup.productivity.exception.TooManyRequestsException;
+import com.tecsup.productivity.repository.ChatMessageRepository;
+import com.tecsup.productivity.security.UserSnapshot;
 import com.tecsup.productivity.util.SecurityUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Servicio de Chat con IA (Gemini)
@@ -27,79 +35,271 @@ public class ChatService {
     private final GeminiAIService geminiAIService;
     private final ChatbotContextService chatbotContextService;
     private final SecurityUtil securityUtil;
+    private final ChatSessionStore chatSessionStore;
+    private final ChatIntentRouter chatIntentRouter;
+    private final ChatHistoryWriter chatHistoryWriter;
+    private final ChatMessageRepository chatMessageRepository;
+    private final ConversationSummarizer conversationSummarizer;
 
     /**
      * Envía un mensaje al chatbot con contexto completo del usuario
+     * Sin transacción propia: el contexto se arma en una transacción corta
+     * (ChatbotContextService) y la llamada a Gemini no retiene hilo ni conexión
      */
-    @Transactional(readOnly = true)
-    public ChatMessageResponse sendMessage(ChatMessageRequest request) {
-        User user = securityUtil.getCurrentUser();
+    public Mono<ChatMessageResponse> sendMessage(ChatMessageRequest request) {
+        UserSnapshot user = securityUtil.getCurrentUserSnapshot();
 
         log.info("💬 Usuario {} envía mensaje: {}", user.getEmail(), request.getMensaje());
 
         // Verificar si el chat está habilitado
-        Boolean chatEnabled = (Boolean) user.getPreferences().getOrDefault("chatEnabled", true);
-        if (!chatEnabled) {
+        if (!user.isChatEnabled()) {
             throw new RuntimeException("El chatbot está deshabilitado. Actívalo en tu configuración.");
         }
 
+        Long userId = user.getId();
+        String mensaje = request.getMensaje().trim();
+
+        // Consultas simples: se responden desde el contexto sin llamar a Gemini
+        Optional<String> localAnswer = chatIntentRouter.tryAnswer(mensaje);
+        if (localAnswer.isPresent()) {
+            return Mono.just(buildAndStore(userId, mensaje, localAnswer.get()));
+        }
+
         // Verificar si Gemini está configurado
         if (!geminiAIService.isConfigured()) {
             log.error("❌ Gemini AI no está configurado");
             throw new RuntimeException("El servicio de IA no está disponible. Contacta al administrador.");
         }
 
-        // Construir prompt con contexto completo
-        String contextualPrompt = chatbotContextService.generateContextualPrompt(request.getMensaje());
+        // Construir prompt con contexto completo (en el hilo del request)
+        String contextualPrompt = chatbotContextService.generateContextualPrompt(
+                request.getMensaje(), conversationSummarizer.getSummary(userId));
+
+        // Generar respuesta con Gemini (asíncrono)
+        List<ChatMessageResponse> history = getRecentTurns(userId);
 
-        // Generar respuesta con Gemini
-        String respuesta = geminiAIService.generateResponse(contextualPrompt);
+        return geminiAIService.generateReplyAsync(contextualPrompt, history,
+                        callerKey(userId), GeminiRequestScheduler.Priority.INTERACTIVE)
+                .map(reply -> {
+                    // Un fallback se muestra pero no entra al historial (no es un turno real del modelo)
+                    if (reply.isFallback()) {
+                        return buildResponse(userId, mensaje, reply.getText());
+                    }
+                    ChatMessageResponse response = buildAndStore(userId, mensaje, reply.getText());
+                    log.info("✅ Respuesta generada para usuario {}", userId);
+                    return response;
+                });
+    }
 
-        // Crear respuesta (NO se persiste en BD)
-        ChatMessageResponse response = ChatMessageResponse.builder()
-                .id(null) // No tiene ID porque NO se guarda
-                .userId(user.getId())
-                .mensaje(request.getMensaje().trim())
+    /**
+     * Crea la respuesta y la agrega al historial en memoria
+     * La persistencia es asíncrona (ChatHistoryWriter): el request no espera el INSERT
+     */
+    private ChatMessageResponse buildAndStore(Long userId, String mensaje, String respuesta) {
+        ChatMessageResponse response = buildResponse(userId, mensaje, respuesta);
+        addToHistory(userId, response);
+        return response;
+    }
+
+    private ChatMessageResponse buildResponse(Long userId, String mensaje, String respuesta) {
+        return ChatMessageResponse.builder()
+                .id(null) // El ID lo asigna la BD al escribir el lote
+                .userId(userId)
+                .mensaje(mensaje)
                 .respuesta(respuesta)
                 .createdAt(LocalDateTime.now())
                 .build();
+    }
 
-        // Agregar al historial temporal (caché)
-        addToHistory(user.getId(), response);
+    /**
+     * Envía un mensaje y devuelve la respuesta en streaming (SSE)
+     * Eventos: "chunk" con cada fragmento de texto y "done" con el mensaje completo
+     * El contexto se arma antes de suscribirse (en el hilo del request)
+     */
+    public Flux<ServerSentEvent<Object>> streamMessage(ChatMessageRequest request) {
+        UserSnapshot user = securityUtil.getCurrentUserSnapshot();
 
-        log.info("✅ Respuesta generada para usuario {}", user.getEmail());
-        return response;
+        log.info("💬 Usuario {} envía mensaje (stream): {}", user.getEmail(), request.getMensaje());
+
+        if (!user.isChatEnabled()) {
+            return Flux.just(errorEvent("El chatbot está deshabilitado. Actívalo en tu configuración."));
+        }
+
+        Long userId = user.getId();
+        String mensaje = request.getMensaje().trim();
+
+        Optional<String> localAnswer = chatIntentRouter.tryAnswer(mensaje);
+        if (localAnswer.isPresent()) {
+            ChatMessageResponse response = buildAndStore(userId, mensaje, localAnswer.get());
+            return Flux.just(
+                    ServerSentEvent.builder((Object) Map.of("text", response.getRespuesta())).event("chunk").build(),
+                    ServerSentEvent.builder((Object) response).event("done").build()
+            );
+        }
+
+        if (!geminiAIService.isConfigured()) {
+            log.error("❌ Gemini AI no está configurado");
+            return Flux.just(errorEvent("El servicio de IA no está disponible. Contacta al administrador."));
+        }
+        String contextualPrompt = chatbotContextService.generateContextualPrompt(
+                request.getMensaje(), conversationSummarizer.getSummary(userId));
+
+        StringBuilder respuesta = new StringBuilder();
+        AtomicBoolean fallback = new AtomicBoolean();
+
+        List<ChatMessageResponse> history = getRecentTurns(userId);
+
+        Flux<ServerSentEvent<Object>> chunks = geminiAIService.streamReply(contextualPrompt, history,
+                        callerKey(userId), GeminiRequestScheduler.Priority.INTERACTIVE)
+                .doOnNext(chunk -> {
+                    respuesta.append(chunk.getText());
+                    if (chunk.isFallback()) {
+                        fallback.set(true);
+                    }
+                })
+                .map(chunk -> ServerSentEvent.builder((Object) Map.of("text", chunk.getText()))
+                        .event("chunk")
+                        .build());
+
+        // Al completar el stream se guarda el mensaje completo en el historial (salvo texto de fallback)
+        Mono<ServerSentEvent<Object>> done = Mono.fromSupplier(() -> {
+            if (fallback.get()) {
+                return ServerSentEvent.builder((Object) buildResponse(userId, mensaje, respuesta.toString().trim()))
+                        .event("done")
+                        .build();
+            }
+            ChatMessageResponse response = buildAndStore(userId, mensaje, respuesta.toString().trim());
+            log.info("✅ Respuesta en streaming completada para usuario {}", userId);
+
+            return ServerSentEvent.builder((Object) response)
+                    .event("done")
+                    .build();
+        });
+
+        // Sin cuota de Gemini: evento de error con el tiempo sugerido de reintento
+        return chunks.concatWith(done)
+                .onErrorResume(TooManyRequestsException.class, e -> Flux.just(
+                        ServerSentEvent.builder((Object) Map.of(
+                                        "message", e.getMessage(),
+                                        "retryAfter", e.getRetryAfterSeconds()))
+                                .event("error")
+                                .build()));
+    }
+
+    private ServerSentEvent<Object> errorEvent(String message) {
+        return ServerSentEvent.builder((Object) Map.of("message", message))
+                .event("error")
+                .build();
     }
 
     /**
-     * Obtiene el historial temporal de la sesión
+     * Cola del usuario en el planificador de Gemini
      */
-    @Cacheable(value = "chatHistory", key = "#userId")
-    public List<ChatMessageResponse> getSessionHistory(Long userId) {
-        log.debug("📋 Inicializando historial en caché para usuario {}", userId);
-        return new ArrayList<>();
+    private String callerKey(Long userId) {
+        return "user:" + userId;
     }
 
     /**
-     * Agrega mensaje al historial temporal
+     * Obtiene el historial en orden cronológico
+     * - Sin cursor: los mensajes recientes en memoria (cargados de la BD si hace falta)
+     * - Con cursor (before, beforeId): mensajes anteriores; de memoria si alcanzan,
+     *   si no, consulta keyset por (createdAt, id). Sin beforeId (mensaje aún sin id)
+     *   solo se toman los de createdAt estrictamente anterior
      */
-    private void addToHistory(Long userId, ChatMessageResponse message) {
-        List<ChatMessageResponse> history = getSessionHistory(userId);
-        history.add(message);
+    public List<ChatMessageResponse> getSessionHistory(Long userId, LocalDateTime before, Long beforeId, int limit) {
+        loadSession(userId);
+        List<ChatMessageResponse> recent = chatSessionStore.getHistory(userId);
 
-        // Limitar a últimos 20 mensajes
-        if (history.size() > 20) {
-            history.remove(0);
+        if (before == null) {
+            return lastN(recent, limit);
         }
 
-        log.debug("📝 Historial actualizado. Total: {} mensajes", history.size());
+        List<ChatMessageResponse> older = new ArrayList<>();
+        for (ChatMessageResponse message : recent) {
+            if (isBefore(message, before, beforeId)) {
+                older.add(message);
+            }
+        }
+        if (older.size() >= limit) {
+            return lastN(older, limit);
+        }
+
+        List<ChatMessageResponse> page = new ArrayList<>(chatMessageRepository
+                .findBefore(userId, before, beforeId != null ? beforeId : 0L, PageRequest.of(0, limit))
+                .stream()
+                .map(this::toResponse)
+                .toList());
+        Collections.reverse(page);
+        return page;
+    }
+
+    private boolean isBefore(ChatMessageResponse message, LocalDateTime before, Long beforeId) {
+        if (message.getCreatedAt() == null) {
+            return false;
+        }
+        if (message.getCreatedAt().isBefore(before)) {
+            return true;
+        }
+        return message.getCreatedAt().isEqual(before)
+                && beforeId != null && message.getId() != null && message.getId() < beforeId;
+    }
+
+    /**
+     * Turnos para enviar a Gemini (los antiguos viajan en el resumen)
+     */
+    private List<ChatMessageResponse> getRecentTurns(Long userId) {
+        loadSession(userId);
+        return conversationSummarizer.getTurnsForPrompt(userId);
+    }
+
+    /**
+     * Tras un reinicio (o en otra instancia) la sesión se recupera de la BD
+     */
+    private void loadSession(Long userId) {
+        chatSessionStore.ensureLoaded(userId, max -> {
+            List<ChatMessageResponse> latest = new ArrayList<>(chatMessageRepository
+                    .findLatest(userId, PageRequest.of(0, max))
+                    .stream()
+                    .map(this::toResponse)
+                    .toList());
+            Collections.reverse(latest);
+            log.debug("📥 Historial de usuario {} cargado desde BD: {} mensajes", userId, latest.size());
+            return latest;
+        });
+    }
+
+    private List<ChatMessageResponse> lastN(List<ChatMessageResponse> messages, int limit) {
+        return messages.size() > limit
+                ? messages.subList(messages.size() - limit, messages.size())
+                : messages;
+    }
+
+    private ChatMessageResponse toResponse(ChatMessage message) {
+        return ChatMessageResponse.builder()
+                .id(message.getId())
+                .userId(message.getUserId())
+                .mensaje(message.getMensaje())
+                .respuesta(message.getRespuesta())
+                .createdAt(message.getCreatedAt())
+                .build();
+    }
+
+    /**
+     * Agrega mensaje al historial en memoria y lo encola para persistirlo
+     * Si se acumularon turnos antiguos, se pliegan en el resumen (en segundo plano)
+     */
+    private void addToHistory(Long userId, ChatMessageResponse message) {
+        chatSessionStore.append(userId, message);
+        chatHistoryWriter.enqueue(message);
+        conversationSummarizer.maybeFold(userId);
     }
 
     /**
-     * Limpia el historial de chat
+     * Limpia el historial de chat (memoria, pendientes y BD)
      */
-    @CacheEvict(value = "chatHistory", key = "#userId")
     public void clearHistory(Long userId) {
+        chatHistoryWriter.deleteUserHistory(userId);
+        chatSessionStore.reset(userId);
         log.info("🗑️ Historial limpiado para usuario {}", userId);
     }
-}
\ No newline at end of file
+}
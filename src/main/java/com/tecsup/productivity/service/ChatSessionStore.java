@@ -0,0 +1,275 @@
+package com.tecsup.productivity.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tecsup.productivity.dto.response.ChatMessageResponse;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Historial reciente del chatbot en memoria (la copia durable está en chat_messages)
+ * - Un buffer circular de tamaño fijo por usuario
+ * - Escrituras atómicas por usuario (asMap().compute)
+ * - Caffeine acotada por bytes aproximados, no por número de conversaciones
+ * - Resumen acumulado de los turnos antiguos (ConversationSummarizer): cada mensaje
+ *   tiene un número de secuencia y summarizedSeq marca hasta dónde cubre el resumen
+ */
+@Slf4j
+@Service
+public class ChatSessionStore {
+
+    @Value("${chatbot.session.timeout:3600}")
+    private int sessionTimeout;
+
+    @Value("${chatbot.session.max-messages:20}")
+    private int maxMessages;
+
+    @Value("${chatbot.session.max-bytes:52428800}")
+    private long maxBytes;
+
+    private Cache<Long, ChatSession> sessions;
+
+    @PostConstruct
+    public void init() {
+        this.sessions = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofSeconds(sessionTimeout))
+                .maximumWeight(maxBytes)
+                .weigher((Long userId, ChatSession session) -> session.weight())
+                .build();
+    }
+
+    /**
+     * Agrega un mensaje al historial del usuario
+     * compute es atómico por clave y recalcula el peso de la sesión
+     */
+    public void append(Long userId, ChatMessageResponse message) {
+        ChatSession session = sessions.asMap().compute(userId, (id, current) -> {
+            ChatSession target = current != null ? current : new ChatSession(maxMessages);
+            target.append(message);
+            return target;
+        });
+        log.debug("📝 Historial actualizado. Total: {} mensajes", session.size());
+    }
+
+    /**
+     * Carga la sesión desde la BD si no está en memoria (reinicio u otra instancia)
+     * El loader recibe el máximo de mensajes y devuelve los más recientes en orden cronológico
+     */
+    public void ensureLoaded(Long userId, IntFunction<List<ChatMessageResponse>> loader) {
+        if (sessions.getIfPresent(userId) != null) {
+            return;
+        }
+        sessions.get(userId, id -> {
+            ChatSession session = new ChatSession(maxMessages);
+            loader.apply(maxMessages).forEach(session::append);
+            return session;
+        });
+    }
+
+    /**
+     * Marca la sesión como vacía (en memoria), p. ej. tras limpiar el historial
+     */
+    public void reset(Long userId) {
+        sessions.put(userId, new ChatSession(maxMessages));
+    }
+
+    /**
+     * Historial completo en orden cronológico (copia)
+     */
+    public List<ChatMessageResponse> getHistory(Long userId) {
+        ChatSession session = sessions.getIfPresent(userId);
+        return session != null ? session.lastMessages(maxMessages) : Collections.emptyList();
+    }
+
+    /**
+     * Últimos N mensajes (pregunta + respuesta) en orden cronológico
+     */
+    public List<ChatMessageResponse> getRecentTurns(Long userId, int turns) {
+        ChatSession session = sessions.getIfPresent(userId);
+        return session != null && turns > 0 ? session.lastMessages(turns) : Collections.emptyList();
+    }
+
+    public void clear(Long userId) {
+        sessions.invalidate(userId);
+    }
+
+    /**
+     * Turnos aún no incluidos en el resumen, acotados entre minTurns y maxTurns
+     */
+    public List<ChatMessageResponse> getUnsummarizedTurns(Long userId, int minTurns, int maxTurns) {
+        ChatSession session = sessions.getIfPresent(userId);
+        return session != null && maxTurns > 0
+                ? session.lastMessages(session.unsummarizedCount(minTurns, maxTurns))
+                : Collections.emptyList();
+    }
+
+    /**
+     * Resumen de los turnos antiguos de la conversación (null si no hay)
+     */
+    public String getSummary(Long userId) {
+        ChatSession session = sessions.getIfPresent(userId);
+        return session != null ? session.summary() : null;
+    }
+
+    /**
+     * Reserva los turnos a resumir si hay al menos {@code threshold} fuera de los
+     * últimos {@code keepTurns}. Solo un resumen en curso por sesión
+     */
+    public FoldTask beginFold(Long userId, int keepTurns, int threshold) {
+        ChatSession session = sessions.getIfPresent(userId);
+        return session != null ? session.beginFold(keepTurns, threshold) : null;
+    }
+
+    /**
+     * Aplica el nuevo resumen si la sesión sigue siendo la misma (no se limpió entretanto)
+     */
+    public void completeFold(Long userId, FoldTask task, String summary) {
+        sessions.asMap().computeIfPresent(userId, (id, current) -> {
+            if (current == task.session) {
+                current.completeFold(task, summary);
+            }
+            return current;
+        });
+    }
+
+    public void abortFold(FoldTask task) {
+        task.session.abortFold();
+    }
+
+    /**
+     * Turnos reservados para plegar en el resumen
+     */
+    public static final class FoldTask {
+        private final ChatSession session;
+        private final String previousSummary;
+        private final List<ChatMessageResponse> messages;
+        private final long upToSeq;
+
+        FoldTask(ChatSession session, String previousSummary, List<ChatMessageResponse> messages, long upToSeq) {
+            this.session = session;
+            this.previousSummary = previousSummary;
+            this.messages = messages;
+            this.upToSeq = upToSeq;
+        }
+
+        public String getPreviousSummary() {
+            return previousSummary;
+        }
+
+        public List<ChatMessageResponse> getMessages() {
+            return messages;
+        }
+    }
+
+    /**
+     * Buffer circular de mensajes de un usuario
+     */
+    static final class ChatSession {
+
+        // Bytes aproximados por mensaje además del texto (objeto, fechas, ids)
+        private static final int MESSAGE_OVERHEAD = 96;
+
+        private final ChatMessageResponse[] ring;
+        private int head; // próxima posición de escritura
+        private int size;
+        private long bytes;
+
+        private long seq;            // mensajes agregados desde que existe la sesión
+        private long summarizedSeq;  // último seq incluido en el resumen
+        private String summary;
+        private boolean folding;
+
+        ChatSession(int capacity) {
+            this.ring = new ChatMessageResponse[Math.max(1, capacity)];
+        }
+
+        synchronized void append(ChatMessageResponse message) {
+            if (size == ring.length) {
+                bytes -= weigh(ring[head]);
+            } else {
+                size++;
+            }
+            ring[head] = message;
+            head = (head + 1) % ring.length;
+            bytes += weigh(message);
+            seq++;
+        }
+
+        synchronized int unsummarizedCount(int min, int max) {
+            return (int) Math.min(max, Math.max(min, seq - summarizedSeq));
+        }
+
+        synchronized String summary() {
+            return summary;
+        }
+
+        synchronized FoldTask beginFold(int keepTurns, int threshold) {
+            long upTo = seq - Math.max(0, keepTurns);
+            if (folding || upTo - summarizedSeq < Math.max(1, threshold)) {
+                return null;
+            }
+
+            // Solo los que siguen en el buffer (el más antiguo en memoria tiene seq - size + 1)
+            long from = Math.max(summarizedSeq + 1, seq - size + 1);
+            List<ChatMessageResponse> messages = new ArrayList<>();
+            for (long s = from; s <= upTo; s++) {
+                messages.add(ring[(int) Math.floorMod(s - 1, (long) ring.length)]);
+            }
+            if (messages.isEmpty()) {
+                summarizedSeq = upTo;
+                return null;
+            }
+
+            folding = true;
+            return new FoldTask(this, summary, messages, upTo);
+        }
+
+        synchronized void completeFold(FoldTask task, String newSummary) {
+            folding = false;
+            if (task.upToSeq <= summarizedSeq) {
+                return;
+            }
+            bytes += 2L * (length(newSummary) - length(summary));
+            summary = newSummary;
+            summarizedSeq = task.upToSeq;
+        }
+
+        synchronized void abortFold() {
+            folding = false;
+        }
+
+        synchronized List<ChatMessageResponse> lastMessages(int count) {
+            int n = Math.min(count, size);
+            List<ChatMessageResponse> result = new ArrayList<>(n);
+            for (int i = n; i > 0; i--) {
+                result.add(ring[Math.floorMod(head - i, ring.length)]);
+            }
+            return result;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized int weight() {
+            return (int) Math.min(Integer.MAX_VALUE, bytes);
+        }
+
+        private static long weigh(ChatMessageResponse message) {
+            long chars = length(message.getMensaje()) + length(message.getRespuesta());
+            return MESSAGE_OVERHEAD + chars * 2; // UTF-16
+        }
+
+        private static int length(String text) {
+            return text != null ? text.length() : 0;
+        }
+    }
+}
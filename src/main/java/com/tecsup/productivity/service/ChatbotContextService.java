@@ -3,15 +3,26 @@ package com.tecsup.productivity.service;
 import com.tecsup.productivity.dto.response.*;
 import com.tecsup.productivity.entity.*;
 import com.tecsup.productivity.repository.*;
+import com.tecsup.productivity.security.UserSnapshot;
+import com.tecsup.productivity.util.PromptUtil;
 import com.tecsup.productivity.util.SecurityUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -27,17 +38,75 @@ public class ChatbotContextService {
     private final EventRepository eventRepository;
     private final HabitRepository habitRepository;
     private final HabitLogRepository habitLogRepository;
+    private final UserRepository userRepository;
     private final DailySummaryService dailySummaryService;
     private final SecurityUtil securityUtil;
+    private final CacheManager cacheManager;
+    private final PlatformTransactionManager transactionManager;
+    private final ChatRelevanceIndex chatRelevanceIndex;
+
+    private static final String CONTEXT_CACHE = "chatContext";
+    private static final int UPCOMING_DAYS = 3;
+    private static final Comparator<Task> BY_PRIORITY =
+            Comparator.comparing(Task::getPrioridad, Comparator.nullsLast(Comparator.naturalOrder()));
+    // Títulos de sección y líneas "… y N más"
+    private static final int SECTION_OVERHEAD_TOKENS = 60;
+
+    @Value("${chatbot.context.max-tasks:10}")
+    private int maxTasks;
+
+    @Value("${chatbot.context.max-events:5}")
+    private int maxEvents;
+
+    @Value("${chatbot.context.max-description-chars:160}")
+    private int maxDescriptionChars;
+
+    // Presupuesto de la sección de contexto = max-tokens de Gemini × multiplicador
+    @Value("${google.gemini.api.max-tokens:500}")
+    private int geminiMaxTokens;
+
+    @Value("${chatbot.context.budget-multiplier:2.0}")
+    private double budgetMultiplier;
+
+    // Items extra elegidos por relevancia (BM25) respecto a la pregunta
+    @Value("${chatbot.relevance.enabled:true}")
+    private boolean relevanceEnabled;
+
+    @Value("${chatbot.relevance.max-items:5}")
+    private int relevanceMaxItems;
+
+    @Value("${chatbot.relevance.max-tokens:300}")
+    private int relevanceMaxTokens;
+
+    // Métricas del tamaño final del prompt (tokens estimados)
+    private final AtomicLong promptCount = new AtomicLong();
+    private final AtomicLong promptTokensTotal = new AtomicLong();
+    private final AtomicLong promptTokensMax = new AtomicLong();
+    private final AtomicLong promptTokensLast = new AtomicLong();
 
     /**
      * Obtiene el contexto COMPLETO del usuario para el chatbot
+     * Cacheado por usuario y fecha igual que el contexto del prompt
+     * (el mapa devuelto es compartido: no modificarlo)
      */
-    @Transactional(readOnly = true)
     public Map<String, Object> getFullContext() {
-        User user = securityUtil.getCurrentUser();
+        UserSnapshot user = securityUtil.getCurrentUserSnapshot();
         LocalDate today = LocalDate.now();
 
+        Cache cache = cacheManager.getCache(CONTEXT_CACHE);
+        if (cache == null) {
+            return buildFullContextReadOnly(user, today);
+        }
+        return cache.get(fullContextKey(user.getId(), today), () -> buildFullContextReadOnly(user, today));
+    }
+
+    private Map<String, Object> buildFullContextReadOnly(UserSnapshot user, LocalDate today) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        return readOnly.execute(status -> buildFullContext(user, today));
+    }
+
+    private Map<String, Object> buildFullContext(UserSnapshot user, LocalDate today) {
         log.info("🤖 Generando contexto completo para chatbot - Usuario: {}", user.getEmail());
 
         Map<String, Object> context = new HashMap<>();
@@ -48,16 +117,19 @@ public class ChatbotContextService {
         // 2️⃣ Resumen del día actual
         context.put("today", buildTodayContext(user, today));
 
-        // 3️⃣ Tareas próximas (7 días)
+        // 3️⃣ Agenda de mañana (tareas y eventos)
+        context.put("tomorrow", buildTomorrowContext(user, today.plusDays(1)));
+
+        // 4️⃣ Tareas próximas (7 días)
         context.put("upcoming", buildUpcomingContext(user, today));
 
-        // 4️⃣ Tareas vencidas
+        // 5️⃣ Tareas vencidas
         context.put("overdue", buildOverdueContext(user, today));
 
-        // 5️⃣ Resumen de ayer
+        // 6️⃣ Resumen de ayer
         context.put("yesterday", buildYesterdayContext(user, today.minusDays(1)));
 
-        // 6️⃣ Estadísticas generales
+        // 7️⃣ Estadísticas generales
         context.put("summary", buildSummaryStats(user, today));
 
         log.debug("✅ Contexto generado con {} secciones", context.size());
@@ -65,114 +137,389 @@ public class ChatbotContextService {
     }
 
     /**
-     * Genera un prompt formateado para Gemini con el contexto completo
+     * Instrucciones fijas de ProductiBot (identidad, capacidades, estilo y reglas)
+     * Se envían como systemInstruction de Gemini, no en cada prompt
+     */
+    public static final String SYSTEM_INSTRUCTION = """
+            Eres ProductiBot, el asistente personal del usuario (su nombre aparece en el contexto).
+            Tu misión es ayudarle a ser más productivo y mantener buenos hábitos.
+
+            CAPACIDADES:
+            ✅ Consultar tareas, eventos y hábitos
+            ✅ Dar consejos personalizados de productividad
+            ✅ Sugerir rutinas de ejercicio, estudio y bienestar
+            ✅ Ayudar a organizar el tiempo y priorizar
+            ✅ Motivar y dar seguimiento al progreso
+
+            ESTILO:
+            - Conciso (máximo 4-5 oraciones)
+            - Amigable y motivador 😊
+            - Usa emojis ocasionalmente (1-2 por respuesta)
+            - Práctico y accionable
+
+            INSTRUCCIONES:
+            1. Responde basándote en el contexto del usuario que acompaña cada pregunta
+            2. Si preguntan sobre tareas/eventos, usa los datos exactos
+            3. Si piden consejos, sé específico y práctico
+            4. Menciona el progreso cuando sea relevante
+            5. Sé motivador pero realista
+            6. Si no hay info suficiente, sugiere alternativas
+            7. NO digas que puedes agendar cosas, solo consultar
+            """;
+
+    /**
+     * Genera el prompt por request para Gemini: contexto del usuario + pregunta
+     * Las instrucciones fijas viajan aparte (SYSTEM_INSTRUCTION)
+     * Sin transacción propia: solo se abre una (de lectura) si el contexto no está en caché
      */
-    @Transactional(readOnly = true)
     public String generateContextualPrompt(String userMessage) {
-        User user = securityUtil.getCurrentUser();
+        return generateContextualPrompt(userMessage, null);
+    }
+
+    /**
+     * Igual que generateContextualPrompt, con el resumen de los turnos antiguos
+     * de la conversación (los recientes viajan como historial)
+     */
+    public String generateContextualPrompt(String userMessage, String conversationSummary) {
+        UserSnapshot user = securityUtil.getCurrentUserSnapshot();
         LocalDate today = LocalDate.now();
 
         StringBuilder prompt = new StringBuilder();
 
         // ============================================
-        // IDENTIDAD DE LA IA
+        // USUARIO
         // ============================================
-        prompt.append("Eres ProductiBot, el asistente personal de ").append(user.getName()).append(".\n");
-        prompt.append("Tu misión es ayudarle a ser más productivo y mantener buenos hábitos.\n\n");
-
-        prompt.append("CAPACIDADES:\n");
-        prompt.append("✅ Consultar tareas, eventos y hábitos\n");
-        prompt.append("✅ Dar consejos personalizados de productividad\n");
-        prompt.append("✅ Sugerir rutinas de ejercicio, estudio y bienestar\n");
-        prompt.append("✅ Ayudar a organizar el tiempo y priorizar\n");
-        prompt.append("✅ Motivar y dar seguimiento al progreso\n\n");
-
-        prompt.append("ESTILO:\n");
-        prompt.append("- Conciso (máximo 4-5 oraciones)\n");
-        prompt.append("- Amigable y motivador 😊\n");
-        prompt.append("- Usa emojis ocasionalmente (1-2 por respuesta)\n");
-        prompt.append("- Práctico y accionable\n\n");
+        prompt.append("👤 USUARIO: ").append(user.getName()).append("\n\n");
 
         // ============================================
-        // FECHA ACTUAL
+        // CONTEXTO DEL DÍA (cacheado por usuario y fecha)
         // ============================================
-        String fechaFormato = today.format(DateTimeFormatter.ofPattern("EEEE, dd 'de' MMMM 'de' yyyy"));
-        prompt.append("═══════════════════════════════════════\n");
-        prompt.append("📅 HOY: ").append(fechaFormato).append("\n");
-        prompt.append("═══════════════════════════════════════\n\n");
+        RenderedContext context = getContextSection(user, today);
+        prompt.append(context.getText());
 
         // ============================================
-        // TAREAS DEL DÍA
+        // ITEMS RELACIONADOS CON LA PREGUNTA (BM25)
         // ============================================
-        List<Task> tareasHoy = taskRepository.findByUserIdAndFechaLimite(user.getId(), today);
-        long tareasPendientes = tareasHoy.stream().filter(t -> !t.getCompleted()).count();
-        long tareasCompletadas = tareasHoy.stream().filter(Task::getCompleted).count();
-
-        prompt.append("📋 TAREAS DE HOY: ").append(tareasHoy.size()).append(" total\n");
-        if (!tareasHoy.isEmpty()) {
-            prompt.append("   ✅ Completadas: ").append(tareasCompletadas).append("\n");
-            prompt.append("   ⏳ Pendientes: ").append(tareasPendientes).append("\n\n");
-
-            tareasHoy.stream()
-                    .filter(t -> !t.getCompleted())
-                    .limit(5)
-                    .forEach(t -> {
-                        prompt.append("   • ").append(t.getTitulo());
-                        prompt.append(" [").append(t.getPrioridad()).append("]");
-                        if (t.getSource().equals("tecsup")) {
-                            prompt.append(" 🎓 TECSUP");
-                        }
-                        prompt.append("\n");
-                    });
-            prompt.append("\n");
-        } else {
-            prompt.append("   🎉 No hay tareas para hoy\n\n");
-        }
+        appendRelatedItems(prompt, user, userMessage, context.getIncludedKeys());
 
         // ============================================
-        // TAREAS VENCIDAS
+        // RESUMEN DE LA CONVERSACIÓN PREVIA
         // ============================================
-        List<Task> tareasVencidas = taskRepository.findOverdueTasks(user.getId(), today);
-        if (!tareasVencidas.isEmpty()) {
-            prompt.append("⚠️ TAREAS VENCIDAS: ").append(tareasVencidas.size()).append("\n");
-            tareasVencidas.stream().limit(3).forEach(t -> {
-                prompt.append("   • ").append(t.getTitulo());
-                prompt.append(" (Venció: ").append(t.getFechaLimite()).append(")\n");
-            });
-            prompt.append("\n");
+        if (conversationSummary != null && !conversationSummary.isBlank()) {
+            prompt.append("🧾 CONVERSACIÓN PREVIA (resumen):\n");
+            prompt.append(conversationSummary).append("\n\n");
         }
 
         // ============================================
-        // EVENTOS DEL DÍA
+        // PREGUNTA DEL USUARIO
         // ============================================
-        List<Event> eventosHoy = eventRepository.findByUserIdAndFecha(user.getId(), today);
-        prompt.append("📅 EVENTOS DE HOY: ").append(eventosHoy.size()).append("\n");
-        if (!eventosHoy.isEmpty()) {
-            eventosHoy.forEach(e -> {
-                prompt.append("   • ");
-                if (e.getHora() != null) {
-                    prompt.append(e.getHora()).append(" - ");
-                }
-                prompt.append(e.getTitulo());
-                if (e.getCurso() != null && !e.getCurso().isEmpty()) {
-                    prompt.append(" (").append(e.getCurso()).append(")");
+        prompt.append("═══════════════════════════════════════\n");
+        prompt.append("PREGUNTA:\n");
+        prompt.append("\"").append(userMessage).append("\"\n");
+        prompt.append("═══════════════════════════════════════\n");
+
+        recordPromptSize(prompt);
+        log.debug("✅ Prompt contextual generado: {} caracteres", prompt.length());
+        return prompt.toString();
+    }
+
+    // ============================================
+    // CACHÉ DEL CONTEXTO RENDERIZADO
+    // ============================================
+
+    /**
+     * Sección de contexto del prompt (tareas, eventos, hábitos, progreso)
+     * Se cachea por usuario y fecha: los mensajes seguidos de una conversación
+     * no consultan la BD y al cambiar de día se usa una clave nueva
+     */
+    private RenderedContext getContextSection(UserSnapshot user, LocalDate today) {
+        Cache cache = cacheManager.getCache(CONTEXT_CACHE);
+        if (cache == null) {
+            return renderContextSectionReadOnly(user, today);
+        }
+        return cache.get(contextKey(user.getId(), today), () -> {
+            log.debug("🧩 Renderizando contexto del chatbot para usuario {}", user.getId());
+            return renderContextSectionReadOnly(user, today);
+        });
+    }
+
+    /**
+     * Sección de contexto de un usuario explícito (p. ej. tareas programadas,
+     * donde no hay usuario autenticado). Usa la misma caché que el chatbot
+     */
+    public String getContextSectionFor(UserSnapshot user, LocalDate date) {
+        return getContextSection(user, date).getText();
+    }
+
+    /**
+     * Huella de los datos materiales del día (tareas y eventos con sus fechas)
+     * Sirve para saber si un texto generado a partir del contexto quedó desactualizado
+     */
+    public String getContextFingerprintFor(UserSnapshot user, LocalDate date) {
+        return getContextSection(user, date).getFingerprint();
+    }
+
+    /**
+     * Invalida el contexto cacheado del usuario
+     * Llamar desde los servicios que modifican tareas, eventos o hábitos.
+     * Con transacción activa se invalida después del commit
+     */
+    public void invalidateContext(Long userId) {
+        Cache cache = cacheManager.getCache(CONTEXT_CACHE);
+        if (cache == null || userId == null) {
+            return;
+        }
+
+        LocalDate today = LocalDate.now();
+        Runnable evict = () -> {
+            cache.evict(contextKey(userId, today));
+            cache.evict(fullContextKey(userId, today));
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict.run();
                 }
-                prompt.append("\n");
             });
-            prompt.append("\n");
         } else {
-            prompt.append("   Sin eventos programados\n\n");
+            evict.run();
         }
+    }
 
-        // ============================================
-        // HÁBITOS DEL DÍA
-        // ============================================
+    private RenderedContext renderContextSectionReadOnly(UserSnapshot user, LocalDate today) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        return readOnly.execute(status -> renderContextSection(user, today));
+    }
+
+    /**
+     * Tamaño de los prompts enviados (tokens estimados)
+     */
+    public Map<String, Object> getPromptStats() {
+        long count = promptCount.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("prompts", count);
+        stats.put("lastTokens", promptTokensLast.get());
+        stats.put("avgTokens", count > 0 ? promptTokensTotal.get() / count : 0);
+        stats.put("maxTokens", promptTokensMax.get());
+        stats.put("contextBudgetTokens", contextTokenBudget());
+        return stats;
+    }
+
+    private void recordPromptSize(CharSequence prompt) {
+        long tokens = PromptUtil.estimateTokens(prompt);
+        promptCount.incrementAndGet();
+        promptTokensTotal.addAndGet(tokens);
+        promptTokensLast.set(tokens);
+        promptTokensMax.accumulateAndGet(tokens, Math::max);
+    }
+
+    private String contextKey(Long userId, LocalDate date) {
+        return userId + ":" + date;
+    }
+
+    private String fullContextKey(Long userId, LocalDate date) {
+        return userId + ":" + date + ":full";
+    }
+
+    /**
+     * Arma la sección de contexto dentro de un presupuesto de tokens
+     * - Cabecera, conteos, hábitos y progreso siempre se incluyen
+     * - Tareas y eventos se ordenan por urgencia: vencidas → hoy → próximas (por prioridad)
+     *   y se agregan mientras quepan; las descripciones (sin HTML) se truncan
+     */
+    private RenderedContext renderContextSection(UserSnapshot user, LocalDate today) {
+        List<Task> tareasHoy = taskRepository.findByUserIdAndFechaLimite(user.getId(), today);
+        List<Task> tareasVencidas = taskRepository.findOverdueTasks(user.getId(), today);
+        List<Event> eventosHoy = eventRepository.findByUserIdAndFecha(user.getId(), today);
         List<Habit> habitos = habitRepository.findByUserIdAndActivoTrue(user.getId());
         List<HabitLog> logsHoy = habitLogRepository.findByUserAndDate(user.getId(), today);
+        DailySummary summary = dailySummaryService.calculateDailySummary(userRepository.getReferenceById(user.getId()), today);
+        List<Task> tareasProximas = taskRepository.findUpcomingTasks(
+                user.getId(), today.plusDays(1), today.plusDays(UPCOMING_DAYS));
+
+        // ============================================
+        // SECCIONES FIJAS (siempre presentes)
+        // ============================================
+        String header = renderHeader(today);
+        String habitsBlock = renderHabits(habitos, logsHoy);
+        String progressBlock = renderProgress(summary);
+
+        // ============================================
+        // SELECCIÓN DE ITEMS POR URGENCIA
+        // ============================================
+        List<PromptItem> candidates = new ArrayList<>();
+
+        tareasVencidas.stream()
+                .sorted(BY_PRIORITY.thenComparing(Task::getFechaLimite))
+                .forEach(t -> candidates.add(taskItem(PromptSection.OVERDUE, t,
+                        " (Venció: " + t.getFechaLimite() + ")")));
+
+        tareasHoy.stream()
+                .filter(t -> !t.getCompleted())
+                .sorted(BY_PRIORITY)
+                .forEach(t -> candidates.add(taskItem(PromptSection.TODAY_TASKS, t, "")));
+
+        eventosHoy.stream()
+                .sorted(Comparator.comparing(Event::getHora, Comparator.nullsLast(Comparator.naturalOrder())))
+                .forEach(e -> candidates.add(eventItem(PromptSection.TODAY_EVENTS, e)));
+
+        tareasProximas.stream()
+                .sorted(BY_PRIORITY.thenComparing(Task::getFechaLimite))
+                .forEach(t -> candidates.add(taskItem(PromptSection.UPCOMING, t,
+                        " (" + t.getFechaLimite() + ")")));
+
+        int budget = contextTokenBudget()
+                - PromptUtil.estimateTokens(header)
+                - PromptUtil.estimateTokens(habitsBlock)
+                - PromptUtil.estimateTokens(progressBlock)
+                - SECTION_OVERHEAD_TOKENS;
+
+        Map<PromptSection, List<String>> selected = new EnumMap<>(PromptSection.class);
+        Set<String> includedKeys = new HashSet<>();
+        int tasksIncluded = 0;
+        int eventsIncluded = 0;
+
+        for (PromptItem item : candidates) {
+            boolean isEvent = item.getSection() == PromptSection.TODAY_EVENTS;
+            if (isEvent ? eventsIncluded >= maxEvents : tasksIncluded >= maxTasks) {
+                continue;
+            }
+
+            // Primero con descripción; si no cabe, solo el título
+            String line = item.getFullLine();
+            if (PromptUtil.estimateTokens(line) > budget) {
+                line = item.getShortLine();
+            }
+            if (PromptUtil.estimateTokens(line) > budget) {
+                break;
+            }
+
+            budget -= PromptUtil.estimateTokens(line);
+            selected.computeIfAbsent(item.getSection(), k -> new ArrayList<>()).add(line);
+            includedKeys.add(item.getKey());
+            if (isEvent) {
+                eventsIncluded++;
+            } else {
+                tasksIncluded++;
+            }
+        }
+
+        // ============================================
+        // RENDER EN ORDEN DE LECTURA
+        // ============================================
+        StringBuilder section = new StringBuilder(header);
+
+        long tareasPendientes = tareasHoy.stream().filter(t -> !t.getCompleted()).count();
+        section.append("📋 TAREAS DE HOY: ").append(tareasHoy.size()).append(" total\n");
+        if (!tareasHoy.isEmpty()) {
+            section.append("   ✅ Completadas: ").append(tareasHoy.size() - tareasPendientes).append("\n");
+            section.append("   ⏳ Pendientes: ").append(tareasPendientes).append("\n\n");
+            appendItems(section, selected.get(PromptSection.TODAY_TASKS), tareasPendientes);
+        } else {
+            section.append("   🎉 No hay tareas para hoy\n\n");
+        }
+
+        if (!tareasVencidas.isEmpty()) {
+            section.append("⚠️ TAREAS VENCIDAS: ").append(tareasVencidas.size()).append("\n");
+            appendItems(section, selected.get(PromptSection.OVERDUE), tareasVencidas.size());
+        }
+
+        section.append("📅 EVENTOS DE HOY: ").append(eventosHoy.size()).append("\n");
+        if (!eventosHoy.isEmpty()) {
+            appendItems(section, selected.get(PromptSection.TODAY_EVENTS), eventosHoy.size());
+        } else {
+            section.append("   Sin eventos programados\n\n");
+        }
+
+        section.append(habitsBlock);
+        section.append(progressBlock);
+
+        if (!tareasProximas.isEmpty()) {
+            section.append("🔜 PRÓXIMAS TAREAS (").append(UPCOMING_DAYS).append(" días): ")
+                    .append(tareasProximas.size()).append("\n");
+            appendItems(section, selected.get(PromptSection.UPCOMING), tareasProximas.size());
+        }
+
+        log.debug("🧮 Contexto del chatbot: ~{} tokens (presupuesto {}), {} tareas y {} eventos incluidos",
+                PromptUtil.estimateTokens(section), contextTokenBudget(), tasksIncluded, eventsIncluded);
+        return new RenderedContext(section.toString(), Set.copyOf(includedKeys),
+                fingerprint(tareasHoy, tareasVencidas, eventosHoy, tareasProximas));
+    }
+
+    /**
+     * Qué tareas y eventos hay y sus fechas (sin estado de hábitos, completadas ni progreso):
+     * marcar un hábito o completar una tarea de hoy no lo cambia
+     */
+    private String fingerprint(List<Task> tareasHoy, List<Task> tareasVencidas,
+                               List<Event> eventosHoy, List<Task> tareasProximas) {
+        List<String> entries = new ArrayList<>();
+        for (List<Task> tasks : List.of(tareasHoy, tareasVencidas, tareasProximas)) {
+            tasks.forEach(t -> entries.add(ChatRelevanceIndex.TASK_PREFIX + t.getId() + "|" + t.getFechaLimite() + "|" + t.getTitulo()));
+        }
+        eventosHoy.forEach(e -> entries.add(
+                ChatRelevanceIndex.EVENT_PREFIX + e.getId() + "|" + e.getFecha() + "|" + e.getHora() + "|" + e.getTitulo()));
+        Collections.sort(entries);
+        return String.join("\n", entries);
+    }
+
+    /**
+     * Agrega los items más relevantes para la pregunta que no entraron en el contexto del día
+     * (p. ej. una tarea de la próxima semana por la que se pregunta), dentro de su propio presupuesto
+     * El contexto del día se cachea por usuario y fecha y no depende de la pregunta: por eso
+     * max-tasks / max-events siguen acotando esa sección y la relevancia suma items aparte
+     * Se arma desde el índice en memoria, sin consultar la BD
+     */
+    private void appendRelatedItems(StringBuilder prompt, UserSnapshot user, String userMessage, Set<String> includedKeys) {
+        if (!relevanceEnabled || relevanceMaxItems <= 0) {
+            return;
+        }
+
+        List<PromptItem> items = chatRelevanceIndex.search(user.getId(), userMessage, relevanceMaxItems + includedKeys.size())
+                .stream()
+                .filter(item -> !includedKeys.contains(item.getKey()))
+                .limit(relevanceMaxItems)
+                .map(this::relatedItem)
+                .toList();
+        if (items.isEmpty()) {
+            return;
+        }
+
+        int budget = relevanceMaxTokens;
+        StringBuilder block = new StringBuilder();
+
+        for (PromptItem item : items) {
+            String line = item.getFullLine();
+            if (PromptUtil.estimateTokens(line) > budget) {
+                line = item.getShortLine();
+            }
+            if (PromptUtil.estimateTokens(line) > budget) {
+                break;
+            }
+            budget -= PromptUtil.estimateTokens(line);
+            block.append(line);
+        }
+
+        if (block.length() > 0) {
+            prompt.append("🔎 RELACIONADO CON TU PREGUNTA:\n").append(block).append("\n");
+        }
+    }
+
+    private String renderHeader(LocalDate today) {
+        String fechaFormato = today.format(DateTimeFormatter.ofPattern("EEEE, dd 'de' MMMM 'de' yyyy"));
+        return "═══════════════════════════════════════\n"
+                + "📅 HOY: " + fechaFormato + "\n"
+                + "═══════════════════════════════════════\n\n";
+    }
+
+    private String renderHabits(List<Habit> habitos, List<HabitLog> logsHoy) {
+        StringBuilder block = new StringBuilder();
         long habitosCompletados = logsHoy.stream().filter(HabitLog::getCompletado).count();
 
-        prompt.append("💪 HÁBITOS: ").append(habitos.size()).append(" total\n");
-        prompt.append("   ✅ Completados hoy: ").append(habitosCompletados).append("/").append(habitos.size()).append("\n\n");
+        block.append("💪 HÁBITOS: ").append(habitos.size()).append(" total\n");
+        block.append("   ✅ Completados hoy: ").append(habitosCompletados).append("/").append(habitos.size()).append("\n\n");
 
         habitos.forEach(h -> {
             HabitLog log = logsHoy.stream()
@@ -180,82 +527,133 @@ public class ChatbotContextService {
                     .findFirst()
                     .orElse(null);
 
-            prompt.append("   ");
+            block.append("   ");
             if (log != null && log.getCompletado()) {
-                prompt.append("✅");
+                block.append("✅");
             } else {
-                prompt.append("⏳");
+                block.append("⏳");
             }
-            prompt.append(" ").append(h.getNombre());
+            block.append(" ").append(h.getNombre());
 
             if (!h.getEsComida() && h.getMetaDiaria() != null) {
                 int valor = (log != null && log.getValor() != null) ? log.getValor() : 0;
-                prompt.append(" (").append(valor).append("/").append(h.getMetaDiaria()).append(")");
+                block.append(" (").append(valor).append("/").append(h.getMetaDiaria()).append(")");
             }
-            prompt.append("\n");
+            block.append("\n");
         });
-        prompt.append("\n");
+        block.append("\n");
+        return block.toString();
+    }
 
-        // ============================================
-        // PROGRESO DEL DÍA
-        // ============================================
-        DailySummary summary = dailySummaryService.calculateDailySummary(user, today);
-        prompt.append("📊 PROGRESO DE HOY: ").append(summary.getProgressPercentage()).append("%\n");
-        prompt.append("   Tareas: ").append(summary.getCompletedTasks()).append("/").append(summary.getTotalTasks()).append("\n");
-        prompt.append("   Hábitos: ").append(summary.getCompletedHabits()).append("/").append(summary.getTotalHabits()).append("\n\n");
+    private String renderProgress(DailySummary summary) {
+        return "📊 PROGRESO DE HOY: " + summary.getProgressPercentage() + "%\n"
+                + "   Tareas: " + summary.getCompletedTasks() + "/" + summary.getTotalTasks() + "\n"
+                + "   Hábitos: " + summary.getCompletedHabits() + "/" + summary.getTotalHabits() + "\n\n";
+    }
 
-        // ============================================
-        // TAREAS PRÓXIMAS (3 días)
-        // ============================================
-        LocalDate endDate = today.plusDays(3);
-        List<Task> tareasProximas = taskRepository.findUpcomingTasks(user.getId(), today.plusDays(1), endDate);
-        if (!tareasProximas.isEmpty()) {
-            prompt.append("🔜 PRÓXIMAS TAREAS (3 días):\n");
-            tareasProximas.stream().limit(5).forEach(t -> {
-                prompt.append("   • ").append(t.getTitulo());
-                prompt.append(" (").append(t.getFechaLimite()).append(")\n");
-            });
-            prompt.append("\n");
+    private PromptItem taskItem(PromptSection section, Task task, String suffix) {
+        String shortLine = taskLine(task.getTitulo(), task.getPrioridad(), task.getSource(), suffix);
+        return new PromptItem(section, ChatRelevanceIndex.TASK_PREFIX + task.getId(),
+                withDescription(shortLine, task.getDescripcion()), shortLine);
+    }
+
+    private PromptItem eventItem(PromptSection section, Event event) {
+        // Fuera de "eventos de hoy" la fecha no es obvia
+        LocalDate fecha = section != PromptSection.TODAY_EVENTS ? event.getFecha() : null;
+        String shortLine = eventLine(fecha, event.getHora(), event.getTitulo(), event.getCurso());
+        return new PromptItem(section, ChatRelevanceIndex.EVENT_PREFIX + event.getId(),
+                withDescription(shortLine, event.getDescripcion()), shortLine);
+    }
+
+    private PromptItem relatedItem(ChatRelevanceIndex.IndexedItem item) {
+        String shortLine = item.isEvent()
+                ? eventLine(item.getFecha(), item.getHora(), item.getTitulo(), item.getCurso())
+                : taskLine(item.getTitulo(), item.getPrioridad(), item.getSource(),
+                        item.getFecha() != null ? " (" + item.getFecha() + ")" : "");
+        return new PromptItem(PromptSection.RELATED, item.getKey(),
+                withDescription(shortLine, item.getDescripcion()), shortLine);
+    }
+
+    private String taskLine(String titulo, Task.TaskPriority prioridad, String source, String suffix) {
+        return "   • " + titulo + " [" + prioridad + "]"
+                + ("tecsup".equals(source) ? " 🎓 TECSUP" : "")
+                + suffix + "\n";
+    }
+
+    private String eventLine(LocalDate fecha, LocalTime hora, String titulo, String curso) {
+        StringBuilder line = new StringBuilder("   • ");
+        if (fecha != null) {
+            line.append(fecha).append(" ");
         }
+        if (hora != null) {
+            line.append(hora).append(" - ");
+        }
+        line.append(titulo);
+        if (curso != null && !curso.isEmpty()) {
+            line.append(" (").append(curso).append(")");
+        }
+        line.append("\n");
+        return line.toString();
+    }
 
-        // ============================================
-        // PREGUNTA DEL USUARIO
-        // ============================================
-        prompt.append("═══════════════════════════════════════\n");
-        prompt.append("PREGUNTA:\n");
-        prompt.append("\"").append(userMessage).append("\"\n");
-        prompt.append("═══════════════════════════════════════\n\n");
+    private String withDescription(String shortLine, String descripcion) {
+        String plain = PromptUtil.stripHtml(descripcion);
+        if (plain.isEmpty()) {
+            return shortLine;
+        }
+        return shortLine + "     " + PromptUtil.truncate(plain, maxDescriptionChars) + "\n";
+    }
 
-        // ============================================
-        // INSTRUCCIONES PARA LA IA
-        // ============================================
-        prompt.append("INSTRUCCIONES:\n");
-        prompt.append("1. Responde basándote en la información arriba\n");
-        prompt.append("2. Si preguntan sobre tareas/eventos, usa los datos exactos\n");
-        prompt.append("3. Si piden consejos, sé específico y práctico\n");
-        prompt.append("4. Menciona el progreso cuando sea relevante\n");
-        prompt.append("5. Sé motivador pero realista\n");
-        prompt.append("6. Si no hay info suficiente, sugiere alternativas\n");
-        prompt.append("7. NO digas que puedes agendar cosas, solo consultar\n");
+    private void appendItems(StringBuilder section, List<String> lines, long total) {
+        int shown = lines != null ? lines.size() : 0;
+        if (lines != null) {
+            lines.forEach(section::append);
+        }
+        if (total > shown) {
+            section.append("   … y ").append(total - shown).append(" más\n");
+        }
+        section.append("\n");
+    }
 
-        log.debug("✅ Prompt contextual generado: {} caracteres", prompt.length());
-        return prompt.toString();
+    /**
+     * Sección de contexto renderizada + claves de los items incluidos
+     * (para no repetirlos entre los relacionados con la pregunta) + huella de los datos materiales
+     */
+    @lombok.Value
+    private static class RenderedContext {
+        String text;
+        Set<String> includedKeys;
+        String fingerprint;
+    }
+
+    private int contextTokenBudget() {
+        return (int) (geminiMaxTokens * budgetMultiplier);
+    }
+
+    private enum PromptSection { OVERDUE, TODAY_TASKS, TODAY_EVENTS, UPCOMING, RELATED }
+
+    @lombok.Value
+    private static class PromptItem {
+        PromptSection section;
+        String key;
+        String fullLine;
+        String shortLine;
     }
 
     // ============================================
     // MÉTODOS PRIVADOS - CONSTRUCCIÓN DE CONTEXTO
     // ============================================
 
-    private Map<String, Object> buildUserInfo(User user) {
+    private Map<String, Object> buildUserInfo(UserSnapshot user) {
         Map<String, Object> info = new HashMap<>();
         info.put("name", user.getName());
         info.put("email", user.getEmail());
         info.put("tipo", user.getTipo());
-        info.put("hasTecsupSync", user.getTecsupToken() != null);
+        info.put("hasTecsupSync", user.isTecsupSync());
         return info;
     }
 
-    private Map<String, Object> buildTodayContext(User user, LocalDate today) {
+    private Map<String, Object> buildTodayContext(UserSnapshot user, LocalDate today) {
         Map<String, Object> todayContext = new HashMap<>();
         todayContext.put("date", today);
 
@@ -273,13 +671,26 @@ public class ChatbotContextService {
         todayContext.put("habits", buildHabitsWithProgress(habits, logs));
 
         // Progreso
-        DailySummary summary = dailySummaryService.calculateDailySummary(user, today);
+        DailySummary summary = dailySummaryService.calculateDailySummary(userRepository.getReferenceById(user.getId()), today);
         todayContext.put("progress", summary.getProgressPercentage());
 
         return todayContext;
     }
 
-    private Map<String, Object> buildUpcomingContext(User user, LocalDate today) {
+    private Map<String, Object> buildTomorrowContext(UserSnapshot user, LocalDate tomorrow) {
+        Map<String, Object> tomorrowContext = new HashMap<>();
+        tomorrowContext.put("date", tomorrow);
+
+        List<Task> tasks = taskRepository.findByUserIdAndFechaLimite(user.getId(), tomorrow);
+        tomorrowContext.put("tasks", tasks.stream().map(this::mapTask).collect(Collectors.toList()));
+
+        List<Event> events = eventRepository.findByUserIdAndFecha(user.getId(), tomorrow);
+        tomorrowContext.put("events", events.stream().map(this::mapEvent).collect(Collectors.toList()));
+
+        return tomorrowContext;
+    }
+
+    private Map<String, Object> buildUpcomingContext(UserSnapshot user, LocalDate today) {
         LocalDate endDate = today.plusDays(7);
         List<Task> tasks = taskRepository.findUpcomingTasks(user.getId(), today.plusDays(1), endDate);
 
@@ -290,7 +701,7 @@ public class ChatbotContextService {
         return upcoming;
     }
 
-    private Map<String, Object> buildOverdueContext(User user, LocalDate today) {
+    private Map<String, Object> buildOverdueContext(UserSnapshot user, LocalDate today) {
         List<Task> tasks = taskRepository.findOverdueTasks(user.getId(), today);
 
         Map<String, Object> overdue = new HashMap<>();
@@ -300,8 +711,8 @@ public class ChatbotContextService {
         return overdue;
     }
 
-    private Map<String, Object> buildYesterdayContext(User user, LocalDate yesterday) {
-        DailySummary summary = dailySummaryService.getOrCalculateDailySummary(user, yesterday);
+    private Map<String, Object> buildYesterdayContext(UserSnapshot user, LocalDate yesterday) {
+        DailySummary summary = dailySummaryService.getOrCalculateDailySummary(userRepository.getReferenceById(user.getId()), yesterday);
 
         Map<String, Object> yesterdayContext = new HashMap<>();
         yesterdayContext.put("date", yesterday);
@@ -314,7 +725,7 @@ public class ChatbotContextService {
         return yesterdayContext;
     }
 
-    private Map<String, Object> buildSummaryStats(User user, LocalDate today) {
+    private Map<String, Object> buildSummaryStats(UserSnapshot user, LocalDate today) {
         long totalTasks = taskRepository.countByUserId(user.getId());
         long completedTasks = taskRepository.countByUserIdAndCompleted(user.getId(), true);
         long overdueTasks = taskRepository.findOverdueTasks(user.getId(), today).size();
@@ -0,0 +1,132 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.dto.response.ChatMessageResponse;
+import com.tecsup.productivity.util.PromptUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resumen acumulado de la conversación
+ * Cuando quedan suficientes turnos fuera de los que se envían a Gemini, se pliegan
+ * en el resumen con una llamada de baja prioridad, fuera del request. Así cada
+ * pregunta lleva resumen + últimos turnos y el prompt no crece con la conversación
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ConversationSummarizer {
+
+    // Una cola de baja prioridad por usuario en el planificador: si todos compartieran una,
+    // el límite max-queue-per-user rechazaría los resúmenes en cuanto conversen más de 3 usuarios
+    private static final String CALLER_KEY_PREFIX = "background:summary:";
+
+    private static final String SUMMARY_INSTRUCTION = """
+            Resumes conversaciones entre un estudiante y su asistente de productividad.
+            Conserva datos concretos (tareas, fechas, compromisos, preferencias) y omite saludos.
+            Escribe en español, en tercera persona y en un solo párrafo.
+            Responde solo con el resumen.
+            """;
+
+    private final ChatSessionStore chatSessionStore;
+    private final GeminiAIService geminiAIService;
+
+    @Value("${chatbot.summary.enabled:true}")
+    private boolean enabled;
+
+    // Mismos turnos que ChatService envía a Gemini: esos no se resumen
+    @Value("${chatbot.session.history-turns:6}")
+    private int historyTurns;
+
+    // Turnos antiguos acumulados antes de plegarlos en el resumen
+    @Value("${chatbot.summary.fold-threshold:4}")
+    private int foldThreshold;
+
+    @Value("${chatbot.summary.max-chars:1200}")
+    private int maxChars;
+
+    private final AtomicLong folds = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Resumen actual de la sesión (null si aún no hay)
+     */
+    public String getSummary(Long userId) {
+        return enabled ? chatSessionStore.getSummary(userId) : null;
+    }
+
+    /**
+     * Turnos a enviar a Gemini: al menos los últimos history-turns y además los que
+     * aún esperan ser plegados en el resumen (nunca más de history-turns + fold-threshold)
+     */
+    public List<ChatMessageResponse> getTurnsForPrompt(Long userId) {
+        if (!enabled) {
+            return chatSessionStore.getRecentTurns(userId, historyTurns);
+        }
+        return chatSessionStore.getUnsummarizedTurns(userId, historyTurns, historyTurns + foldThreshold);
+    }
+
+    /**
+     * Lanza el plegado en segundo plano si corresponde (no bloquea)
+     */
+    public void maybeFold(Long userId) {
+        if (!enabled || !geminiAIService.isConfigured()) {
+            return;
+        }
+
+        ChatSessionStore.FoldTask task = chatSessionStore.beginFold(userId, historyTurns, foldThreshold);
+        if (task == null) {
+            return;
+        }
+
+        String callerKey = CALLER_KEY_PREFIX + userId;
+        geminiAIService.generateBackgroundAsync(SUMMARY_INSTRUCTION, buildFoldPrompt(task), callerKey)
+                .map(summary -> PromptUtil.truncate(summary.trim(), maxChars))
+                .subscribe(
+                        summary -> {
+                            chatSessionStore.completeFold(userId, task, summary);
+                            folds.incrementAndGet();
+                            log.debug("🧾 Resumen de conversación actualizado para usuario {} ({} turnos plegados)",
+                                    userId, task.getMessages().size());
+                        },
+                        error -> {
+                            chatSessionStore.abortFold(task);
+                            failures.incrementAndGet();
+                            log.warn("⚠️ No se pudo resumir la conversación de usuario {}: {}",
+                                    userId, error.getMessage());
+                        }
+                );
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("foldCount", folds.get());
+        stats.put("failureCount", failures.get());
+        return stats;
+    }
+
+    private String buildFoldPrompt(ChatSessionStore.FoldTask task) {
+        StringBuilder prompt = new StringBuilder();
+
+        if (task.getPreviousSummary() != null && !task.getPreviousSummary().isBlank()) {
+            prompt.append("RESUMEN ANTERIOR:\n").append(task.getPreviousSummary()).append("\n\n");
+        }
+
+        prompt.append("NUEVOS TURNOS:\n");
+        for (ChatMessageResponse message : task.getMessages()) {
+            prompt.append("Usuario: ").append(message.getMensaje()).append("\n");
+            prompt.append("Asistente: ").append(message.getRespuesta()).append("\n");
+        }
+
+        prompt.append("\nActualiza el resumen incorporando los nuevos turnos (máximo ")
+                .append(maxChars).append(" caracteres).");
+        return prompt.toString();
+    }
+}
@@ -0,0 +1,235 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.dto.response.DailyBriefingResponse;
+import com.tecsup.productivity.entity.DailyBriefing;
+import com.tecsup.productivity.exception.TooManyRequestsException;
+import com.tecsup.productivity.repository.ChatMessageRepository;
+import com.tecsup.productivity.repository.DailyBriefingRepository;
+import com.tecsup.productivity.repository.ScheduledRunRepository;
+import com.tecsup.productivity.repository.UserRepository;
+import com.tecsup.productivity.security.UserSnapshot;
+import com.tecsup.productivity.util.SecurityUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resumen del día ("briefing") precalculado
+ * - Tarea nocturna: genera el resumen de cada usuario activo con concurrencia acotada
+ *   y prioridad baja en el planificador de Gemini (el pico de la mañana se reparte en la noche)
+ * - Con varias instancias solo una ejecuta el lote del día (reclamo en scheduled_runs);
+ *   si esa instancia cae a mitad, los resúmenes faltantes se generan al pedirlos
+ * - GET /api/chat/briefing lo sirve al instante desde la BD
+ * - Si cambiaron las tareas o eventos del día (hash de la huella, no del texto completo)
+ *   se regenera al pedirlo; marcar hábitos o completar tareas de hoy no lo invalida
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DailyBriefingService {
+
+    private static final String CALLER_KEY = "background:briefing";
+    private static final String RUN_NAME = "daily-briefing";
+
+    private final DailyBriefingRepository dailyBriefingRepository;
+    private final ChatMessageRepository chatMessageRepository;
+    private final ScheduledRunRepository scheduledRunRepository;
+    private final UserRepository userRepository;
+    private final ChatbotContextService chatbotContextService;
+    private final GeminiAIService geminiAIService;
+    private final SecurityUtil securityUtil;
+
+    @Value("${chatbot.briefing.enabled:true}")
+    private boolean enabled;
+
+    // Usuarios que usaron el chatbot en los últimos N días
+    @Value("${chatbot.briefing.active-days:7}")
+    private int activeDays;
+
+    // Resúmenes generados en paralelo por la tarea nocturna
+    @Value("${chatbot.briefing.concurrency:2}")
+    private int concurrency;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Genera los resúmenes del día para los usuarios activos
+     * No bloquea el hilo del scheduler: el lote corre en segundo plano
+     */
+    @Scheduled(cron = "${chatbot.briefing.cron:0 30 4 * * *}")
+    public void generateAll() {
+        if (!enabled || !geminiAIService.isConfigured()) {
+            return;
+        }
+        if (!running.compareAndSet(false, true)) {
+            log.warn("⚠️ Generación de resúmenes del día aún en curso, se omite esta ejecución");
+            return;
+        }
+
+        LocalDate today = LocalDate.now();
+        List<Long> userIds;
+        try {
+            if (scheduledRunRepository.claim(RUN_NAME, today) == 0) {
+                log.info("🌅 Otra instancia ya genera los resúmenes del día {}", today);
+                running.set(false);
+                return;
+            }
+            userIds = chatMessageRepository.findActiveUserIdsSince(LocalDateTime.now().minusDays(activeDays));
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+        log.info("🌅 Generando resumen del día para {} usuarios", userIds.size());
+
+        Flux.fromIterable(userIds)
+                .flatMap(userId -> generateScheduled(userId, today), concurrency)
+                .count()
+                .doFinally(signal -> running.set(false))
+                .subscribe(
+                        generated -> log.info("✅ Resúmenes del día generados: {}/{}", generated, userIds.size()),
+                        error -> log.error("❌ Error generando resúmenes del día: {}", error.getMessage())
+                );
+    }
+
+    /**
+     * Limpia resúmenes de días anteriores
+     */
+    @Scheduled(cron = "${chatbot.briefing.purge-cron:0 0 3 * * *}")
+    @Transactional
+    public void purgeOld() {
+        int deleted = dailyBriefingRepository.deleteOlderThan(LocalDate.now().minusDays(1));
+        scheduledRunRepository.deleteOlderThan(LocalDate.now().minusDays(1));
+        if (deleted > 0) {
+            log.info("🧹 {} resúmenes del día antiguos eliminados", deleted);
+        }
+    }
+
+    /**
+     * Resumen del día del usuario actual
+     * Vigente: se devuelve sin llamar a Gemini. Desactualizado o inexistente: se genera
+     */
+    public Mono<DailyBriefingResponse> getTodayBriefing() {
+        UserSnapshot user = securityUtil.getCurrentUserSnapshot();
+        LocalDate today = LocalDate.now();
+
+        String section = chatbotContextService.getContextSectionFor(user, today);
+        String hash = hash(chatbotContextService.getContextFingerprintFor(user, today));
+        Optional<DailyBriefing> existing = dailyBriefingRepository.findByUserIdAndDate(user.getId(), today);
+
+        if (existing.isPresent() && existing.get().getContextHash().equals(hash)) {
+            log.debug("⚡ Resumen del día desde BD para usuario {}", user.getId());
+            return Mono.just(toResponse(existing.get(), false));
+        }
+
+        return geminiAIService.generateBackgroundAsync(null, buildPrompt(user, section),
+                        "user:" + user.getId(), GeminiRequestScheduler.Priority.INTERACTIVE)
+                .publishOn(Schedulers.boundedElastic())
+                .map(content -> toResponse(save(user.getId(), today, content, hash), false))
+                .onErrorResume(error -> {
+                    // Si no se pudo regenerar, mejor el resumen anterior que nada
+                    if (existing.isPresent()) {
+                        log.warn("⚠️ No se pudo regenerar el resumen del día: {}", error.getMessage());
+                        return Mono.just(toResponse(existing.get(), true));
+                    }
+                    if (error instanceof TooManyRequestsException) {
+                        return Mono.error(error);
+                    }
+                    return Mono.error(new RuntimeException(
+                            "El resumen del día no está disponible. Intenta nuevamente más tarde."));
+                });
+    }
+
+    private Mono<DailyBriefing> generateScheduled(Long userId, LocalDate date) {
+        return Mono.fromCallable(() -> userRepository.findById(userId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(Mono::justOrEmpty)
+                .map(UserSnapshot::from)
+                .filter(UserSnapshot::isChatEnabled)
+                .flatMap(user -> {
+                    String section = chatbotContextService.getContextSectionFor(user, date);
+                    String hash = hash(chatbotContextService.getContextFingerprintFor(user, date));
+
+                    boolean fresh = dailyBriefingRepository.findByUserIdAndDate(userId, date)
+                            .map(briefing -> briefing.getContextHash().equals(hash))
+                            .orElse(false);
+                    if (fresh) {
+                        return Mono.empty();
+                    }
+
+                    return geminiAIService.generateBackgroundAsync(null, buildPrompt(user, section), CALLER_KEY)
+                            // Cola de baja prioridad llena: se espera y se reintenta
+                            .retryWhen(Retry.backoff(3, Duration.ofSeconds(10))
+                                    .filter(TooManyRequestsException.class::isInstance))
+                            .publishOn(Schedulers.boundedElastic())
+                            .map(content -> save(userId, date, content, hash));
+                })
+                .onErrorResume(error -> {
+                    log.warn("⚠️ Resumen del día no generado para usuario {}: {}", userId, error.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private DailyBriefing save(Long userId, LocalDate date, String content, String hash) {
+        DailyBriefing briefing = dailyBriefingRepository.findByUserIdAndDate(userId, date)
+                .orElseGet(() -> DailyBriefing.builder().userId(userId).date(date).build());
+        briefing.setContent(content);
+        briefing.setContextHash(hash);
+        briefing.setGeneratedAt(LocalDateTime.now());
+
+        try {
+            return dailyBriefingRepository.save(briefing);
+        } catch (DataIntegrityViolationException e) {
+            // Otra instancia (o el endpoint) lo insertó a la vez: se actualiza ese registro
+            DailyBriefing current = dailyBriefingRepository.findByUserIdAndDate(userId, date).orElseThrow();
+            current.setContent(content);
+            current.setContextHash(hash);
+            current.setGeneratedAt(briefing.getGeneratedAt());
+            return dailyBriefingRepository.save(current);
+        }
+    }
+
+    private String buildPrompt(UserSnapshot user, String section) {
+        return "👤 USUARIO: " + user.getName() + "\n\n"
+                + section
+                + "═══════════════════════════════════════\n"
+                + "Prepara mi resumen de la mañana: prioridades de hoy, tareas vencidas que debo atender,\n"
+                + "eventos a tener en cuenta y un hábito a reforzar. Máximo 5 oraciones.\n";
+    }
+
+    private DailyBriefingResponse toResponse(DailyBriefing briefing, boolean stale) {
+        return DailyBriefingResponse.builder()
+                .date(briefing.getDate())
+                .content(briefing.getContent())
+                .generatedAt(briefing.getGeneratedAt())
+                .stale(stale)
+                .build();
+    }
+
+    private String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
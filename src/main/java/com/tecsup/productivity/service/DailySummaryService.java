@@ -36,12 +36,12 @@ public class DailySummaryService {
         Optional<DailySummary> existing = summaryRepository.findByUserIdAndDate(user.getId(), date);
 
         if (existing.isPresent()) {
-            log.debug("📊 Resumen encontrado en BD para {} - {}", user.getEmail(), date);
+            log.debug("📊 Resumen encontrado en BD para usuario {} - {}", user.getId(), date);
             return existing.get();
         }
 
         // Calcular en tiempo real
-        log.debug("⚡ Calculando resumen en tiempo real para {} - {}", user.getEmail(), date);
+        log.debug("⚡ Calculando resumen en tiempo real para usuario {} - {}", user.getId(), date);
         return calculateDailySummary(user, date);
     }
 
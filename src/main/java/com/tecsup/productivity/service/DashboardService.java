@@ -31,10 +31,10 @@ public class DashboardService {
     @Transactional(readOnly = true)
     public DashboardResponse getTodayDashboard() {
 
-        User user = securityUtil.getCurrentUser();
+        User user = securityUtil.getCurrentUserReference();
         LocalDate today = LocalDate.now();
 
-        log.info("📊 Generando dashboard para: {} - {}", user.getEmail(), today);
+        log.info("📊 Generando dashboard para: {} - {}", securityUtil.getCurrentUserEmail(), today);
 
         // 1️⃣ Tareas del día
         List<Task> tasks = taskRepository.findByUserIdAndFechaLimite(user.getId(), today);
@@ -89,11 +89,11 @@ public class DashboardService {
     @Transactional(readOnly = true)
     public List<TaskResponse> getUpcomingTasks(int days) {
 
-        User user = securityUtil.getCurrentUser();
+        Long userId = securityUtil.getCurrentUserId();
         LocalDate today = LocalDate.now();
         LocalDate endDate = today.plusDays(days);
 
-        List<Task> tasks = taskRepository.findUpcomingTasks(user.getId(), today, endDate);
+        List<Task> tasks = taskRepository.findUpcomingTasks(userId, today, endDate);
 
         return tasks.stream()
                 .map(this::mapToTaskResponse)
@@ -106,8 +106,8 @@ public class DashboardService {
     @Transactional(readOnly = true)
     public List<TaskResponse> getOverdueTasks() {
 
-        User user = securityUtil.getCurrentUser();
-        List<Task> tasks = taskRepository.findOverdueTasks(user.getId(), LocalDate.now());
+        Long userId = securityUtil.getCurrentUserId();
+        List<Task> tasks = taskRepository.findOverdueTasks(userId, LocalDate.now());
 
         return tasks.stream()
                 .map(this::mapToTaskResponse)
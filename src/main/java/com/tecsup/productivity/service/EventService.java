@@ -7,7 +7,6 @@ import com.tecsup.productivity.dto.request.CreateEventRequest;
 import com.tecsup.productivity.dto.request.UpdateEventRequest;
 import com.tecsup.productivity.dto.response.EventResponse;
 import com.tecsup.productivity.entity.Event;
-import com.tecsup.productivity.entity.User;
 import com.tecsup.productivity.exception.BadRequestException;
 import com.tecsup.productivity.exception.ResourceNotFoundException;
 import com.tecsup.productivity.exception.UnauthorizedException;
@@ -29,23 +28,26 @@ public class EventService {
 
     private final EventRepository eventRepository;
     private final SecurityUtil securityUtil;
+    private final ChatbotContextService chatbotContextService;
+    private final ChatRelevanceIndex chatRelevanceIndex;
 
     @Transactional(readOnly = true)
     public List<EventResponse> getEvents(LocalDate fecha, Event.EventCategory categoria) {
-        User user = securityUtil.getCurrentUser();
+        // Solo se necesita el id (viene del JWT, sin consultar el usuario)
+        Long userId = securityUtil.getCurrentUserId();
         List<Event> events;
 
         if (fecha != null && categoria != null) {
-            events = eventRepository.findByUserIdAndFechaOrderByHoraAsc(user.getId(), fecha)
+            events = eventRepository.findByUserIdAndFechaOrderByHoraAsc(userId, fecha)
                     .stream()
                     .filter(e -> e.getCategoria().equals(categoria))
                     .collect(Collectors.toList());
         } else if (fecha != null) {
-            events = eventRepository.findByUserIdAndFechaOrderByHoraAsc(user.getId(), fecha);
+            events = eventRepository.findByUserIdAndFechaOrderByHoraAsc(userId, fecha);
         } else if (categoria != null) {
-            events = eventRepository.findByUserIdAndCategoriaOrderByFechaAscHoraAsc(user.getId(), categoria);
+            events = eventRepository.findByUserIdAndCategoriaOrderByFechaAscHoraAsc(userId, categoria);
         } else {
-            events = eventRepository.findByUserIdOrderByFechaAscHoraAsc(user.getId());
+            events = eventRepository.findByUserIdOrderByFechaAscHoraAsc(userId);
         }
 
         return events.stream()
@@ -62,11 +64,11 @@ public class EventService {
 
     @Transactional
     public EventResponse createEvent(CreateEventRequest request) {
-        User user = securityUtil.getCurrentUser();
+        Long userId = securityUtil.getCurrentUserId();
 
         // ✅ Construir evento con curso OPCIONAL
         Event event = Event.builder()
-                .user(user)
+                .user(securityUtil.getCurrentUserReference())
                 .titulo(request.getTitulo().trim())
                 .fecha(request.getFecha())
                 .hora(request.getHora())
@@ -80,8 +82,10 @@ public class EventService {
                 .build();
 
         event = eventRepository.save(event);
+        chatbotContextService.invalidateContext(userId);
+        chatRelevanceIndex.onEventSaved(userId, event);
         log.info("[EVENT] Evento creado manualmente: {} por usuario {}",
-                event.getId(), user.getId());
+                event.getId(), userId);
 
         return mapToEventResponse(event);
     }
@@ -127,6 +131,8 @@ public class EventService {
         }
 
         event = eventRepository.save(event);
+        chatbotContextService.invalidateContext(securityUtil.getCurrentUserId());
+        chatRelevanceIndex.onEventSaved(securityUtil.getCurrentUserId(), event);
         return mapToEventResponse(event);
     }
 
@@ -144,6 +150,8 @@ public class EventService {
         }
 
         eventRepository.delete(event);
+        chatbotContextService.invalidateContext(securityUtil.getCurrentUserId());
+        chatRelevanceIndex.onEventDeleted(securityUtil.getCurrentUserId(), id);
         log.info("[EVENT] Evento eliminado: {} por usuario {}",
                 id, securityUtil.getCurrentUserId());
     }
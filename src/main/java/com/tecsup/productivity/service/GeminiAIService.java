@@ -2,26 +2,59 @@ package com.tecsup.productivity.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.tecsup.productivity.dto.response.ChatMessageResponse;
+import com.tecsup.productivity.exception.TooManyRequestsException;
+import com.tecsup.productivity.util.Bulkhead;
+import com.tecsup.productivity.util.CircuitBreaker;
+import com.tecsup.productivity.util.LatencyHistogram;
+import com.tecsup.productivity.util.PromptUtil;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.util.retry.Retry;
 
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 /**
  * Servicio mejorado para integración con Google Gemini AI
  * Con manejo de errores DNS, retry logic y fallback
+ * Protegido con circuit breaker (falla rápido si Gemini no responde)
+ * y bulkhead (límite de llamadas en curso)
+ * Cada llamada real espera su turno en GeminiRequestScheduler (cuota global y equidad por usuario)
+ * Enruta entre el modelo principal y uno ligero según tamaño del prompt y latencia reciente,
+ * y opcionalmente duplica (hedging) las llamadas que tardan más que el percentil configurado
  */
 @Slf4j
 @Service
@@ -34,21 +67,117 @@ public class GeminiAIService {
     @Value("${google.gemini.api.url}")
     private String apiUrl;
 
+    @Value("${google.gemini.api.model:gemini-2.5-flash}")
+    private String modelName;
+
+    // Modelo ligero opcional (vacío = siempre el principal)
+    @Value("${google.gemini.api.light-model:}")
+    private String lightModelName;
+
     @Value("${google.gemini.api.max-tokens:500}")
     private int maxTokens;
 
     @Value("${google.gemini.api.temperature:0.7}")
     private double temperature;
 
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE =
+            new ParameterizedTypeReference<>() {};
+
     private final WebClient.Builder webClientBuilder;
     private final ObjectMapper objectMapper;
+    private final GeminiInstructionCache instructionCache;
+    private final GeminiRequestScheduler requestScheduler;
+
+    @Value("${google.gemini.circuit-breaker.failure-threshold:5}")
+    private int breakerFailureThreshold;
+
+    @Value("${google.gemini.circuit-breaker.open-duration:30000}")
+    private long breakerOpenDuration;
+
+    @Value("${google.gemini.circuit-breaker.half-open-calls:1}")
+    private int breakerHalfOpenCalls;
+
+    @Value("${google.gemini.bulkhead.max-concurrent:20}")
+    private int bulkheadMaxConcurrent;
+
+    @Value("${google.gemini.bulkhead.max-queue:20}")
+    private int bulkheadMaxQueue;
+
+    @Value("${google.gemini.bulkhead.max-wait:5000}")
+    private long bulkheadMaxWait;
+
+    @Value("${google.gemini.response-cache.enabled:true}")
+    private boolean responseCacheEnabled;
+
+    @Value("${google.gemini.response-cache.ttl:600}")
+    private long responseCacheTtl;
+
+    @Value("${google.gemini.response-cache.max-size:1000}")
+    private long responseCacheMaxSize;
+
+    @Value("${google.gemini.latency.window:200}")
+    private int latencyWindow;
+
+    // Prompts (con historial) de hasta este tamaño van al modelo ligero
+    @Value("${google.gemini.routing.light-max-prompt-tokens:1500}")
+    private long lightMaxPromptTokens;
+
+    // Un modelo se considera lento si su percentil supera este umbral (ms)
+    @Value("${google.gemini.routing.slow-threshold:8000}")
+    private long routingSlowThreshold;
+
+    @Value("${google.gemini.routing.percentile:0.9}")
+    private double routingPercentile;
+
+    @Value("${google.gemini.routing.min-samples:20}")
+    private int routingMinSamples;
+
+    @Value("${google.gemini.hedging.enabled:false}")
+    private boolean hedgingEnabled;
+
+    @Value("${google.gemini.hedging.percentile:0.95}")
+    private double hedgingPercentile;
+
+    @Value("${google.gemini.hedging.min-samples:20}")
+    private int hedgingMinSamples;
+
+    @Value("${google.gemini.hedging.min-delay:500}")
+    private long hedgingMinDelay;
+
+    @Value("${google.gemini.hedging.max-delay:15000}")
+    private long hedgingMaxDelay;
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    // Cola del planificador para llamadas internas (no asociadas a un usuario)
+    private static final String SYSTEM_CALLER = "system";
 
     private WebClient webClient;
+    private GeminiModel primaryModel;
+    private GeminiModel lightModel;
+    private AsyncCache<String, String> responseCache;
+    private CircuitBreaker circuitBreaker;
+    private Bulkhead bulkhead;
 
     @PostConstruct
     public void init() {
         // Inicializar WebClient una sola vez
         this.webClient = webClientBuilder.build();
+        this.primaryModel = new GeminiModel(modelName, apiUrl, latencyWindow);
+        if (lightModelName != null && !lightModelName.isBlank() && !lightModelName.equals(modelName)) {
+            this.lightModel = new GeminiModel(lightModelName,
+                    apiUrl.replace("/models/" + modelName + ":", "/models/" + lightModelName + ":"), latencyWindow);
+            log.info("🪶 Modelo ligero habilitado: {}", lightModelName);
+        }
+        this.circuitBreaker = new CircuitBreaker("gemini", breakerFailureThreshold,
+                Duration.ofMillis(breakerOpenDuration), breakerHalfOpenCalls);
+        this.bulkhead = new Bulkhead("gemini", bulkheadMaxConcurrent, bulkheadMaxQueue,
+                Duration.ofMillis(bulkheadMaxWait));
+        this.responseCache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(responseCacheTtl))
+                .maximumSize(responseCacheMaxSize)
+                .recordStats()
+                .buildAsync();
 
         if (isConfigured()) {
             log.info("✅ Gemini API configurada correctamente");
@@ -86,59 +215,322 @@ public class GeminiAIService {
     }
 
     /**
-     * Genera una respuesta usando Gemini AI con retry y fallback
+     * Genera una respuesta usando Gemini AI con retry y fallback (bloqueante)
+     * Solo para usos fuera de un request (p. ej. test de conexión)
      */
     public String generateResponse(String prompt) {
+        return generateResponseAsync(prompt).block();
+    }
+
+    /**
+     * Genera una respuesta usando Gemini AI con retry y fallback
+     * No bloquea: la espera ocurre en los hilos de Netty (pool "gemini-pool")
+     */
+    public Mono<String> generateResponseAsync(String prompt) {
+        return generateReplyAsync(prompt, List.of(), SYSTEM_CALLER, GeminiRequestScheduler.Priority.BACKGROUND)
+                .map(GeminiReply::getText);
+    }
+
+    /**
+     * Igual que generateResponseAsync, enviando los mensajes previos
+     * de la sesión como turnos user/model
+     * callerKey identifica la cola justa del solicitante (p. ej. "user:42");
+     * si no hay cuota a tiempo falla con TooManyRequestsException (no se usa fallback)
+     * Los textos de fallback vienen marcados (GeminiReply.isFallback) para no guardarlos como turnos
+     */
+    public Mono<GeminiReply> generateReplyAsync(String prompt, List<ChatMessageResponse> history,
+                                                String callerKey, GeminiRequestScheduler.Priority priority) {
         if (!isConfigured()) {
             log.error("❌ Gemini no configurado");
-            return getFallbackResponse(prompt);
+            return Mono.just(GeminiReply.fallback(getFallbackResponse(prompt)));
         }
 
-        try {
+        return Mono.defer(() -> {
+            String cacheKey = responseCacheEnabled ? buildCacheKey(prompt, history) : null;
+
+            // Respuesta idéntica ya generada (o en curso): se reutiliza sin llamar a Gemini
+            CompletableFuture<String> cached = cacheKey != null ? responseCache.getIfPresent(cacheKey) : null;
+            // Caffeine quita los futures fallidos al completarse, pero el llamador puede reintentar
+            // antes de que ocurra: un fallo nunca se sirve desde la caché
+            if (cached != null && cached.isCompletedExceptionally()) {
+                responseCache.asMap().remove(cacheKey, cached);
+                cached = null;
+            }
+            if (cached != null) {
+                log.debug("⚡ Respuesta de Gemini desde caché");
+                return toReply(Mono.fromFuture(cached, true), prompt);
+            }
+
+            // Circuito abierto: respuesta inmediata sin llamar a Gemini
+            if (!circuitBreaker.tryAcquirePermission()) {
+                log.warn("⛔ Circuito de Gemini abierto, usando fallback");
+                return Mono.just(GeminiReply.fallback(getFallbackResponse(prompt)));
+            }
+
             log.debug("🤖 Generando respuesta (prompt: {} chars)", prompt.length());
 
-            Map<String, Object> requestBody = buildRequestBody(prompt);
-
-            String response = webClient.post()
-                    .uri(apiUrl + "?key=" + apiKey)
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .onStatus(
-                            status -> status.is4xxClientError() || status.is5xxServerError(),
-                            clientResponse -> clientResponse.bodyToMono(String.class)
-                                    .flatMap(body -> {
-                                        log.error("❌ Error HTTP {}: {}",
-                                                clientResponse.statusCode(), body);
-                                        return Mono.error(new RuntimeException(
-                                                "Error API: " + clientResponse.statusCode()));
-                                    })
-                    )
-                    .bodyToMono(String.class)
-
-                    // RETRY LOGIC: 3 intentos con backoff exponencial
-                    .retryWhen(Retry.backoff(3, Duration.ofSeconds(2))
-                            .maxBackoff(Duration.ofSeconds(10))
-                            .filter(throwable ->
-                                    throwable instanceof WebClientRequestException ||
-                                            throwable instanceof UnknownHostException)
-                            .doBeforeRetry(retrySignal ->
-                                    log.warn("⚠️ Reintento {}/3: {}",
-                                            retrySignal.totalRetries() + 1,
-                                            retrySignal.failure().getMessage())
+            Mono<String> call = requestScheduler.acquire(callerKey, priority)
+                    .then(bulkhead.execute(() -> callGemini(prompt, history, null)))
+                    .doOnSuccess(response -> circuitBreaker.onSuccess())
+                    .doOnError(this::recordFailure)
+                    .doOnCancel(circuitBreaker::onIgnored)
+                    .map(response -> {
+                        log.debug("✅ Respuesta recibida de Gemini");
+                        return extractTextFromResponse(response);
+                    });
+
+            if (cacheKey == null) {
+                return toReply(call, prompt);
+            }
+
+            // Una sola llamada por clave aunque lleguen varias peticiones iguales a la vez
+            // Los errores no se cachean (Caffeine descarta los futures fallidos)
+            AtomicBoolean loaded = new AtomicBoolean();
+            CompletableFuture<String> future = responseCache.get(cacheKey, (key, executor) -> {
+                loaded.set(true);
+                return call.toFuture();
+            });
+            if (!loaded.get()) {
+                circuitBreaker.onIgnored();
+            }
+
+            return toReply(Mono.fromFuture(future, true), prompt);
+        });
+    }
+
+    /**
+     * Respuesta real de Gemini, o el fallback (marcado) si la llamada falló
+     * El rechazo por cuota no se traduce: llega al cliente como 429
+     */
+    private Mono<GeminiReply> toReply(Mono<String> call, String prompt) {
+        return call.map(GeminiReply::of)
+                .onErrorResume(e -> !isQuotaRejection(e),
+                        e -> Mono.just(GeminiReply.fallback(handleError(e, prompt))));
+    }
+
+    /**
+     * Llamada interna de baja prioridad (resúmenes, tareas en segundo plano)
+     * Sin caché de respuestas ni fallback: los errores se propagan al llamador
+     */
+    public Mono<String> generateBackgroundAsync(String systemInstruction, String prompt, String callerKey) {
+        return generateBackgroundAsync(systemInstruction, prompt, callerKey, GeminiRequestScheduler.Priority.BACKGROUND);
+    }
+
+    /**
+     * Igual que generateBackgroundAsync con prioridad explícita (p. ej. INTERACTIVE si
+     * el usuario está esperando). systemInstruction null = instrucciones de ProductiBot
+     */
+    public Mono<String> generateBackgroundAsync(String systemInstruction, String prompt, String callerKey,
+                                                GeminiRequestScheduler.Priority priority) {
+        if (!isConfigured()) {
+            return Mono.error(new IllegalStateException("Gemini no configurado"));
+        }
+
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                return Mono.error(new IllegalStateException("Circuito de Gemini abierto"));
+            }
+
+            return requestScheduler.acquire(callerKey, priority)
+                    .then(bulkhead.execute(() -> callGemini(prompt, List.of(), systemInstruction)))
+                    .doOnSuccess(response -> circuitBreaker.onSuccess())
+                    .doOnError(this::recordFailure)
+                    .doOnCancel(circuitBreaker::onIgnored)
+                    .mapNotNull(this::extractChunkText)
+                    .switchIfEmpty(Mono.error(new IllegalStateException("Respuesta de Gemini sin texto")));
+        });
+    }
+
+    /**
+     * Llama al modelo elegido; si hay hedging y la respuesta tarda más que el percentil
+     * reciente del modelo, lanza una copia y se queda con la primera que responda
+     * (la otra se cancela). La copia solo sale si hay cuota libre en ese momento
+     */
+    private Mono<String> callGemini(String prompt, List<ChatMessageResponse> history, String systemInstruction) {
+        GeminiModel model = selectModel(prompt, history);
+        long hedgeDelay = hedgeDelayMillis(model);
+        if (hedgeDelay < 0) {
+            return attempt(prompt, history, model, systemInstruction);
+        }
+
+        // Si la original falla antes del retraso no se lanza la copia (no gasta cuota ni demora el error)
+        Sinks.One<Boolean> primaryFailed = Sinks.one();
+        Mono<String> primary = attempt(prompt, history, model, systemInstruction)
+                .doOnError(e -> primaryFailed.tryEmitValue(true));
+
+        Mono<String> hedge = Mono.delay(Duration.ofMillis(hedgeDelay))
+                .takeUntilOther(primaryFailed.asMono())
+                .filter(tick -> requestScheduler.tryAcquireNow())
+                .flatMap(tick -> {
+                    model.hedgesFired.incrementAndGet();
+                    log.debug("🪂 Gemini ({}) tarda más de {} ms, enviando petición duplicada",
+                            model.name, hedgeDelay);
+                    return attempt(prompt, history, model, systemInstruction)
+                            .doOnSuccess(response -> model.hedgesWon.incrementAndGet());
+                });
+
+        // Si ambas fallan se propaga el error de la petición original
+        return Mono.firstWithValue(primary, hedge)
+                .onErrorMap(NoSuchElementException.class, e -> e.getCause() != null
+                        ? Exceptions.unwrapMultiple(e.getCause()).get(0)
+                        : e);
+    }
+
+    private Mono<String> attempt(String prompt, List<ChatMessageResponse> history, GeminiModel model,
+                                 String systemInstruction) {
+        // cachedContent está ligado al modelo principal y a las instrucciones de ProductiBot
+        String cachedContent = model == primaryModel && systemInstruction == null
+                ? instructionCache.getActiveCachedContent()
+                : null;
+        String url = cachedContent != null ? instructionCache.toBetaUrl(model.url) : model.url;
+
+        return Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return webClient.post()
+                            .uri(url + "?key=" + apiKey)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(buildRequestBody(prompt, history, cachedContent, systemInstruction))
+                            .retrieve()
+                            .onStatus(
+                                    status -> status.is4xxClientError() || status.is5xxServerError(),
+                                    clientResponse -> toApiError(clientResponse, "")
                             )
-                    )
+                            .bodyToMono(String.class)
+                            .doOnSuccess(response -> model.latency.record(
+                                    Duration.ofNanos(System.nanoTime() - start).toMillis()));
+                })
+
+                // RETRY LOGIC: 3 intentos con backoff exponencial
+                .retryWhen(Retry.backoff(3, Duration.ofSeconds(2))
+                        .maxBackoff(Duration.ofSeconds(10))
+                        .filter(throwable ->
+                                throwable instanceof WebClientRequestException ||
+                                        throwable instanceof UnknownHostException)
+                        .doBeforeRetry(retrySignal ->
+                                log.warn("⚠️ Reintento {}/3: {}",
+                                        retrySignal.totalRetries() + 1,
+                                        retrySignal.failure().getMessage())
+                        )
+                )
+
+                // Timeout total de 60 segundos
+                .timeout(Duration.ofSeconds(60))
+                .doOnError(e -> discardCachedContent(cachedContent, e));
+    }
+
+    /**
+     * Modelo ligero para prompts pequeños; para prompts grandes solo si el principal
+     * va lento (percentil sobre el umbral) y el ligero responde mejor
+     */
+    private GeminiModel selectModel(String prompt, List<ChatMessageResponse> history) {
+        GeminiModel selected = primaryModel;
+
+        if (lightModel != null) {
+            long tokens = PromptUtil.estimateTokens(prompt);
+            for (ChatMessageResponse message : history) {
+                tokens += PromptUtil.estimateTokens(message.getMensaje())
+                        + PromptUtil.estimateTokens(message.getRespuesta());
+            }
+
+            long primaryLatency = recentLatency(primaryModel);
+            long lightLatency = recentLatency(lightModel);
+
+            if (tokens <= lightMaxPromptTokens) {
+                // El ligero va lento y el principal mejor: se mantiene el principal
+                boolean lightSlow = lightLatency > routingSlowThreshold
+                        && primaryLatency >= 0 && primaryLatency < lightLatency;
+                selected = lightSlow ? primaryModel : lightModel;
+            } else if (primaryLatency > routingSlowThreshold
+                    && (lightLatency < 0 || lightLatency < primaryLatency)) {
+                selected = lightModel;
+            }
+        }
+
+        selected.routed.incrementAndGet();
+        return selected;
+    }
+
+    /**
+     * Percentil de enrutamiento del modelo, o -1 si aún no hay muestras suficientes
+     */
+    private long recentLatency(GeminiModel model) {
+        if (model.latency.getSampleCount() < routingMinSamples) {
+            return -1;
+        }
+        return model.latency.percentile(routingPercentile);
+    }
+
+    /**
+     * Espera antes de la petición duplicada, o -1 si no corresponde hacer hedging
+     */
+    private long hedgeDelayMillis(GeminiModel model) {
+        if (!hedgingEnabled || model.latency.getSampleCount() < hedgingMinSamples) {
+            return -1;
+        }
+        long delay = model.latency.percentile(hedgingPercentile);
+        return Math.min(Math.max(delay, hedgingMinDelay), hedgingMaxDelay);
+    }
+
+    private Mono<Throwable> toApiError(ClientResponse clientResponse, String label) {
+        return clientResponse.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .flatMap(body -> {
+                    log.error("❌ Error HTTP {}{}: {}", clientResponse.statusCode(), label, body);
+                    return Mono.error(new GeminiApiException(clientResponse.statusCode().value()));
+                });
+    }
+
+    /**
+     * Cuenta el error en el circuit breaker solo si indica que Gemini no está sano
+     * (red, timeout, 5xx, 429). Los rechazos locales del bulkhead no cuentan
+     */
+    private void recordFailure(Throwable error) {
+        Throwable e = unwrap(error);
+
+        if (e instanceof Bulkhead.BulkheadFullException || e instanceof TooManyRequestsException) {
+            circuitBreaker.onIgnored();
+        } else if (e instanceof WebClientRequestException
+                || e instanceof TimeoutException
+                || (e instanceof GeminiApiException apiError && apiError.isServerSide())) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    /**
+     * Quita los envoltorios de reintentos agotados y de CompletableFuture
+     */
+    private Throwable unwrap(Throwable error) {
+        Throwable e = error;
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (Exceptions.isRetryExhausted(e) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
 
-                    // Timeout total de 60 segundos
-                    .timeout(Duration.ofSeconds(60))
+    /**
+     * Rechazo por cuota: se propaga al cliente como 429 con Retry-After
+     */
+    private boolean isQuotaRejection(Throwable error) {
+        return unwrap(error) instanceof TooManyRequestsException;
+    }
 
-                    // Ejecutar de forma bloqueante
-                    .block();
+    /**
+     * Traduce un error de la llamada a Gemini en un mensaje para el usuario
+     */
+    private String handleError(Throwable error, String prompt) {
+        Throwable e = unwrap(error);
 
-            log.debug("✅ Respuesta recibida de Gemini");
-            return extractTextFromResponse(response);
+        if (e instanceof Bulkhead.BulkheadFullException) {
+            log.warn("⏳ Demasiadas consultas a Gemini en curso, usando fallback");
+            return getBusyResponse();
+        }
 
-        } catch (WebClientRequestException e) {
+        if (e instanceof WebClientRequestException) {
             if (e.getCause() instanceof UnknownHostException) {
                 log.error("❌ ERROR DNS: No se puede resolver generativelanguage.googleapis.com");
                 log.error("💡 Posibles causas: Sin internet, Firewall, DNS bloqueado");
@@ -146,26 +538,200 @@ public class GeminiAIService {
             }
             log.error("❌ Error de red: {}", e.getMessage());
             return getNetworkErrorResponse();
+        }
 
-        } catch (Exception e) {
-            log.error("❌ Error inesperado al llamar Gemini: {}", e.getMessage(), e);
-            return getFallbackResponse(prompt);
+        log.error("❌ Error inesperado al llamar Gemini: {}", e.getMessage(), e);
+        return getFallbackResponse(prompt);
+    }
+
+    /**
+     * Genera la respuesta en streaming (streamGenerateContent + SSE)
+     * Emite los fragmentos de texto a medida que llegan de Gemini
+     * Si falla, el último fragmento es el texto de fallback (marcado con isFallback)
+     */
+    public Flux<GeminiReply> streamReply(String prompt, List<ChatMessageResponse> history,
+                                         String callerKey, GeminiRequestScheduler.Priority priority) {
+        if (!isConfigured()) {
+            log.error("❌ Gemini no configurado");
+            return Flux.just(GeminiReply.fallback(getFallbackResponse(prompt)));
         }
+
+        return Flux.defer(() -> {
+            String cacheKey = responseCacheEnabled ? buildCacheKey(prompt, history) : null;
+
+            // Si la misma respuesta ya está en caché se envía en un solo fragmento
+            CompletableFuture<String> cached = cacheKey != null ? responseCache.getIfPresent(cacheKey) : null;
+            if (cached != null && cached.isDone() && !cached.isCompletedExceptionally()) {
+                log.debug("⚡ Respuesta de Gemini desde caché (stream)");
+                return Flux.just(GeminiReply.of(cached.join()));
+            }
+
+            if (!circuitBreaker.tryAcquirePermission()) {
+                log.warn("⛔ Circuito de Gemini abierto, usando fallback (stream)");
+                return Flux.just(GeminiReply.fallback(getFallbackResponse(prompt)));
+            }
+
+            log.debug("🤖 Generando respuesta en streaming (prompt: {} chars)", prompt.length());
+
+            StringBuilder fullText = new StringBuilder();
+
+            return requestScheduler.acquire(callerKey, priority)
+                    .thenMany(bulkhead.executeMany(() -> callGeminiStream(prompt, history)))
+                    .doOnNext(fullText::append)
+                    .doOnComplete(() -> {
+                        circuitBreaker.onSuccess();
+                        if (cacheKey != null && !fullText.isEmpty()) {
+                            responseCache.put(cacheKey,
+                                    CompletableFuture.completedFuture(fullText.toString().trim()));
+                        }
+                    })
+                    .doOnError(this::recordFailure)
+                    .doOnCancel(circuitBreaker::onIgnored)
+                    .map(GeminiReply::of)
+                    .onErrorResume(e -> !isQuotaRejection(e),
+                            e -> Flux.just(GeminiReply.fallback(handleError(e, prompt))));
+        });
+    }
+
+    private Flux<String> callGeminiStream(String prompt, List<ChatMessageResponse> history) {
+        GeminiModel model = selectModel(prompt, history);
+        String cachedContent = model == primaryModel ? instructionCache.getActiveCachedContent() : null;
+        String url = cachedContent != null ? instructionCache.toBetaUrl(model.streamUrl) : model.streamUrl;
+
+        return webClient.post()
+                .uri(url + "?alt=sse&key=" + apiKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .bodyValue(buildRequestBody(prompt, history, cachedContent, null))
+                .retrieve()
+                .onStatus(
+                        status -> status.is4xxClientError() || status.is5xxServerError(),
+                        clientResponse -> toApiError(clientResponse, " (stream)")
+                )
+                .bodyToFlux(SSE_TYPE)
+                .mapNotNull(ServerSentEvent::data)
+                .mapNotNull(this::extractChunkText)
+
+                // Sin fragmentos nuevos en 60 segundos se corta el stream
+                .timeout(Duration.ofSeconds(60))
+                .doOnError(e -> discardCachedContent(cachedContent, e));
+    }
+
+    /**
+     * Un 4xx usando la caché de instrucciones (expirada, borrada, modelo distinto)
+     * la descarta: las siguientes peticiones vuelven a systemInstruction
+     */
+    private void discardCachedContent(String cachedContent, Throwable error) {
+        if (cachedContent != null
+                && unwrap(error) instanceof GeminiApiException apiError
+                && !apiError.isServerSide()) {
+            instructionCache.invalidate(cachedContent);
+        }
+    }
+
+    /**
+     * Estado del circuit breaker y del bulkhead (para /api/chat/status y diagnóstico)
+     */
+    public Map<String, Object> getResilienceStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("circuitBreaker", circuitBreaker.getStats());
+        stats.put("bulkhead", bulkhead.getStats());
+        stats.put("quota", requestScheduler.getStats());
+        stats.put("hedgingEnabled", hedgingEnabled);
+        stats.put("models", lightModel != null
+                ? List.of(primaryModel.getStats(), lightModel.getStats())
+                : List.of(primaryModel.getStats()));
+        return stats;
+    }
+
+    /**
+     * Métricas de la caché de respuestas (aciertos, fallos, tamaño)
+     */
+    public Map<String, Object> getResponseCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", responseCacheEnabled);
+        if (responseCache != null) {
+            CacheStats cacheStats = responseCache.synchronous().stats();
+            stats.put("size", responseCache.synchronous().estimatedSize());
+            stats.put("hitCount", cacheStats.hitCount());
+            stats.put("missCount", cacheStats.missCount());
+            stats.put("hitRate", cacheStats.hitRate());
+            stats.put("evictionCount", cacheStats.evictionCount());
+        }
+        return stats;
+    }
+
+    /**
+     * Clave de la caché: hash del prompt normalizado, del historial enviado
+     * y de los parámetros del modelo. Como el prompt incluye el contexto del
+     * usuario, cualquier cambio en sus datos genera una clave distinta
+     */
+    private String buildCacheKey(String prompt, List<ChatMessageResponse> history) {
+        StringBuilder material = new StringBuilder()
+                .append(apiUrl).append('\u0001')
+                .append(maxTokens).append('\u0001')
+                .append(temperature).append('\u0001');
+        for (ChatMessageResponse message : history) {
+            material.append(normalize(message.getMensaje())).append('\u0002')
+                    .append(normalize(message.getRespuesta())).append('\u0001');
+        }
+        material.append(normalize(prompt));
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(material.toString().getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private String normalize(String text) {
+        return text == null ? "" : WHITESPACE.matcher(text.trim()).replaceAll(" ");
+    }
+
+    /**
+     * Estado de la caché de instrucciones en Gemini (cachedContents)
+     */
+    public Map<String, Object> getInstructionCacheStats() {
+        return instructionCache.getStats();
+    }
+
+    public boolean isAvailable() {
+        return isConfigured() && circuitBreaker.getState() != CircuitBreaker.State.OPEN;
     }
 
     /**
      * Construye el cuerpo de la petición para Gemini
+     * Las instrucciones fijas de ProductiBot van como systemInstruction,
+     * o por referencia (cachedContent) si hay una caché vigente en Gemini
+     * systemInstruction distinto de null reemplaza las de ProductiBot (tareas internas)
      */
-    private Map<String, Object> buildRequestBody(String prompt) {
+    private Map<String, Object> buildRequestBody(String prompt, List<ChatMessageResponse> history,
+                                                 String cachedContent, String systemInstruction) {
         Map<String, Object> requestBody = new HashMap<>();
 
-        Map<String, Object> part = new HashMap<>();
-        part.put("text", prompt);
+        if (cachedContent != null) {
+            requestBody.put("cachedContent", cachedContent);
+        } else {
+            String instruction = systemInstruction != null
+                    ? systemInstruction
+                    : ChatbotContextService.SYSTEM_INSTRUCTION;
+            requestBody.put("systemInstruction", Map.of(
+                    "parts", List.of(Map.of("text", instruction))));
+        }
 
-        Map<String, Object> content = new HashMap<>();
-        content.put("parts", List.of(part));
+        // Turnos anteriores de la conversación (más antiguo primero)
+        List<Map<String, Object>> contents = new ArrayList<>();
+        for (ChatMessageResponse message : history) {
+            contents.add(buildContent("user", message.getMensaje()));
+            contents.add(buildContent("model", message.getRespuesta()));
+        }
+
+        // Mensaje actual (contexto del usuario + pregunta)
+        contents.add(buildContent("user", prompt));
 
-        requestBody.put("contents", List.of(content));
+        requestBody.put("contents", contents);
 
         Map<String, Object> generationConfig = new HashMap<>();
         generationConfig.put("temperature", temperature);
@@ -186,6 +752,16 @@ public class GeminiAIService {
         return requestBody;
     }
 
+    private Map<String, Object> buildContent(String role, String text) {
+        Map<String, Object> part = new HashMap<>();
+        part.put("text", text != null ? text : "");
+
+        Map<String, Object> content = new HashMap<>();
+        content.put("role", role);
+        content.put("parts", List.of(part));
+        return content;
+    }
+
     /**
      * Extrae el texto de la respuesta JSON de Gemini
      */
@@ -225,6 +801,26 @@ public class GeminiAIService {
         }
     }
 
+    /**
+     * Extrae el texto de un fragmento del stream (null si no trae texto)
+     */
+    private String extractChunkText(String jsonChunk) {
+        try {
+            JsonNode parts = objectMapper.readTree(jsonChunk)
+                    .path("candidates").path(0).path("content").path("parts");
+
+            StringBuilder text = new StringBuilder();
+            for (JsonNode part : parts) {
+                text.append(part.path("text").asText(""));
+            }
+            return text.isEmpty() ? null : text.toString();
+
+        } catch (Exception e) {
+            log.warn("⚠️ Fragmento de stream inválido: {}", e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Respuesta de fallback inteligente según el contexto
      */
@@ -258,6 +854,14 @@ public class GeminiAIService {
                 "Por favor, contacta al administrador del sistema.";
     }
 
+    /**
+     * Respuesta cuando hay demasiadas consultas en curso
+     */
+    private String getBusyResponse() {
+        return "⏳ El asistente está atendiendo muchas consultas en este momento. " +
+                "Intenta nuevamente en unos segundos.";
+    }
+
     /**
      * Respuesta para errores de red generales
      */
@@ -265,4 +869,66 @@ public class GeminiAIService {
         return "📡 Hay problemas de conexión con el servicio de IA.\n\n" +
                 "Intenta nuevamente en unos momentos. Si el problema persiste, contacta al administrador.";
     }
-}
\ No newline at end of file
+
+    /**
+     * Modelo de Gemini con sus URLs y latencias recientes
+     */
+    private static class GeminiModel {
+        private final String name;
+        private final String url;
+        private final String streamUrl;
+        private final LatencyHistogram latency;
+        private final AtomicLong routed = new AtomicLong();
+        private final AtomicLong hedgesFired = new AtomicLong();
+        private final AtomicLong hedgesWon = new AtomicLong();
+
+        GeminiModel(String name, String url, int latencyWindow) {
+            this.name = name;
+            this.url = url;
+            this.streamUrl = url.replace(":generateContent", ":streamGenerateContent");
+            this.latency = new LatencyHistogram(name, latencyWindow);
+        }
+
+        Map<String, Object> getStats() {
+            Map<String, Object> stats = new LinkedHashMap<>(latency.getStats());
+            stats.put("routedCount", routed.get());
+            stats.put("hedgesFired", hedgesFired.get());
+            stats.put("hedgesWon", hedgesWon.get());
+            return stats;
+        }
+    }
+
+    /**
+     * Texto devuelto al usuario; fallback = true si no viene de Gemini
+     * (error de red, circuito abierto, bulkhead lleno): no debe guardarse como turno del modelo
+     */
+    @lombok.Value
+    public static class GeminiReply {
+        String text;
+        boolean fallback;
+
+        public static GeminiReply of(String text) {
+            return new GeminiReply(text, false);
+        }
+
+        public static GeminiReply fallback(String text) {
+            return new GeminiReply(text, true);
+        }
+    }
+
+    /**
+     * Error HTTP devuelto por la API de Gemini
+     */
+    private static class GeminiApiException extends RuntimeException {
+        private final int status;
+
+        GeminiApiException(int status) {
+            super("Error API: " + status);
+            this.status = status;
+        }
+
+        boolean isServerSide() {
+            return status >= 500 || status == 429;
+        }
+    }
+}
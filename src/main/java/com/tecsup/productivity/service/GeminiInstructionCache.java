@@ -0,0 +1,177 @@
+package com.tecsup.productivity.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caché de contenido de Gemini (cachedContents) para las instrucciones fijas de ProductiBot
+ * - Se crea una vez y se reutiliza por nombre en cada request (cachedContent)
+ * - Se renueva periódicamente antes de expirar y se borra la entrada anterior
+ * - Solo existe en v1beta y exige un mínimo de tokens por entrada: si la creación
+ *   falla, GeminiAIService envía las instrucciones como systemInstruction
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class GeminiInstructionCache {
+
+    private static final Duration CALL_TIMEOUT = Duration.ofSeconds(15);
+
+    private final WebClient.Builder webClientBuilder;
+    private final ObjectMapper objectMapper;
+
+    @Value("${google.gemini.api.key}")
+    private String apiKey;
+
+    @Value("${google.gemini.api.url}")
+    private String apiUrl;
+
+    @Value("${google.gemini.api.model:gemini-2.5-flash}")
+    private String model;
+
+    @Value("${google.gemini.context-cache.enabled:false}")
+    private boolean enabled;
+
+    // Vida de cada entrada en Gemini (segundos)
+    @Value("${google.gemini.context-cache.ttl:3600}")
+    private long ttlSeconds;
+
+    private volatile String activeName;
+    private volatile Instant expiresAt;
+    private volatile String lastError;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createOnStartup() {
+        if (enabled) {
+            refresh();
+        }
+    }
+
+    /**
+     * Renueva la entrada antes de que expire (refresh-interval < ttl)
+     */
+    @Scheduled(fixedDelayString = "${google.gemini.context-cache.refresh-interval:3000000}",
+            initialDelayString = "${google.gemini.context-cache.refresh-interval:3000000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+
+        String previous = activeName;
+        try {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("model", "models/" + model);
+            body.put("systemInstruction", Map.of(
+                    "parts", List.of(Map.of("text", ChatbotContextService.SYSTEM_INSTRUCTION))));
+            body.put("ttl", ttlSeconds + "s");
+
+            String response = webClientBuilder.build().post()
+                    .uri(getBetaBaseUrl() + "/cachedContents?key=" + apiKey)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(body)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .block(CALL_TIMEOUT);
+
+            JsonNode root = objectMapper.readTree(response);
+            String name = root.path("name").asText(null);
+            if (name == null) {
+                throw new IllegalStateException("Respuesta sin nombre de caché");
+            }
+
+            this.activeName = name;
+            this.expiresAt = Instant.now().plusSeconds(ttlSeconds);
+            this.lastError = null;
+            log.info("🧠 Instrucciones de ProductiBot cacheadas en Gemini: {}", name);
+        } catch (Exception e) {
+            this.lastError = e.getMessage();
+            log.warn("⚠️ No se pudo crear la caché de instrucciones en Gemini (se usará systemInstruction): {}",
+                    e.getMessage());
+            return;
+        }
+
+        if (previous != null) {
+            delete(previous);
+        }
+    }
+
+    /**
+     * Nombre de la entrada vigente (cachedContents/...) o null si no hay ninguna usable
+     */
+    public String getActiveCachedContent() {
+        String name = activeName;
+        Instant expiry = expiresAt;
+        if (!enabled || name == null || expiry == null) {
+            return null;
+        }
+        // Margen para no enviar una entrada a punto de expirar
+        if (Instant.now().plusSeconds(60).isAfter(expiry)) {
+            return null;
+        }
+        return name;
+    }
+
+    /**
+     * Descarta la entrada (p. ej. Gemini respondió 4xx al usarla)
+     * Se vuelve a crear en la siguiente renovación
+     */
+    public void invalidate(String name) {
+        if (name != null && name.equals(activeName)) {
+            log.warn("⚠️ Caché de instrucciones {} descartada", name);
+            this.activeName = null;
+            this.expiresAt = null;
+        }
+    }
+
+    /**
+     * URL de generateContent en v1beta (cachedContent no existe en v1)
+     */
+    public String toBetaUrl(String url) {
+        return url.replace("/v1/", "/v1beta/");
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("active", getActiveCachedContent() != null);
+        stats.put("name", activeName);
+        stats.put("expiresAt", expiresAt);
+        stats.put("lastError", lastError);
+        return stats;
+    }
+
+    private void delete(String name) {
+        try {
+            webClientBuilder.build().delete()
+                    .uri(getBetaBaseUrl() + "/" + name + "?key=" + apiKey)
+                    .retrieve()
+                    .toBodilessEntity()
+                    .block(CALL_TIMEOUT);
+            log.debug("🧹 Caché de instrucciones anterior borrada: {}", name);
+        } catch (Exception e) {
+            // Expira sola por ttl
+            log.debug("No se pudo borrar la caché {}: {}", name, e.getMessage());
+        }
+    }
+
+    private String getBetaBaseUrl() {
+        String beta = toBetaUrl(apiUrl);
+        int modelsIndex = beta.indexOf("/models/");
+        return modelsIndex > 0 ? beta.substring(0, modelsIndex) : beta;
+    }
+}
@@ -0,0 +1,280 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.exception.TooManyRequestsException;
+import com.tecsup.productivity.util.TokenBucket;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Planificador de llamadas a Gemini
+ * - Cuota global: token bucket dimensionado a las peticiones por minuto del plan
+ * - Equidad por usuario: deficit round robin (cada usuario tiene su cola; en cada
+ *   vuelta recibe tantos turnos como su peso)
+ * - Si la espera estimada supera max-wait o las colas están llenas se rechaza
+ *   al momento con TooManyRequestsException (Retry-After estimado)
+ * Las respuestas servidas desde caché no pasan por aquí: no consumen cuota
+ */
+@Slf4j
+@Service
+public class GeminiRequestScheduler {
+
+    public enum Priority {
+        INTERACTIVE,
+        BACKGROUND
+    }
+
+    @Value("${google.gemini.quota.requests-per-minute:60}")
+    private int requestsPerMinute;
+
+    @Value("${google.gemini.quota.burst:10}")
+    private int burst;
+
+    @Value("${google.gemini.quota.max-queue:50}")
+    private int maxQueue;
+
+    @Value("${google.gemini.quota.max-queue-per-user:3}")
+    private int maxQueuePerUser;
+
+    @Value("${google.gemini.quota.max-wait:20000}")
+    private long maxWaitMillis;
+
+    @Value("${google.gemini.quota.weight.interactive:4}")
+    private int interactiveWeight;
+
+    @Value("${google.gemini.quota.weight.background:1}")
+    private int backgroundWeight;
+
+    private TokenBucket bucket;
+
+    // Estado del DRR (protegido por el monitor de this)
+    private final Map<String, Flow> flows = new HashMap<>();
+    private final Deque<Flow> activeFlows = new ArrayDeque<>();
+    private int queued = 0;
+    private boolean dispatchScheduled = false;
+
+    private final AtomicLong granted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        this.bucket = new TokenBucket(burst, requestsPerMinute / 60.0);
+        log.info("🚦 Cuota de Gemini: {} req/min, ráfaga {}", requestsPerMinute, burst);
+    }
+
+    /**
+     * Espera un turno para llamar a Gemini en nombre de {@code callerKey}
+     * Completa vacío cuando hay cuota; falla con TooManyRequestsException si no la habrá a tiempo
+     */
+    public Mono<Void> acquire(String callerKey, Priority priority) {
+        return Mono.<Void>create(sink -> enqueue(callerKey, priority, sink))
+                .timeout(Duration.ofMillis(maxWaitMillis), Mono.defer(() -> {
+                    rejected.incrementAndGet();
+                    return Mono.error(new TooManyRequestsException(
+                            "El asistente está muy ocupado. Intenta nuevamente en unos segundos.",
+                            estimateWaitSeconds(1)));
+                }));
+    }
+
+    /**
+     * Toma cuota solo si está disponible ahora y nadie espera (peticiones opcionales, p. ej. hedging)
+     */
+    public synchronized boolean tryAcquireNow() {
+        if (queued > 0 || !bucket.tryConsume()) {
+            return false;
+        }
+        granted.incrementAndGet();
+        return true;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requestsPerMinute", requestsPerMinute);
+        stats.put("burst", burst);
+        stats.put("availableTokens", bucket.getAvailableTokens());
+        synchronized (this) {
+            stats.put("queued", queued);
+            stats.put("activeCallers", activeFlows.size());
+        }
+        stats.put("grantedCount", granted.get());
+        stats.put("rejectedCount", rejected.get());
+        return stats;
+    }
+
+    private void enqueue(String callerKey, Priority priority, MonoSink<Void> sink) {
+        Pending pending = new Pending(sink);
+        TooManyRequestsException rejection = null;
+
+        synchronized (this) {
+            Flow flow = flows.get(callerKey);
+            int callerQueued = flow != null ? flow.queue.size() : 0;
+
+            // Sin nadie esperando y con cuota disponible: pasa directo
+            if (queued == 0 && bucket.tryConsume()) {
+                pending.state.set(Pending.GRANTED);
+            } else if (callerQueued >= maxQueuePerUser) {
+                rejection = new TooManyRequestsException(
+                        "Tienes varias consultas en curso. Espera a que terminen.",
+                        estimateWaitSeconds(queued + 1));
+            } else if (queued >= maxQueue
+                    || bucket.nanosUntilAvailable(queued + 1) > TimeUnit.MILLISECONDS.toNanos(maxWaitMillis)) {
+                rejection = new TooManyRequestsException(
+                        "El asistente está muy ocupado. Intenta nuevamente en unos segundos.",
+                        estimateWaitSeconds(queued + 1));
+            } else {
+                if (flow == null) {
+                    flow = new Flow(callerKey, weightOf(priority));
+                    flows.put(callerKey, flow);
+                }
+                if (flow.queue.isEmpty()) {
+                    activeFlows.addLast(flow);
+                }
+                flow.queue.addLast(pending);
+                queued++;
+                scheduleDispatch();
+            }
+        }
+
+        if (rejection != null) {
+            rejected.incrementAndGet();
+            log.warn("🚦 Llamada a Gemini rechazada para {} (reintentar en {}s)",
+                    callerKey, rejection.getRetryAfterSeconds());
+            sink.error(rejection);
+            return;
+        }
+
+        if (pending.state.get() == Pending.GRANTED) {
+            granted.incrementAndGet();
+            sink.success();
+            return;
+        }
+
+        sink.onCancel(() -> cancel(callerKey, pending));
+    }
+
+    /**
+     * Entrega la cuota disponible recorriendo las colas por deficit round robin
+     */
+    private void dispatch() {
+        List<Pending> ready = new ArrayList<>();
+
+        synchronized (this) {
+            dispatchScheduled = false;
+
+            while (!activeFlows.isEmpty()) {
+                Flow flow = activeFlows.peekFirst();
+
+                if (flow.deficit < 1) {
+                    flow.deficit += flow.weight;
+                }
+
+                boolean outOfTokens = false;
+                while (flow.deficit >= 1 && !flow.queue.isEmpty()) {
+                    if (!bucket.tryConsume()) {
+                        outOfTokens = true;
+                        break;
+                    }
+                    Pending pending = flow.queue.pollFirst();
+                    queued--;
+                    flow.deficit--;
+                    if (pending.state.compareAndSet(Pending.WAITING, Pending.GRANTED)) {
+                        ready.add(pending);
+                    }
+                }
+
+                if (flow.queue.isEmpty()) {
+                    activeFlows.pollFirst();
+                    flow.deficit = 0;
+                    flows.remove(flow.key);
+                } else if (outOfTokens) {
+                    break;
+                } else {
+                    // Agotó su turno: pasa al final de la vuelta
+                    activeFlows.addLast(activeFlows.pollFirst());
+                }
+            }
+
+            if (!activeFlows.isEmpty()) {
+                scheduleDispatch();
+            }
+        }
+
+        for (Pending pending : ready) {
+            granted.incrementAndGet();
+            pending.sink.success();
+        }
+    }
+
+    private void scheduleDispatch() {
+        if (dispatchScheduled) {
+            return;
+        }
+        dispatchScheduled = true;
+        long delay = Math.max(bucket.nanosUntilAvailable(1), 0);
+        Schedulers.parallel().schedule(this::dispatch, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized void cancel(String callerKey, Pending pending) {
+        if (!pending.state.compareAndSet(Pending.WAITING, Pending.CANCELLED)) {
+            return;
+        }
+        Flow flow = flows.get(callerKey);
+        if (flow != null && flow.queue.remove(pending)) {
+            queued--;
+            if (flow.queue.isEmpty()) {
+                activeFlows.remove(flow);
+                flows.remove(callerKey);
+            }
+        }
+    }
+
+    private long estimateWaitSeconds(long position) {
+        long nanos = bucket.nanosUntilAvailable(position);
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos) + 1);
+    }
+
+    private int weightOf(Priority priority) {
+        return Math.max(1, priority == Priority.BACKGROUND ? backgroundWeight : interactiveWeight);
+    }
+
+    private static final class Flow {
+        private final String key;
+        private final int weight;
+        private final Deque<Pending> queue = new ArrayDeque<>();
+        private int deficit;
+
+        Flow(String key, int weight) {
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Pending {
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final MonoSink<Void> sink;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Pending(MonoSink<Void> sink) {
+            this.sink = sink;
+        }
+    }
+}
@@ -8,7 +8,6 @@ import com.tecsup.productivity.dto.response.HabitResponse;
 import com.tecsup.productivity.dto.response.HabitWithProgressResponse;
 import com.tecsup.productivity.entity.Habit;
 import com.tecsup.productivity.entity.HabitLog;
-import com.tecsup.productivity.entity.User;
 import com.tecsup.productivity.exception.BadRequestException;
 import com.tecsup.productivity.exception.ResourceNotFoundException;
 import com.tecsup.productivity.repository.HabitLogRepository;
@@ -31,6 +30,7 @@ public class HabitService {
     private final HabitRepository habitRepository;
     private final HabitLogRepository habitLogRepository;
     private final SecurityUtil securityUtil;
+    private final ChatbotContextService chatbotContextService;
 
     // ============================================
     // PANTALLA BIENESTAR - OBTENER HÁBITOS DEL DÍA
@@ -42,12 +42,12 @@ public class HabitService {
      */
     @Transactional(readOnly = true)
     public List<HabitWithProgressResponse> getTodayHabits() {
-        User user = securityUtil.getCurrentUser();
+        Long userId = securityUtil.getCurrentUserId();
         LocalDate today = LocalDate.now();
 
-        log.info("📋 Obteniendo hábitos de hoy para: {}", user.getEmail());
+        log.info("📋 Obteniendo hábitos de hoy para: {}", securityUtil.getCurrentUserEmail());
 
-        List<Habit> habits = habitRepository.findByUserIdAndActivoTrue(user.getId());
+        List<Habit> habits = habitRepository.findByUserIdAndActivoTrue(userId);
 
         return habits.stream()
                 .map(habit -> {
@@ -65,13 +65,13 @@ public class HabitService {
      */
     @Transactional(readOnly = true)
     public HabitProgressResponse getYesterdaySummary() {
-        User user = securityUtil.getCurrentUser();
+        Long userId = securityUtil.getCurrentUserId();
         LocalDate yesterday = LocalDate.now().minusDays(1);
 
-        log.info("📊 Obteniendo resumen de ayer para: {}", user.getEmail());
+        log.info("📊 Obteniendo resumen de ayer para: {}", securityUtil.getCurrentUserEmail());
 
-        List<Habit> habits = habitRepository.findByUserIdAndActivoTrue(user.getId());
-        List<HabitLog> logs = habitLogRepository.findByUserAndDate(user.getId(), yesterday);
+        List<Habit> habits = habitRepository.findByUserIdAndActivoTrue(userId);
+        List<HabitLog> logs = habitLogRepository.findByUserAndDate(userId, yesterday);
 
         int total = habits.size();
         int completed = (int) logs.stream().filter(HabitLog::getCompletado).count();
@@ -91,18 +91,18 @@ public class HabitService {
      */
     @Transactional(readOnly = true)
     public List<HabitProgressResponse> getHabitHistory(int days) {
-        User user = securityUtil.getCurrentUser();
+        Long userId = securityUtil.getCurrentUserId();
         LocalDate today = LocalDate.now();
         LocalDate startDate = today.minusDays(days - 1);
 
-        log.info("📈 Obteniendo histórico de {} días para: {}", days, user.getEmail());
+        log.info("📈 Obteniendo histórico de {} días para: {}", days, securityUtil.getCurrentUserEmail());
 
-        List<Habit> habits = habitRepository.findByUserIdAndActivoTrue(user.getId());
+        List<Habit> habits = habitRepository.findByUserIdAndActivoTrue(userId);
         int totalHabits = habits.size();
 
         return startDate.datesUntil(today.plusDays(1))
                 .map(date -> {
-                    List<HabitLog> logs = habitLogRepository.findByUserAndDate(user.getId(), date);
+                    List<HabitLog> logs = habitLogRepository.findByUserAndDate(userId, date);
                     int completed = (int) logs.stream().filter(HabitLog::getCompletado).count();
                     int progress = (totalHabits > 0) ? Math.round((completed * 100.0f) / totalHabits) : 0;
 
@@ -125,17 +125,17 @@ public class HabitService {
      */
     @Transactional
     public HabitResponse createHabit(CreateHabitRequest request) {
-        User user = securityUtil.getCurrentUser();
+        Long userId = securityUtil.getCurrentUserId();
 
-        log.info("➕ Creando hábito: {} para {}", request.getNombre(), user.getEmail());
+        log.info("➕ Creando hábito: {} para {}", request.getNombre(), securityUtil.getCurrentUserEmail());
 
         // Validar que no exista un hábito del mismo tipo activo
-        if (habitRepository.existsByUserIdAndTipoAndActivoTrue(user.getId(), request.getTipo())) {
+        if (habitRepository.existsByUserIdAndTipoAndActivoTrue(userId, request.getTipo())) {
             throw new BadRequestException("Ya tienes un hábito activo de tipo " + request.getTipo());
         }
 
         Habit habit = Habit.builder()
-                .user(user)
+                .user(securityUtil.getCurrentUserReference())
                 .nombre(request.getNombre())
                 .tipo(request.getTipo())
                 .esComida(request.getEsComida())
@@ -144,6 +144,7 @@ public class HabitService {
                 .build();
 
         habit = habitRepository.save(habit);
+        chatbotContextService.invalidateContext(userId);
         log.info("✅ Hábito creado: {}", habit.getNombre());
 
         return mapToHabitResponse(habit);
@@ -154,12 +155,12 @@ public class HabitService {
      */
     @Transactional
     public HabitResponse updateHabit(Long habitId, UpdateHabitRequest request) {
-        User user = securityUtil.getCurrentUser();
+        Long userId = securityUtil.getCurrentUserId();
 
         Habit habit = habitRepository.findById(habitId)
                 .orElseThrow(() -> new ResourceNotFoundException("Hábito no encontrado"));
 
-        if (!habit.getUser().getId().equals(user.getId())) {
+        if (!habit.getUser().getId().equals(userId)) {
             throw new BadRequestException("No tienes permiso para editar este hábito");
         }
 
@@ -176,6 +177,7 @@ public class HabitService {
         }
 
         habit = habitRepository.save(habit);
+        chatbotContextService.invalidateContext(userId);
         log.info("✅ Hábito actualizado: {}", habit.getNombre());
 
         return mapToHabitResponse(habit);
@@ -186,12 +188,12 @@ public class HabitService {
      */
     @Transactional
     public void deleteHabit(Long habitId) {
-        User user = securityUtil.getCurrentUser();
+        Long userId = securityUtil.getCurrentUserId();
 
         Habit habit = habitRepository.findById(habitId)
                 .orElseThrow(() -> new ResourceNotFoundException("Hábito no encontrado"));
 
-        if (!habit.getUser().getId().equals(user.getId())) {
+        if (!habit.getUser().getId().equals(userId)) {
             throw new BadRequestException("No tienes permiso para eliminar este hábito");
         }
 
@@ -200,6 +202,7 @@ public class HabitService {
         // Eliminar logs asociados
         habitLogRepository.deleteByHabitId(habitId);
         habitRepository.delete(habit);
+        chatbotContextService.invalidateContext(userId);
 
         log.info("✅ Hábito eliminado");
     }
@@ -209,12 +212,12 @@ public class HabitService {
      */
     @Transactional
     public HabitResponse deactivateHabit(Long habitId) {
-        User user = securityUtil.getCurrentUser();
+        Long userId = securityUtil.getCurrentUserId();
 
         Habit habit = habitRepository.findById(habitId)
                 .orElseThrow(() -> new ResourceNotFoundException("Hábito no encontrado"));
 
-        if (!habit.getUser().getId().equals(user.getId())) {
+        if (!habit.getUser().getId().equals(userId)) {
             throw new BadRequestException("No tienes permiso para desactivar este hábito");
         }
 
@@ -222,6 +225,7 @@ public class HabitService {
 
         habit.setActivo(false);
         habit = habitRepository.save(habit);
+        chatbotContextService.invalidateContext(userId);
 
         return mapToHabitResponse(habit);
     }
@@ -235,13 +239,13 @@ public class HabitService {
      */
     @Transactional
     public HabitWithProgressResponse logHabitProgress(Long habitId, LogHabitRequest request) {
-        User user = securityUtil.getCurrentUser();
+        Long userId = securityUtil.getCurrentUserId();
         LocalDate fecha = request.getFecha() != null ? request.getFecha() : LocalDate.now();
 
         Habit habit = habitRepository.findById(habitId)
                 .orElseThrow(() -> new ResourceNotFoundException("Hábito no encontrado"));
 
-        if (!habit.getUser().getId().equals(user.getId())) {
+        if (!habit.getUser().getId().equals(userId)) {
             throw new BadRequestException("No tienes permiso para registrar este hábito");
         }
 
@@ -274,6 +278,7 @@ public class HabitService {
         }
 
         log = habitLogRepository.save(log);
+        chatbotContextService.invalidateContext(userId);
         log.info("✅ Progreso registrado: {} - Completado: {}", habit.getNombre(), log.getCompletado());
 
         return mapToHabitWithProgress(habit, log);
@@ -284,13 +289,13 @@ public class HabitService {
      */
     @Transactional
     public HabitWithProgressResponse toggleHabitCompletion(Long habitId) {
-        User user = securityUtil.getCurrentUser();
+        Long userId = securityUtil.getCurrentUserId();
         LocalDate today = LocalDate.now();
 
         Habit habit = habitRepository.findById(habitId)
                 .orElseThrow(() -> new ResourceNotFoundException("Hábito no encontrado"));
 
-        if (!habit.getUser().getId().equals(user.getId())) {
+        if (!habit.getUser().getId().equals(userId)) {
             throw new BadRequestException("No tienes permiso para modificar este hábito");
         }
 
@@ -312,6 +317,7 @@ public class HabitService {
         }
 
         log = habitLogRepository.save(log);
+        chatbotContextService.invalidateContext(userId);
         log.info("✅ Hábito {} - Completado: {}", habit.getNombre(), log.getCompletado());
 
         return mapToHabitWithProgress(habit, log);
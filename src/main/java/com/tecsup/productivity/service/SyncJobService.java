@@ -0,0 +1,294 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.dto.response.SyncJobResponse;
+import com.tecsup.productivity.dto.response.SyncResponse;
+import com.tecsup.productivity.entity.SyncJob;
+import com.tecsup.productivity.exception.BadRequestException;
+import com.tecsup.productivity.exception.ResourceNotFoundException;
+import com.tecsup.productivity.repository.SyncJobRepository;
+import com.tecsup.productivity.security.UserSnapshot;
+import com.tecsup.productivity.util.SecurityUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cola persistente de sincronizaciones TECSUP
+ * - El request solo encola (un trabajo activo por usuario) y responde con el id
+ * - Un poller reclama trabajos pendientes (FOR UPDATE SKIP LOCKED, sirve con varias
+ *   instancias) y los ejecuta en un pool acotado
+ * - El worker renueva heartbeat_at mientras ejecuta; un RUNNING sin latido durante
+ *   stale-after (caída de la instancia) se reencola. Uno lento pero vivo no se toca
+ * - Cada reclamo incrementa attempts: latido, progreso y cierre solo escriben si el
+ *   intento sigue siendo el de este worker (un worker que se creía caído no pisa al nuevo)
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SyncJobService {
+
+    private static final String CLAIM_SQL = """
+            UPDATE sync_jobs SET status = 'RUNNING', started_at = ?, heartbeat_at = ?, attempts = attempts + 1,
+                cursos_procesados = 0
+            WHERE id IN (
+                SELECT id FROM sync_jobs WHERE status = 'PENDING'
+                ORDER BY created_at
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING id, user_id, attempts
+            """;
+
+    private final SyncJobRepository syncJobRepository;
+    private final TecsupSyncService tecsupSyncService;
+    private final SecurityUtil securityUtil;
+    private final JdbcTemplate jdbcTemplate;
+
+    // Sincronizaciones simultáneas por instancia
+    @Value("${tecsup.sync.jobs.workers:2}")
+    private int workers;
+
+    // Un RUNNING sin latido durante este tiempo se considera abandonado (ms)
+    @Value("${tecsup.sync.jobs.stale-after:120000}")
+    private long staleAfterMillis;
+
+    @Value("${tecsup.sync.jobs.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${tecsup.sync.jobs.retention-days:7}")
+    private int retentionDays;
+
+    private ExecutorService workerPool;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Trabajos que ejecuta esta instancia -> intento reclamado (para el latido)
+    private final Map<Long, Integer> runningJobs = new ConcurrentHashMap<>();
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workerPool = Executors.newFixedThreadPool(Math.max(1, workers), runnable -> {
+            Thread thread = new Thread(runnable, "sync-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workerPool.shutdown();
+        try {
+            workerPool.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Encola una sincronización del usuario actual
+     * Si ya tiene una pendiente o en curso, devuelve esa (no se duplica)
+     */
+    public SyncJobResponse submitForCurrentUser() {
+        UserSnapshot user = securityUtil.getCurrentUserSnapshot();
+
+        if (!user.isTecsupSync()) {
+            throw new BadRequestException("No hay token TECSUP guardado");
+        }
+
+        return submit(user.getId());
+    }
+
+    /**
+     * Encola una sincronización del usuario indicado (p. ej. la importación inicial del registro)
+     * Si ya tiene una pendiente o en curso, devuelve esa (no se duplica)
+     */
+    public SyncJobResponse submit(Long userId) {
+        SyncJob active = syncJobRepository.findByActiveUserId(userId).orElse(null);
+        if (active != null) {
+            log.info("[SYNC] Usuario {} ya tiene la sincronización {} en curso", userId, active.getId());
+            return toResponse(active);
+        }
+
+        try {
+            SyncJob job = syncJobRepository.saveAndFlush(SyncJob.builder()
+                    .userId(userId)
+                    .activeUserId(userId)
+                    .status(SyncJob.JobStatus.PENDING)
+                    .build());
+            log.info("[SYNC] Sincronización {} encolada para usuario {}", job.getId(), userId);
+            return toResponse(job);
+        } catch (DataIntegrityViolationException e) {
+            // Otra petición la encoló a la vez (índice único de active_user_id)
+            return syncJobRepository.findByActiveUserId(userId)
+                    .map(this::toResponse)
+                    .orElseThrow(() -> e);
+        }
+    }
+
+    /**
+     * Estado de un trabajo del usuario actual
+     */
+    @Transactional(readOnly = true)
+    public SyncJobResponse getJob(Long jobId) {
+        return syncJobRepository.findByIdAndUserId(jobId, securityUtil.getCurrentUserId())
+                .map(this::toResponse)
+                .orElseThrow(() -> new ResourceNotFoundException("Sincronización no encontrada"));
+    }
+
+    /**
+     * Reclama trabajos pendientes hasta llenar el pool
+     */
+    @Scheduled(fixedDelayString = "${tecsup.sync.jobs.poll-interval:1000}")
+    public void poll() {
+        int free = Math.max(1, workers) - inFlight.get();
+        if (free <= 0) {
+            return;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<ClaimedJob> claimed = jdbcTemplate.query(CLAIM_SQL,
+                (rs, i) -> new ClaimedJob(rs.getLong("id"), rs.getLong("user_id"), rs.getInt("attempts")),
+                now, now, free);
+
+        for (ClaimedJob job : claimed) {
+            inFlight.incrementAndGet();
+            runningJobs.put(job.id(), job.attempt());
+            workerPool.execute(() -> run(job));
+        }
+    }
+
+    /**
+     * Renueva heartbeat_at de los trabajos en curso en esta instancia
+     * (también mientras se descarga un curso grande o se escribe el resultado)
+     */
+    @Scheduled(fixedDelayString = "${tecsup.sync.jobs.heartbeat-interval:30000}")
+    public void heartbeat() {
+        if (runningJobs.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> args = runningJobs.entrySet().stream()
+                .map(job -> new Object[]{now, job.getKey(), job.getValue()})
+                .toList();
+        jdbcTemplate.batchUpdate(
+                "UPDATE sync_jobs SET heartbeat_at = ? WHERE id = ? AND status = 'RUNNING' AND attempts = ?", args);
+    }
+
+    /**
+     * Reencola (o da por fallidos) los trabajos abandonados y limpia los antiguos
+     */
+    @Scheduled(fixedDelayString = "${tecsup.sync.jobs.maintenance-interval:60000}")
+    @Transactional
+    public void maintenance() {
+        Timestamp staleBefore = Timestamp.valueOf(LocalDateTime.now().minus(Duration.ofMillis(staleAfterMillis)));
+
+        int requeued = jdbcTemplate.update(
+                "UPDATE sync_jobs SET status = 'PENDING' " +
+                        "WHERE status = 'RUNNING' AND COALESCE(heartbeat_at, started_at) < ? AND attempts < ?",
+                staleBefore, maxAttempts);
+        int abandoned = jdbcTemplate.update(
+                "UPDATE sync_jobs SET status = 'FAILED', active_user_id = NULL, finished_at = ?, " +
+                        "mensaje = 'La sincronización no terminó. Intenta nuevamente.' " +
+                        "WHERE status = 'RUNNING' AND COALESCE(heartbeat_at, started_at) < ? AND attempts >= ?",
+                Timestamp.valueOf(LocalDateTime.now()), staleBefore, maxAttempts);
+        if (requeued > 0 || abandoned > 0) {
+            log.warn("[SYNC] Trabajos abandonados: {} reencolados, {} marcados como fallidos", requeued, abandoned);
+        }
+
+        int purged = syncJobRepository.deleteFinishedBefore(LocalDateTime.now().minusDays(retentionDays));
+        if (purged > 0) {
+            log.info("🧹 {} sincronizaciones antiguas eliminadas", purged);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workers", workers);
+        stats.put("running", inFlight.get());
+        stats.put("completedCount", completed.get());
+        stats.put("failedCount", failed.get());
+        return stats;
+    }
+
+    private void run(ClaimedJob job) {
+        try {
+            SyncResponse result = tecsupSyncService.runSync(job.userId(),
+                    (done, total) -> updateProgress(job, done, total));
+            finish(job, SyncJob.JobStatus.COMPLETED, result, result.getMensaje());
+            completed.incrementAndGet();
+        } catch (Exception e) {
+            log.error("[SYNC] Sincronización {} falló: {}", job.id(), e.getMessage());
+            finish(job, SyncJob.JobStatus.FAILED, null,
+                    e instanceof BadRequestException ? e.getMessage() : "Error al sincronizar con TECSUP");
+            failed.incrementAndGet();
+        } finally {
+            runningJobs.remove(job.id());
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void updateProgress(ClaimedJob job, int done, int total) {
+        try {
+            // GREATEST: los cursos terminan en paralelo y una actualización vieja puede llegar después
+            jdbcTemplate.update("UPDATE sync_jobs SET cursos_total = ?, " +
+                            "cursos_procesados = GREATEST(cursos_procesados, ?), heartbeat_at = ? " +
+                            "WHERE id = ? AND status = 'RUNNING' AND attempts = ?",
+                    total, done, Timestamp.valueOf(LocalDateTime.now()), job.id(), job.attempt());
+        } catch (Exception e) {
+            // El progreso es informativo: no interrumpe la sincronización
+            log.debug("[SYNC] No se pudo actualizar el progreso de {}: {}", job.id(), e.getMessage());
+        }
+    }
+
+    private void finish(ClaimedJob job, SyncJob.JobStatus status, SyncResponse result, String mensaje) {
+        int updated = syncJobRepository.finishAttempt(job.id(), job.attempt(), status, LocalDateTime.now(), mensaje,
+                result != null ? result.getEventosSincronizados() : null,
+                result != null ? result.getTareasSincronizadas() : null,
+                result != null ? result.getCursosConError() : null);
+        if (updated == 0) {
+            log.warn("[SYNC] El intento {} de la sincronización {} ya no pertenece a este worker: resultado descartado",
+                    job.attempt(), job.id());
+        }
+    }
+
+    private SyncJobResponse toResponse(SyncJob job) {
+        return SyncJobResponse.builder()
+                .jobId(job.getId())
+                .status(job.getStatus())
+                .cursosTotal(job.getCursosTotal())
+                .cursosProcesados(job.getCursosProcesados())
+                .eventosSincronizados(job.getEventosSincronizados())
+                .tareasSincronizadas(job.getTareasSincronizadas())
+                .mensaje(job.getMensaje())
+                .cursosConError(job.getCursosConError())
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+
+    private record ClaimedJob(long id, long userId, int attempt) {
+    }
+}
@@ -7,7 +7,6 @@ import com.tecsup.productivity.dto.request.CreateTaskRequest;
 import com.tecsup.productivity.dto.request.UpdateTaskRequest;
 import com.tecsup.productivity.dto.response.TaskResponse;
 import com.tecsup.productivity.entity.Task;
-import com.tecsup.productivity.entity.User;
 import com.tecsup.productivity.exception.BadRequestException;
 import com.tecsup.productivity.exception.ResourceNotFoundException;
 import com.tecsup.productivity.exception.UnauthorizedException;
@@ -28,26 +27,29 @@ public class TaskService {
 
     private final TaskRepository taskRepository;
     private final SecurityUtil securityUtil;
+    private final ChatbotContextService chatbotContextService;
+    private final ChatRelevanceIndex chatRelevanceIndex;
 
     @Transactional(readOnly = true)
     public List<TaskResponse> getTasks(Boolean completed, Task.TaskPriority prioridad) {
-        User user = securityUtil.getCurrentUser();
+        // Solo se necesita el id (viene del JWT, sin consultar el usuario)
+        Long userId = securityUtil.getCurrentUserId();
         List<Task> tasks;
 
         if (completed != null && prioridad != null) {
             tasks = taskRepository.findByUserIdAndCompletedOrderByPrioridadAscCreatedAtDesc(
-                            user.getId(), completed)
+                            userId, completed)
                     .stream()
                     .filter(t -> t.getPrioridad().equals(prioridad))
                     .collect(Collectors.toList());
         } else if (completed != null) {
             tasks = taskRepository.findByUserIdAndCompletedOrderByPrioridadAscCreatedAtDesc(
-                    user.getId(), completed);
+                    userId, completed);
         } else if (prioridad != null) {
             tasks = taskRepository.findByUserIdAndPrioridadOrderByCreatedAtDesc(
-                    user.getId(), prioridad);
+                    userId, prioridad);
         } else {
-            tasks = taskRepository.findByUserIdOrderByPrioridadAscCreatedAtDesc(user.getId());
+            tasks = taskRepository.findByUserIdOrderByPrioridadAscCreatedAtDesc(userId);
         }
 
         return tasks.stream()
@@ -64,10 +66,10 @@ public class TaskService {
 
     @Transactional
     public TaskResponse createTask(CreateTaskRequest request) {
-        User user = securityUtil.getCurrentUser();
+        Long userId = securityUtil.getCurrentUserId();
 
         Task task = Task.builder()
-                .user(user)
+                .user(securityUtil.getCurrentUserReference())
                 .titulo(request.getTitulo().trim())
                 .descripcion(request.getDescripcion())
                 .prioridad(request.getPrioridad())
@@ -78,8 +80,10 @@ public class TaskService {
                 .build();
 
         task = taskRepository.save(task);
+        chatbotContextService.invalidateContext(userId);
+        chatRelevanceIndex.onTaskSaved(userId, task);
         log.info("[TASK] Tarea creada manualmente: {} por usuario {}",
-                task.getId(), user.getId());
+                task.getId(), userId);
 
         return mapToTaskResponse(task);
     }
@@ -99,6 +103,8 @@ public class TaskService {
                 task.setPrioridad(request.getPrioridad());
             }
             task = taskRepository.save(task);
+            chatbotContextService.invalidateContext(securityUtil.getCurrentUserId());
+            chatRelevanceIndex.onTaskSaved(securityUtil.getCurrentUserId(), task);
             return mapToTaskResponse(task);
         }
 
@@ -124,6 +130,8 @@ public class TaskService {
         }
 
         task = taskRepository.save(task);
+        chatbotContextService.invalidateContext(securityUtil.getCurrentUserId());
+        chatRelevanceIndex.onTaskSaved(securityUtil.getCurrentUserId(), task);
         return mapToTaskResponse(task);
     }
 
@@ -135,6 +143,8 @@ public class TaskService {
         // ✅ Permitir toggle incluso en tareas TECSUP
         task.setCompleted(!task.getCompleted());
         task = taskRepository.save(task);
+        chatbotContextService.invalidateContext(securityUtil.getCurrentUserId());
+        chatRelevanceIndex.onTaskSaved(securityUtil.getCurrentUserId(), task);
 
         log.info("[TASK] Tarea {} marcada como {}",
                 id, task.getCompleted() ? "completada" : "pendiente");
@@ -156,6 +166,8 @@ public class TaskService {
         }
 
         taskRepository.delete(task);
+        chatbotContextService.invalidateContext(securityUtil.getCurrentUserId());
+        chatRelevanceIndex.onTaskDeleted(securityUtil.getCurrentUserId(), id);
         log.info("[TASK] Tarea eliminada: {} por usuario {}",
                 id, securityUtil.getCurrentUserId());
     }
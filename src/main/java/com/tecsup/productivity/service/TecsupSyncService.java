@@ -6,23 +6,48 @@ import com.tecsup.productivity.entity.Event;
 import com.tecsup.productivity.entity.Task;
 import com.tecsup.productivity.entity.User;
 import com.tecsup.productivity.exception.BadRequestException;
+import com.tecsup.productivity.exception.ResourceNotFoundException;
 import com.tecsup.productivity.repository.EventRepository;
 import com.tecsup.productivity.repository.TaskRepository;
 import com.tecsup.productivity.repository.UserRepository;
+import com.tecsup.productivity.security.CustomUserDetailsService;
+import com.tecsup.productivity.security.UserSnapshot;
 import com.tecsup.productivity.util.SecurityUtil;
+import com.tecsup.productivity.util.SyncDiff;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 @Slf4j
 @Service
@@ -33,21 +58,63 @@ public class TecsupSyncService {
     private final TaskRepository taskRepository;
     private final UserRepository userRepository;
     private final SecurityUtil securityUtil;
+    private final ChatbotContextService chatbotContextService;
+    private final ChatRelevanceIndex chatRelevanceIndex;
+    private final CanvasClient canvasClient;
+    private final CustomUserDetailsService userDetailsService;
+    private final PlatformTransactionManager transactionManager;
+
+    // Cursos descargados a la vez por sincronización (cada curso hace sus propias llamadas a Canvas)
+    @Value("${tecsup.sync.parallelism:4}")
+    private int parallelism;
+
+    // Sincronizaciones simultáneas (SyncJobService): el pool se dimensiona para todas
+    @Value("${tecsup.sync.jobs.workers:2}")
+    private int jobWorkers;
+
+    // Plazo total para descargar todos los cursos de una sincronización (ms)
+    @Value("${tecsup.sync.deadline:60000}")
+    private long deadlineMillis;
+
+    private ExecutorService canvasExecutor;
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        AtomicInteger threadCount = new AtomicInteger();
+        // workers × parallelism: una sincronización no espera en cola detrás de los cursos de otra
+        int poolSize = Math.max(1, jobWorkers) * Math.max(1, parallelism);
+        this.canvasExecutor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "canvas-fetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        canvasExecutor.shutdownNow();
+    }
 
     // ============================================
     // ✅ Habilitar sincronización TECSUP
     // ============================================
-    @Transactional
-    public SyncResponse enableSync(SyncTecsupRequest request) {
-
-        User user = securityUtil.getCurrentUser();
-        if (user == null) {
+    /**
+     * Valida el token contra Canvas y lo guarda
+     * La importación se encola aparte (SyncJobService); la validación remota
+     * ocurre fuera de la transacción
+     */
+    public void enableSync(SyncTecsupRequest request) {
+
+        UserSnapshot current = securityUtil.getCurrentUserSnapshot();
+        if (current == null) {
             throw new BadRequestException("Usuario no autenticado");
         }
 
-        log.info("[SYNC] Habilitando sincronización para: {}", user.getEmail());
+        log.info("[SYNC] Habilitando sincronización para: {}", current.getEmail());
 
-        if (user.getTipo() != User.UserType.STUDENT) {
+        if (current.getTipo() != User.UserType.STUDENT) {
             throw new BadRequestException("Solo estudiantes pueden sincronizar con TECSUP");
         }
 
@@ -57,44 +124,31 @@ public class TecsupSyncService {
         }
 
         // 1️⃣ Validar token contra Canvas API
-        if (!validateTecsupToken(token)) {
+        if (!validateTecsupToken(token.trim())) {
             throw new BadRequestException("Token TECSUP inválido o expirado");
         }
 
-        // 2️⃣ Guardar token
-        user.setTecsupToken(token.trim());
+        // 2️⃣ Guardar token y preferences.sync.tecsup = true (lastSyncAt lo pone la importación)
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = securityUtil.getCurrentUser();
+            user.setTecsupToken(token.trim());
 
-        // 3️⃣ Actualizar preferences.sync.tecsup = true
-        Map<String, Object> preferences = user.getPreferences();
-        if (preferences == null) {
-            preferences = new HashMap<>();
-        }
+            Map<String, Object> preferences = user.getPreferences();
+            if (preferences == null) {
+                preferences = new HashMap<>();
+            }
 
-        Map<String, Object> sync = new HashMap<>();
-        sync.put("tecsup", true);
-        sync.put("lastSyncAt", java.time.LocalDateTime.now().toString());
-        preferences.put("sync", sync);
+            Map<String, Object> sync = new HashMap<>();
+            sync.put("tecsup", true);
+            sync.put("lastSyncAt", null);
+            preferences.put("sync", sync);
 
-        user.setPreferences(preferences);
-        userRepository.save(user);
+            user.setPreferences(preferences);
+            userRepository.save(user);
+        });
+        securityUtil.evictCurrentUser();
 
         log.info("[SYNC] Token guardado y preferences actualizadas");
-
-        // 4️⃣ Importar datos desde Canvas
-        Map<String, Integer> syncResult = fetchAndSyncTecsupData(user, token);
-
-        int totalEvents = syncResult.get("events");
-        int totalTasks = syncResult.get("tasks");
-
-        log.info("[SYNC] ✅ Sincronización completada: {} eventos, {} tareas",
-                totalEvents, totalTasks);
-
-        return SyncResponse.builder()
-                .eventosSincronizados(totalEvents)
-                .tareasSincronizadas(totalTasks)
-                .mensaje(String.format("✅ %d eventos y %d tareas sincronizadas desde TECSUP",
-                        totalEvents, totalTasks))
-                .build();
     }
 
     // ============================================
@@ -130,193 +184,193 @@ public class TecsupSyncService {
         }
 
         userRepository.save(user);
+        securityUtil.evictCurrentUser();
+        chatbotContextService.invalidateContext(user.getId());
+        chatRelevanceIndex.invalidate(user.getId());
 
         log.info("[SYNC] ✅ Sincronización deshabilitada. Datos locales preservados.");
     }
 
     // ============================================
-    // ✅ Re-sincronizar (refrescar datos)
+    // ✅ Importar datos desde Canvas (trabajo en segundo plano)
     // ============================================
-    @Transactional
-    public SyncResponse refreshSync() {
+    /**
+     * Descarga de Canvas sin transacción ni conexión de BD retenida;
+     * solo la escritura final (diff + lastSyncAt) corre en una transacción
+     * @param progress recibe (cursos procesados, cursos totales)
+     */
+    public SyncResponse runSync(Long userId, BiConsumer<Integer, Integer> progress) {
 
-        User user = securityUtil.getCurrentUser();
-        if (user == null) {
-            throw new BadRequestException("Usuario no autenticado");
-        }
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new ResourceNotFoundException("Usuario no encontrado"));
 
         String token = user.getTecsupToken();
         if (token == null || token.isBlank()) {
             throw new BadRequestException("No hay token TECSUP guardado");
         }
 
-        log.info("[SYNC] Re-sincronizando datos para: {}", user.getEmail());
+        log.info("[SYNC] Sincronizando datos para: {}", user.getEmail());
 
-        // 1️⃣ Eliminar SOLO datos de TECSUP
-        eventRepository.deleteByUserIdAndSource(user.getId(), "tecsup");
-        taskRepository.deleteByUserIdAndSource(user.getId(), "tecsup");
+        // 1️⃣ Descargar
+        CanvasData data = fetchCanvasData(user, token, progress);
+
+        // 2️⃣ Guardar (upsert: solo se escribe lo que cambió en Canvas)
+        SyncResult syncResult = transactionTemplate.execute(status -> writeSync(userId, data));
+        userDetailsService.evictUser(userId);
+
+        log.info("[SYNC] ✅ Sincronización completada: {} eventos, {} tareas",
+                syncResult.events(), syncResult.tasks());
+
+        return buildResponse(syncResult, "✅ %d eventos y %d tareas sincronizadas desde TECSUP");
+    }
 
-        // 2️⃣ Volver a importar
-        Map<String, Integer> syncResult = fetchAndSyncTecsupData(user, token);
+    private SyncResult writeSync(Long userId, CanvasData data) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new ResourceNotFoundException("Usuario no encontrado"));
+
+        // Se deshabilitó mientras se descargaba: no se vuelven a insertar sus datos
+        if (user.getTecsupToken() == null) {
+            log.warn("[SYNC] Sincronización deshabilitada durante la importación, no se guarda nada");
+            return new SyncResult(0, 0, data.errores());
+        }
 
-        // 3️⃣ Actualizar lastSyncAt
+        // Si algún curso falló no se sabe qué desapareció de verdad: no se borra nada
+        boolean allowDeletes = data.errores().isEmpty();
+        Changes taskChanges = upsertTasks(user, data.tareas(), allowDeletes);
+        Changes eventChanges = upsertEvents(user, data.eventos(), allowDeletes);
+
+        log.info("[SYNC] Tareas: {} nuevas, {} actualizadas, {} eliminadas | Eventos: {} nuevos, {} actualizados, {} eliminados",
+                taskChanges.inserted(), taskChanges.updated(), taskChanges.deleted(),
+                eventChanges.inserted(), eventChanges.updated(), eventChanges.deleted());
+
+        // Actualizar lastSyncAt
         Map<String, Object> preferences = user.getPreferences();
+        if (preferences == null) {
+            preferences = new HashMap<>();
+        }
         Map<String, Object> sync = (Map<String, Object>) preferences.getOrDefault("sync", new HashMap<>());
         sync.put("lastSyncAt", java.time.LocalDateTime.now().toString());
         preferences.put("sync", sync);
         user.setPreferences(preferences);
         userRepository.save(user);
 
-        int totalEvents = syncResult.get("events");
-        int totalTasks = syncResult.get("tasks");
+        chatbotContextService.invalidateContext(userId);
+        chatRelevanceIndex.invalidate(userId);
 
-        log.info("[SYNC] ✅ Re-sincronización completada: {} eventos, {} tareas",
-                totalEvents, totalTasks);
+        return new SyncResult(data.eventos().size(), data.tareas().size(), data.errores());
+    }
+
+    private SyncResponse buildResponse(SyncResult syncResult, String format) {
+        String mensaje = String.format(format, syncResult.events(), syncResult.tasks());
+        if (!syncResult.errores().isEmpty()) {
+            mensaje += String.format(" (%d cursos no se pudieron sincronizar)", syncResult.errores().size());
+        }
 
         return SyncResponse.builder()
-                .eventosSincronizados(totalEvents)
-                .tareasSincronizadas(totalTasks)
-                .mensaje(String.format("✅ %d eventos y %d tareas actualizadas",
-                        totalEvents, totalTasks))
+                .eventosSincronizados(syncResult.events())
+                .tareasSincronizadas(syncResult.tasks())
+                .mensaje(mensaje)
+                .cursosConError(syncResult.errores())
                 .build();
     }
 
     // ============================================
-    // ✅ MÉTODO PRIVADO - Importar datos desde Canvas
+    // ✅ MÉTODO PRIVADO - Descargar datos desde Canvas
     // ============================================
-    private Map<String, Integer> fetchAndSyncTecsupData(User user, String token) {
-
-        String baseUrl = "https://tecsup.instructure.com/api/v1";
-        RestTemplate rest = new RestTemplate();
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", "Bearer " + token);
-        HttpEntity<String> entity = new HttpEntity<>(headers);
+    /**
+     * Obtiene la lista de cursos y luego descarga cada curso en paralelo
+     * (hasta tecsup.sync.parallelism a la vez, con un semáforo propio de esta sincronización).
+     * Lo que no termine dentro de tecsup.sync.deadline se reporta como error de ese curso;
+     * el resto se guarda. El plazo solo corre mientras se descargan cursos de esta
+     * sincronización: el pool tiene hilos para todas las que corren a la vez.
+     * Al vencer el plazo los cursos en curso se interrumpen entre páginas y los que
+     * no llegaron a empezar no se envían
+     */
+    private CanvasData fetchCanvasData(User user, String token, BiConsumer<Integer, Integer> progress) {
 
         List<Event> eventos = new ArrayList<>();
         List<Task> tareas = new ArrayList<>();
+        List<SyncResponse.CourseError> errores = new ArrayList<>();
 
         try {
-            // 1️⃣ Obtener cursos
-            ResponseEntity<List> courseResp = rest.exchange(
-                    baseUrl + "/courses",
-                    HttpMethod.GET,
-                    entity,
-                    List.class
-            );
-
-            List<Map<String, Object>> cursos = courseResp.getBody();
-            if (cursos == null) {
+            // 1️⃣ Obtener cursos (todas las páginas)
+            List<Map<String, Object>> cursos = canvasClient.getAll("/courses", token);
+            if (cursos.isEmpty()) {
                 log.warn("[SYNC] No se encontraron cursos");
-                return Map.of("events", 0, "tasks", 0);
+                return new CanvasData(tareas, eventos, errores);
             }
 
-            for (Map<String, Object> curso : cursos) {
+            // 2️⃣ Un fetch por curso, en paralelo y con plazo total
+            long startNanos = System.nanoTime();
+            long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+            int total = cursos.size();
+            AtomicInteger done = new AtomicInteger();
+            AtomicBoolean cancelled = new AtomicBoolean();
+            Semaphore slots = new Semaphore(Math.max(1, parallelism));
+            progress.accept(0, total);
+
+            Map<Map<String, Object>, CompletableFuture<CourseData>> futures = new LinkedHashMap<>();
+            cursos.forEach(curso -> futures.put(curso, new CompletableFuture<>()));
+
+            List<Future<?>> tasks = new ArrayList<>();
+            for (Map.Entry<Map<String, Object>, CompletableFuture<CourseData>> entry : futures.entrySet()) {
+                Map<String, Object> curso = entry.getKey();
+                CompletableFuture<CourseData> result = entry.getValue();
+
+                // Sin cupo antes del plazo: este curso y los siguientes quedan sin descargar
+                if (!acquireBefore(slots, deadlineNanos)) {
+                    break;
+                }
+                // submit (no supplyAsync): su Future sí se puede cancelar e interrumpir
+                tasks.add(canvasExecutor.submit(() -> {
+                    try {
+                        result.complete(fetchCourse(user, curso, token, cancelled));
+                    } catch (Exception e) {
+                        if (!cancelled.get()) {
+                            log.error("[SYNC] Error inesperado en curso {}", curso.get("id"), e);
+                        }
+                        result.complete(new CourseData(List.of(), List.of(), "Error inesperado"));
+                    } finally {
+                        slots.release();
+                    }
+                    if (!cancelled.get()) {
+                        progress.accept(done.incrementAndGet(), total);
+                    }
+                }));
+            }
+
+            try {
+                CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                        .get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                // Cada curso se evalúa abajo por separado
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            // Lo que siga pendiente ya no forma parte de esta sincronización
+            cancelled.set(true);
+            tasks.forEach(task -> task.cancel(true));
 
-                Integer courseId = (Integer) curso.get("id");
+            futures.forEach((curso, future) -> {
+                Long courseId = ((Number) curso.get("id")).longValue();
                 String courseName = (String) curso.get("name");
 
-                log.info("[SYNC] Procesando curso: {} | {}", courseId, courseName);
-
-                // ============================================
-                // ✅ 2️⃣ Canvas /assignments → Task entity
-                // ============================================
-                try {
-                    ResponseEntity<List> assignmentsResp = rest.exchange(
-                            baseUrl + "/courses/" + courseId + "/assignments",
-                            HttpMethod.GET,
-                            entity,
-                            List.class
-                    );
-
-                    List<Map<String, Object>> assignments = assignmentsResp.getBody();
-                    if (assignments != null) {
-                        for (Map<String, Object> assignment : assignments) {
-                            Integer assignmentId = (Integer) assignment.get("id");
-                            String name = (String) assignment.get("name");
-                            String dueDate = (String) assignment.get("due_at");
-                            String description = (String) assignment.get("description");
-
-                            if (dueDate != null && !dueDate.isBlank()) {
-                                tareas.add(Task.builder()
-                                        .user(user)
-                                        .titulo(name)
-                                        .descripcion(description != null ?
-                                                description :
-                                                "Tarea de " + courseName)
-                                        .fechaLimite(LocalDate.parse(dueDate.substring(0, 10)))
-                                        .prioridad(Task.TaskPriority.MEDIA) // Default local
-                                        .completed(false)
-                                        .source("tecsup") // ✅ Origen TECSUP
-                                        .tecsupExternalId(String.valueOf(assignmentId))
-                                        .sincronizadoTecsup(true)
-                                        .build());
-                            }
-                        }
-                    }
-                } catch (HttpClientErrorException e) {
-                    log.error("[SYNC] Error al obtener assignments del curso {}: {}",
-                            courseId, e.getStatusCode());
+                if (!future.isDone()) {
+                    errores.add(new SyncResponse.CourseError(courseId, courseName, "Tiempo de espera agotado"));
+                    return;
                 }
 
-                // ============================================
-                // ✅ 3️⃣ Canvas /calendar_events → Event entity
-                // ============================================
-                try {
-                    ResponseEntity<List> calendarResp = rest.exchange(
-                            baseUrl + "/calendar_events?context_codes[]=course_" + courseId,
-                            HttpMethod.GET,
-                            entity,
-                            List.class
-                    );
-
-                    List<Map<String, Object>> calendarEvents = calendarResp.getBody();
-                    if (calendarEvents != null) {
-                        for (Map<String, Object> ev : calendarEvents) {
-                            Integer eventId = (Integer) ev.get("id");
-                            String title = (String) ev.get("title");
-                            String start = (String) ev.get("start_at");
-
-                            if (start != null && !start.isBlank()) {
-                                LocalDate fecha = LocalDate.parse(start.substring(0, 10));
-                                LocalTime hora;
-                                try {
-                                    hora = LocalTime.parse(start.substring(11, 16));
-                                } catch (Exception ex) {
-                                    hora = LocalTime.of(0, 0);
-                                }
-
-                                // ✅ Determinar categoría (CLASE por defecto)
-                                Event.EventCategory categoria = Event.EventCategory.CLASE;
-
-                                // Si el título contiene "examen", clasificar como EXAMEN
-                                if (title != null &&
-                                        (title.toLowerCase().contains("examen") ||
-                                                title.toLowerCase().contains("exam") ||
-                                                title.toLowerCase().contains("evaluación"))) {
-                                    categoria = Event.EventCategory.EXAMEN;
-                                }
-
-                                eventos.add(Event.builder()
-                                        .user(user)
-                                        .titulo(title)
-                                        .fecha(fecha)
-                                        .hora(hora)
-                                        .categoria(categoria)
-                                        .curso(courseName)
-                                        .descripcion("Tarea de " + courseName)
-                                        .source("tecsup") // ✅ Origen TECSUP
-                                        .tecsupExternalId(String.valueOf(eventId))
-                                        .sincronizadoTecsup(true)
-                                        .build());
-                            }
-                        }
-                    }
-                } catch (HttpClientErrorException e) {
-                    log.error("[SYNC] Error al obtener calendar events del curso {}: {}",
-                            courseId, e.getStatusCode());
+                CourseData data = future.join();
+                tareas.addAll(data.tareas());
+                eventos.addAll(data.eventos());
+                if (data.error() != null) {
+                    errores.add(new SyncResponse.CourseError(courseId, courseName, data.error()));
                 }
-            }
+            });
+
+            log.info("[SYNC] {} cursos descargados en {} ms ({} con errores)", total,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), errores.size());
 
         } catch (HttpClientErrorException e) {
             log.error("[SYNC] Error al obtener cursos: {} - {}",
@@ -327,22 +381,266 @@ public class TecsupSyncService {
             throw new BadRequestException("Error al sincronizar con TECSUP");
         }
 
+        return new CanvasData(tareas, eventos, errores);
+    }
+
+    private static boolean acquireBefore(Semaphore slots, long deadlineNanos) {
+        try {
+            return slots.tryAcquire(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Inserta las tareas nuevas, actualiza solo las que cambiaron en Canvas y borra las que ya no están
+     * Los campos locales (prioridad, completed) de las existentes se conservan
+     * Copias repetidas de una misma tarea (sincronizaciones antiguas sin índice único) se eliminan
+     * siempre, conservando la completada o la más antigua
+     */
+    private Changes upsertTasks(User user, List<Task> fetched, boolean allowDeletes) {
+        SyncDiff<Task> diff = SyncDiff.compute(
+                taskRepository.findByUserIdAndSource(user.getId(), "tecsup"),
+                fetched,
+                Task::getTecsupExternalId,
+                Task::getContentHash,
+                Comparator.comparing((Task task) -> !Boolean.TRUE.equals(task.getCompleted()))
+                        .thenComparing(Task::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        // Primero las copias: así el índice único no choca con las filas que se actualizan
+        if (!diff.getDuplicates().isEmpty()) {
+            taskRepository.deleteAllInBatch(diff.getDuplicates());
+        }
+
+        List<Task> toSave = new ArrayList<>(diff.getInserts());
+        for (SyncDiff.Update<Task> update : diff.getUpdates()) {
+            Task current = update.current();
+            Task task = update.fetched();
+            current.setTitulo(task.getTitulo());
+            current.setDescripcion(task.getDescripcion());
+            current.setFechaLimite(task.getFechaLimite());
+            current.setContentHash(task.getContentHash());
+            toSave.add(current);
+        }
+
+        if (!toSave.isEmpty()) {
+            taskRepository.saveAll(toSave);
+        }
+        int deleted = diff.getDuplicates().size();
+        if (allowDeletes && !diff.getDeletes().isEmpty()) {
+            taskRepository.deleteAllInBatch(diff.getDeletes());
+            deleted += diff.getDeletes().size();
+        }
+        return new Changes(diff.getInserts().size(), diff.getUpdates().size(), deleted);
+    }
+
+    /**
+     * Igual que upsertTasks para eventos (todos sus campos vienen de Canvas)
+     */
+    private Changes upsertEvents(User user, List<Event> fetched, boolean allowDeletes) {
+        SyncDiff<Event> diff = SyncDiff.compute(
+                eventRepository.findByUserIdAndSource(user.getId(), "tecsup"),
+                fetched,
+                Event::getTecsupExternalId,
+                Event::getContentHash,
+                Comparator.comparing(Event::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        if (!diff.getDuplicates().isEmpty()) {
+            eventRepository.deleteAllInBatch(diff.getDuplicates());
+        }
+
+        List<Event> toSave = new ArrayList<>(diff.getInserts());
+        for (SyncDiff.Update<Event> update : diff.getUpdates()) {
+            Event current = update.current();
+            Event event = update.fetched();
+            current.setTitulo(event.getTitulo());
+            current.setFecha(event.getFecha());
+            current.setHora(event.getHora());
+            current.setCategoria(event.getCategoria());
+            current.setCurso(event.getCurso());
+            current.setDescripcion(event.getDescripcion());
+            current.setContentHash(event.getContentHash());
+            toSave.add(current);
+        }
+
+        if (!toSave.isEmpty()) {
+            eventRepository.saveAll(toSave);
+        }
+        int deleted = diff.getDuplicates().size();
+        if (allowDeletes && !diff.getDeletes().isEmpty()) {
+            eventRepository.deleteAllInBatch(diff.getDeletes());
+            deleted += diff.getDeletes().size();
+        }
+        return new Changes(diff.getInserts().size(), diff.getUpdates().size(), deleted);
+    }
+
+    /**
+     * Descarga assignments y calendar_events de un curso (corre en el pool de Canvas)
+     * Los errores HTTP no cortan la sincronización: se devuelven como error del curso
+     * Si la sincronización se canceló (plazo vencido) se detiene entre páginas
+     */
+    private CourseData fetchCourse(User user, Map<String, Object> curso, String token, AtomicBoolean cancelled) {
+        Long courseId = ((Number) curso.get("id")).longValue();
+        String courseName = (String) curso.get("name");
+
+        checkNotCancelled(cancelled);
+
+        log.info("[SYNC] Procesando curso: {} | {}", courseId, courseName);
+
+        List<Task> tareas = new ArrayList<>();
+        List<Event> eventos = new ArrayList<>();
+        List<String> errores = new ArrayList<>();
+
         // ============================================
-        // ✅ 4️⃣ Guardar en BD
+        // ✅ Canvas /assignments → Task entity
         // ============================================
-        if (!eventos.isEmpty()) {
-            eventRepository.saveAll(eventos);
-            log.info("[SYNC] {} eventos guardados", eventos.size());
+        try {
+            canvasClient.forEachPage("/courses/" + courseId + "/assignments", token, page -> {
+                checkNotCancelled(cancelled);
+                for (Map<String, Object> assignment : page) {
+                    Task task = mapAssignment(user, assignment, courseName);
+                    if (task != null) {
+                        tareas.add(task);
+                    }
+                }
+            });
+        } catch (RestClientException e) {
+            log.error("[SYNC] Error al obtener assignments del curso {}: {}", courseId, e.getMessage());
+            errores.add("assignments: " + describe(e));
+        }
+
+        // ============================================
+        // ✅ Canvas /calendar_events → Event entity
+        // ============================================
+        try {
+            canvasClient.forEachPage("/calendar_events?context_codes[]=course_" + courseId, token, page -> {
+                checkNotCancelled(cancelled);
+                for (Map<String, Object> ev : page) {
+                    Event event = mapCalendarEvent(user, ev, courseName);
+                    if (event != null) {
+                        eventos.add(event);
+                    }
+                }
+            });
+        } catch (RestClientException e) {
+            log.error("[SYNC] Error al obtener calendar events del curso {}: {}", courseId, e.getMessage());
+            errores.add("calendar_events: " + describe(e));
+        }
+
+        return new CourseData(tareas, eventos, errores.isEmpty() ? null : String.join("; ", errores));
+    }
+
+    private void checkNotCancelled(AtomicBoolean cancelled) {
+        if (cancelled.get()) {
+            throw new CancellationException("Sincronización cancelada");
+        }
+    }
+
+    private Task mapAssignment(User user, Map<String, Object> assignment, String courseName) {
+        String name = (String) assignment.get("name");
+        String dueDate = (String) assignment.get("due_at");
+        String description = (String) assignment.get("description");
+
+        if (assignment.get("id") == null || dueDate == null || dueDate.isBlank()) {
+            return null;
+        }
+
+        String descripcion = description != null ? description : "Tarea de " + courseName;
+        LocalDate fechaLimite = LocalDate.parse(dueDate.substring(0, 10));
+
+        return Task.builder()
+                .user(user)
+                .titulo(name)
+                .descripcion(descripcion)
+                .fechaLimite(fechaLimite)
+                .prioridad(Task.TaskPriority.MEDIA) // Default local
+                .completed(false)
+                .source("tecsup") // ✅ Origen TECSUP
+                .tecsupExternalId(String.valueOf(assignment.get("id")))
+                .contentHash(contentHash(name, descripcion, fechaLimite))
+                .sincronizadoTecsup(true)
+                .build();
+    }
+
+    private Event mapCalendarEvent(User user, Map<String, Object> ev, String courseName) {
+        String title = (String) ev.get("title");
+        String start = (String) ev.get("start_at");
+
+        if (ev.get("id") == null || start == null || start.isBlank()) {
+            return null;
         }
-        if (!tareas.isEmpty()) {
-            taskRepository.saveAll(tareas);
-            log.info("[SYNC] {} tareas guardadas", tareas.size());
+
+        LocalDate fecha = LocalDate.parse(start.substring(0, 10));
+        LocalTime hora;
+        try {
+            hora = LocalTime.parse(start.substring(11, 16));
+        } catch (Exception ex) {
+            hora = LocalTime.of(0, 0);
         }
 
-        return Map.of(
-                "events", eventos.size(),
-                "tasks", tareas.size()
-        );
+        // ✅ Determinar categoría (CLASE por defecto)
+        Event.EventCategory categoria = Event.EventCategory.CLASE;
+
+        // Si el título contiene "examen", clasificar como EXAMEN
+        if (title != null &&
+                (title.toLowerCase().contains("examen") ||
+                        title.toLowerCase().contains("exam") ||
+                        title.toLowerCase().contains("evaluación"))) {
+            categoria = Event.EventCategory.EXAMEN;
+        }
+
+        return Event.builder()
+                .user(user)
+                .titulo(title)
+                .fecha(fecha)
+                .hora(hora)
+                .categoria(categoria)
+                .curso(courseName)
+                .descripcion("Tarea de " + courseName)
+                .source("tecsup") // ✅ Origen TECSUP
+                .tecsupExternalId(String.valueOf(ev.get("id")))
+                .contentHash(contentHash(title, fecha, hora, categoria, courseName, "Tarea de " + courseName))
+                .sincronizadoTecsup(true)
+                .build();
+    }
+
+    private String describe(RestClientException e) {
+        if (e instanceof HttpStatusCodeException statusError) {
+            return "HTTP " + statusError.getStatusCode().value();
+        }
+        if (e instanceof CanvasClient.PageLimitExceededException) {
+            return "demasiadas páginas (lectura incompleta)";
+        }
+        return e.getClass().getSimpleName();
+    }
+
+    /**
+     * SHA-256 de los campos que vienen de Canvas (separados por \u001F para no confundir límites)
+     */
+    private String contentHash(Object... fields) {
+        StringBuilder joined = new StringBuilder();
+        for (Object field : fields) {
+            joined.append(field).append('\u001F');
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(joined.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private record Changes(int inserted, int updated, int deleted) {
+    }
+
+    private record CourseData(List<Task> tareas, List<Event> eventos, String error) {
+    }
+
+    private record CanvasData(List<Task> tareas, List<Event> eventos, List<SyncResponse.CourseError> errores) {
+    }
+
+    private record SyncResult(int events, int tasks, List<SyncResponse.CourseError> errores) {
     }
 
     // ============================================
@@ -350,19 +648,7 @@ public class TecsupSyncService {
     // ============================================
     private boolean validateTecsupToken(String token) {
         try {
-            String baseUrl = "https://tecsup.instructure.com/api/v1";
-            RestTemplate rest = new RestTemplate();
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Bearer " + token);
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-
-            ResponseEntity<Map> response = rest.exchange(
-                    baseUrl + "/users/self",
-                    HttpMethod.GET,
-                    entity,
-                    Map.class
-            );
+            ResponseEntity<Map<String, Object>> response = canvasClient.get("/users/self", token);
 
             return response.getStatusCode() == HttpStatus.OK;
 
@@ -23,6 +23,7 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final SecurityUtil securityUtil;
+    private final ChatbotContextService chatbotContextService;
     private final PasswordEncoder passwordEncoder;
 
     // ============================================
@@ -57,6 +58,8 @@ public class UserService {
         }
 
         user = userRepository.save(user);
+        securityUtil.evictCurrentUser();
+        chatbotContextService.invalidateContext(user.getId());
         log.info("✅ Perfil actualizado");
 
         return mapToUserResponse(user);
@@ -83,6 +86,7 @@ public class UserService {
 
         user.setPassword(passwordEncoder.encode(newPassword));
         userRepository.save(user);
+        securityUtil.evictCurrentUser();
 
         log.info("✅ Contraseña cambiada exitosamente");
     }
@@ -123,6 +127,7 @@ public class UserService {
 
         user.setPreferences(preferences);
         user = userRepository.save(user);
+        securityUtil.evictCurrentUser();
 
         log.info("✅ Preferencias actualizadas");
         return mapToUserResponse(user);
@@ -157,6 +162,7 @@ public class UserService {
 
         user.setPreferences(preferences);
         user = userRepository.save(user);
+        securityUtil.evictCurrentUser();
 
         log.info("✅ Preferencia '{}' cambiada a: {}", key, !currentValue);
         return mapToUserResponse(user);
@@ -0,0 +1,193 @@
+// ============================================
+// Bm25Index.java
+// ============================================
+package com.tecsup.productivity.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido en memoria con ranking BM25
+ * - Actualización incremental por documento (put / remove)
+ * - Búsqueda recorriendo solo las listas de los términos de la consulta
+ * - Texto normalizado: minúsculas, sin tildes y sin palabras vacías (español)
+ * Thread-safe (lecturas concurrentes, escrituras exclusivas)
+ */
+public class Bm25Index {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^a-z0-9ñ]+");
+
+    private static final Set<String> STOPWORDS = Set.of(
+            "de", "la", "el", "en", "y", "a", "los", "las", "del", "se", "un", "una", "por", "con",
+            "para", "que", "al", "lo", "mi", "mis", "tu", "tus", "su", "sus", "es", "hay", "como",
+            "me", "te", "o", "u", "e", "le", "les", "sobre", "cual", "cuales", "tengo",
+            "tiene", "debo", "puedo", "algo", "algun", "alguna", "este", "esta", "estos", "estas"
+    );
+
+    // término -> (documento -> frecuencia)
+    private final Map<String, Map<String, Integer>> postings = new HashMap<>();
+    // documento -> (término -> frecuencia), para poder quitarlo
+    private final Map<String, Map<String, Integer>> documents = new HashMap<>();
+    private final Map<String, Integer> lengths = new HashMap<>();
+    private long totalLength = 0;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Agrega o reemplaza un documento
+     */
+    public void put(String key, String text) {
+        Map<String, Integer> terms = termFrequencies(text);
+
+        lock.writeLock().lock();
+        try {
+            removeInternal(key);
+            if (terms.isEmpty()) {
+                return;
+            }
+            documents.put(key, terms);
+            int length = 0;
+            for (Map.Entry<String, Integer> entry : terms.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), t -> new HashMap<>()).put(key, entry.getValue());
+                length += entry.getValue();
+            }
+            lengths.put(key, length);
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String key) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Documentos más relevantes para la consulta (mayor puntaje primero)
+     */
+    public List<ScoredDocument> search(String query, int limit) {
+        Map<String, Integer> queryTerms = termFrequencies(query);
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        Map<String, Double> scores = new HashMap<>();
+
+        lock.readLock().lock();
+        try {
+            int n = documents.size();
+            if (n == 0) {
+                return List.of();
+            }
+            double avgLength = (double) totalLength / n;
+
+            for (String term : queryTerms.keySet()) {
+                Map<String, Integer> docs = postings.get(term);
+                if (docs == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (n - docs.size() + 0.5) / (docs.size() + 0.5));
+
+                docs.forEach((key, tf) -> {
+                    int length = lengths.get(key);
+                    double norm = tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / avgLength));
+                    scores.merge(key, idf * norm, Double::sum);
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Top-k sin ordenar todos los candidatos
+        PriorityQueue<ScoredDocument> top = new PriorityQueue<>(limit,
+                (a, b) -> Double.compare(a.getScore(), b.getScore()));
+        scores.forEach((key, score) -> {
+            if (top.size() < limit) {
+                top.add(new ScoredDocument(key, score));
+            } else if (score > top.peek().getScore()) {
+                top.poll();
+                top.add(new ScoredDocument(key, score));
+            }
+        });
+
+        List<ScoredDocument> result = new ArrayList<>(top);
+        result.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return result;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Minúsculas, sin tildes (conserva la ñ), sin palabras vacías ni términos de 1 carácter
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String normalized = Normalizer.normalize(text.toLowerCase().replace('ñ', '\u0001'), Normalizer.Form.NFD);
+        normalized = DIACRITICS.matcher(normalized).replaceAll("").replace('\u0001', 'ñ');
+
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.split(normalized)) {
+            if (token.length() > 1 && !STOPWORDS.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static Map<String, Integer> termFrequencies(String text) {
+        Map<String, Integer> terms = new HashMap<>();
+        for (String token : tokenize(text)) {
+            terms.merge(token, 1, Integer::sum);
+        }
+        return terms;
+    }
+
+    private void removeInternal(String key) {
+        Map<String, Integer> terms = documents.remove(key);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms.keySet()) {
+            Map<String, Integer> docs = postings.get(term);
+            if (docs != null) {
+                docs.remove(key);
+                if (docs.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        totalLength -= lengths.remove(key);
+    }
+
+    @lombok.Value
+    public static class ScoredDocument {
+        String key;
+        double score;
+    }
+}
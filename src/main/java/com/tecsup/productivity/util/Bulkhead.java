@@ -0,0 +1,184 @@
+// ============================================
+// Bulkhead.java
+// ============================================
+package com.tecsup.productivity.util;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bulkhead no bloqueante para llamadas reactivas
+ * - Máximo maxConcurrent llamadas en curso
+ * - Cola corta de espera (maxQueue) con tiempo máximo maxWait
+ * - Si la cola está llena o se agota la espera: BulkheadFullException
+ * Ningún hilo queda bloqueado esperando un permiso
+ */
+public class Bulkhead {
+
+    private static final Object PERMIT = new Object();
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final Duration maxWait;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    public Bulkhead(String name, int maxConcurrent, int maxQueue, Duration maxWait) {
+        this.name = name;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.maxWait = maxWait;
+    }
+
+    public <T> Mono<T> execute(Supplier<Mono<T>> call) {
+        return Mono.usingWhen(
+                acquire(),
+                permit -> call.get(),
+                permit -> release(),
+                (permit, error) -> release(),
+                permit -> release()
+        );
+    }
+
+    public <T> Flux<T> executeMany(Supplier<Flux<T>> call) {
+        return Flux.usingWhen(
+                acquire(),
+                permit -> call.get(),
+                permit -> release(),
+                (permit, error) -> release(),
+                permit -> release()
+        );
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("inFlight", inFlight.get());
+        stats.put("maxQueue", maxQueue);
+        stats.put("waiting", waiting.get());
+        stats.put("rejectedCount", rejected.get());
+        return stats;
+    }
+
+    private Mono<Object> acquire() {
+        return Mono.defer(() -> {
+            if (tryEnter()) {
+                return Mono.just(PERMIT);
+            }
+
+            if (waiting.incrementAndGet() > maxQueue) {
+                waiting.decrementAndGet();
+                return reject();
+            }
+
+            return Mono.create((MonoSink<Object> sink) -> {
+                        Waiter waiter = new Waiter(sink);
+                        sink.onCancel(waiter::cancel);
+                        waiters.offer(waiter);
+                        drain();
+                    })
+                    .timeout(maxWait, Mono.defer(this::reject));
+        });
+    }
+
+    private Mono<Object> reject() {
+        rejected.incrementAndGet();
+        return Mono.error(new BulkheadFullException(name));
+    }
+
+    private boolean tryEnter() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= maxConcurrent) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private Mono<Void> release() {
+        return Mono.fromRunnable(() -> {
+            inFlight.decrementAndGet();
+            drain();
+        });
+    }
+
+    /**
+     * Entrega permisos libres a los que esperan en cola (FIFO)
+     * El permiso pasa directamente al waiter: no se libera y se vuelve a tomar
+     */
+    private void drain() {
+        while (!waiters.isEmpty()) {
+            if (!tryEnter()) {
+                return;
+            }
+
+            boolean granted = false;
+            Waiter waiter;
+            while ((waiter = waiters.poll()) != null) {
+                if (waiter.grant()) {
+                    granted = true;
+                    break;
+                }
+            }
+
+            if (!granted) {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private final class Waiter {
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final MonoSink<Object> sink;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Waiter(MonoSink<Object> sink) {
+            this.sink = sink;
+        }
+
+        boolean grant() {
+            if (!state.compareAndSet(WAITING, GRANTED)) {
+                return false;
+            }
+            waiting.decrementAndGet();
+            sink.success(PERMIT);
+            return true;
+        }
+
+        void cancel() {
+            if (state.compareAndSet(WAITING, CANCELLED)) {
+                waiting.decrementAndGet();
+            } else if (state.get() == GRANTED) {
+                // Cancelado justo después de recibir el permiso (antes de usarlo)
+                inFlight.decrementAndGet();
+                drain();
+            }
+        }
+    }
+
+    public static class BulkheadFullException extends RuntimeException {
+        public BulkheadFullException(String name) {
+            super("Bulkhead '" + name + "' lleno");
+        }
+    }
+}
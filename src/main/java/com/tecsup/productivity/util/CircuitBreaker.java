@@ -0,0 +1,129 @@
+// ============================================
+// CircuitBreaker.java
+// ============================================
+package com.tecsup.productivity.util;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Circuit breaker simple (CLOSED → OPEN → HALF_OPEN → CLOSED)
+ * - Se abre tras N fallos consecutivos
+ * - Abierto: rechaza al instante durante openDuration
+ * - Medio abierto: deja pasar pocas llamadas de prueba; si fallan se vuelve a abrir
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openDurationMillis;
+    private final int halfOpenMaxCalls;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private int halfOpenInFlight;
+    private int halfOpenSuccesses;
+
+    private long successCount;
+    private long failureCount;
+    private long rejectedCount;
+    private long openedCount;
+
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration, int halfOpenMaxCalls) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDurationMillis = openDuration.toMillis();
+        this.halfOpenMaxCalls = Math.max(1, halfOpenMaxCalls);
+    }
+
+    /**
+     * ¿Se permite la llamada? Si devuelve true, registrar después
+     * onSuccess, onFailure u onIgnored
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openDurationMillis) {
+                rejectedCount++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenInFlight = 0;
+            halfOpenSuccesses = 0;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (halfOpenInFlight >= halfOpenMaxCalls) {
+                rejectedCount++;
+                return false;
+            }
+            halfOpenInFlight++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        successCount++;
+        if (state == State.HALF_OPEN) {
+            halfOpenInFlight = Math.max(0, halfOpenInFlight - 1);
+            if (++halfOpenSuccesses >= halfOpenMaxCalls) {
+                state = State.CLOSED;
+                consecutiveFailures = 0;
+            }
+            return;
+        }
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void onFailure() {
+        failureCount++;
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        if (state == State.CLOSED && ++consecutiveFailures >= failureThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * La llamada terminó sin un resultado que cuente (cancelada, rechazada localmente)
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            halfOpenInFlight = Math.max(0, halfOpenInFlight - 1);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("state", state);
+        stats.put("consecutiveFailures", consecutiveFailures);
+        stats.put("failureThreshold", failureThreshold);
+        stats.put("successCount", successCount);
+        stats.put("failureCount", failureCount);
+        stats.put("rejectedCount", rejectedCount);
+        stats.put("openedCount", openedCount);
+        if (state == State.OPEN) {
+            long remaining = openDurationMillis - (System.currentTimeMillis() - openedAt);
+            stats.put("retryInMs", Math.max(0, remaining));
+        }
+        return stats;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        consecutiveFailures = 0;
+        halfOpenInFlight = 0;
+        openedCount++;
+    }
+}
@@ -0,0 +1,53 @@
+// ============================================
+// ConnectionPoolStats.java
+// ============================================
+package com.tecsup.productivity.util;
+
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Métricas de un pool de conexiones de Reactor Netty (un sub-pool por host remoto)
+ * Reactor Netty registra aquí cada sub-pool al crearlo; no requiere Micrometer
+ */
+public class ConnectionPoolStats implements ConnectionProvider.MeterRegistrar {
+
+    private final Map<String, ConnectionPoolMetrics> pools = new ConcurrentHashMap<>();
+
+    @Override
+    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+        pools.put(String.valueOf(remoteAddress), metrics);
+    }
+
+    @Override
+    public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+        pools.remove(String.valueOf(remoteAddress));
+    }
+
+    /**
+     * Uso por host: conexiones en uso, ociosas, abiertas y peticiones esperando conexión
+     */
+    public List<Map<String, Object>> getStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        pools.forEach((host, metrics) -> {
+            Map<String, Object> pool = new LinkedHashMap<>();
+            pool.put("host", host);
+            pool.put("acquired", metrics.acquiredSize());
+            pool.put("idle", metrics.idleSize());
+            pool.put("allocated", metrics.allocatedSize());
+            pool.put("maxAllocated", metrics.maxAllocatedSize());
+            pool.put("pendingAcquire", metrics.pendingAcquireSize());
+            pool.put("utilization", metrics.maxAllocatedSize() > 0
+                    ? Math.round(100.0 * metrics.acquiredSize() / metrics.maxAllocatedSize()) : 0);
+            stats.add(pool);
+        });
+        return stats;
+    }
+}
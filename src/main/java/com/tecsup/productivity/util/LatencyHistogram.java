@@ -0,0 +1,78 @@
+// ============================================
+// LatencyHistogram.java
+// ============================================
+package com.tecsup.productivity.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Latencias recientes de un destino (ventana deslizante de las últimas N muestras)
+ * Los percentiles reflejan el comportamiento actual, no el histórico completo
+ */
+public class LatencyHistogram {
+
+    private final String name;
+    private final long[] samples;
+
+    private int next = 0;
+    private int size = 0;
+    private long totalCount = 0;
+
+    public LatencyHistogram(String name, int windowSize) {
+        this.name = name;
+        this.samples = new long[Math.max(1, windowSize)];
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = Math.max(0, millis);
+        next = (next + 1) % samples.length;
+        if (size < samples.length) {
+            size++;
+        }
+        totalCount++;
+    }
+
+    /**
+     * Percentil (0-1) de la ventana actual, o -1 si no hay muestras
+     */
+    public long percentile(double quantile) {
+        long[] sorted = snapshot();
+        if (sorted.length == 0) {
+            return -1;
+        }
+        int index = (int) Math.ceil(Math.min(Math.max(quantile, 0), 1) * sorted.length) - 1;
+        return sorted[Math.max(index, 0)];
+    }
+
+    public synchronized int getSampleCount() {
+        return size;
+    }
+
+    public Map<String, Object> getStats() {
+        long[] sorted = snapshot();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        synchronized (this) {
+            stats.put("totalCount", totalCount);
+        }
+        stats.put("samples", sorted.length);
+        if (sorted.length > 0) {
+            stats.put("p50", sorted[(int) Math.ceil(0.50 * sorted.length) - 1]);
+            stats.put("p90", sorted[(int) Math.ceil(0.90 * sorted.length) - 1]);
+            stats.put("p99", sorted[(int) Math.ceil(0.99 * sorted.length) - 1]);
+            stats.put("max", sorted[sorted.length - 1]);
+        }
+        return stats;
+    }
+
+    private long[] snapshot() {
+        long[] copy;
+        synchronized (this) {
+            copy = Arrays.copyOf(samples, size);
+        }
+        Arrays.sort(copy);
+        return copy;
+    }
+}
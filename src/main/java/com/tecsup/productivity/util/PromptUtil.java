@@ -0,0 +1,51 @@
+// ============================================
+// PromptUtil.java
+// ============================================
+package com.tecsup.productivity.util;
+
+import java.util.regex.Pattern;
+
+/**
+ * Utilidades para armar prompts acotados
+ * - Estimación de tokens (≈ 4 caracteres por token)
+ * - Limpieza de HTML (descripciones de Canvas)
+ * - Truncado de textos largos
+ */
+public final class PromptUtil {
+
+    private static final Pattern HTML_BLOCK = Pattern.compile("(?is)<(script|style)[^>]*>.*?</\\1>");
+    private static final Pattern HTML_TAG = Pattern.compile("(?s)<[^>]*>");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private PromptUtil() {
+    }
+
+    public static int estimateTokens(CharSequence text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+
+    /**
+     * Quita etiquetas HTML, decodifica entidades comunes y compacta espacios
+     */
+    public static String stripHtml(String text) {
+        if (text == null || text.isBlank()) {
+            return "";
+        }
+        String plain = HTML_BLOCK.matcher(text).replaceAll(" ");
+        plain = HTML_TAG.matcher(plain).replaceAll(" ");
+        plain = plain.replace("&nbsp;", " ")
+                .replace("&lt;", "<")
+                .replace("&gt;", ">")
+                .replace("&quot;", "\"")
+                .replace("&#39;", "'")
+                .replace("&amp;", "&");
+        return WHITESPACE.matcher(plain).replaceAll(" ").trim();
+    }
+
+    public static String truncate(String text, int maxChars) {
+        if (text == null || text.length() <= maxChars) {
+            return text;
+        }
+        return text.substring(0, Math.max(0, maxChars - 1)).trim() + "…";
+    }
+}
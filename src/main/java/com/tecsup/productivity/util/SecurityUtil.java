@@ -5,37 +5,109 @@ package com.tecsup.productivity.util;
 
 import com.tecsup.productivity.entity.User;
 import com.tecsup.productivity.repository.UserRepository;
+import com.tecsup.productivity.security.CustomUserDetailsService;
+import com.tecsup.productivity.security.UserPrincipal;
+import com.tecsup.productivity.security.UserSnapshot;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 @Component
 @RequiredArgsConstructor
 public class SecurityUtil {
 
+    // Memo por request: el usuario se resuelve una sola vez por petición HTTP
+    private static final String CURRENT_USER_ATTRIBUTE = SecurityUtil.class.getName() + ".CURRENT_USER";
+
     private final UserRepository userRepository;
+    private final CustomUserDetailsService userDetailsService;
+
+    /**
+     * Datos de solo lectura del usuario actual (caché de principals, sin consultar la BD)
+     */
+    public UserSnapshot getCurrentUserSnapshot() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            Object memo = attributes.getAttribute(CURRENT_USER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (memo instanceof UserSnapshot snapshot) {
+                return snapshot;
+            }
+        }
 
+        UserSnapshot snapshot = resolveCurrentUser(getAuthentication());
+
+        if (attributes != null) {
+            attributes.setAttribute(CURRENT_USER_ATTRIBUTE, snapshot, RequestAttributes.SCOPE_REQUEST);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Carga una copia gestionada del usuario actual desde la BD
+     * Usar cuando se necesitan campos que no están en el snapshot o se va a modificar el usuario
+     */
     public User getCurrentUser() {
+        Long userId = getCurrentUserId();
+        return userRepository.findById(userId)
+                .orElseThrow(() -> new UsernameNotFoundException(
+                        "Usuario no encontrado: " + userId
+                ));
+    }
+
+    /**
+     * Referencia al usuario actual para asociarlo a entidades nuevas (no consulta la BD)
+     * Solo válida dentro de una transacción
+     */
+    public User getCurrentUserReference() {
+        return userRepository.getReferenceById(getCurrentUserId());
+    }
+
+    public Long getCurrentUserId() {
+        if (getAuthentication().getPrincipal() instanceof UserPrincipal principal) {
+            return principal.getId();
+        }
+        return getCurrentUserSnapshot().getId();
+    }
+
+    public String getCurrentUserEmail() {
+        return getAuthentication().getName();
+    }
+
+    /**
+     * Invalida el usuario actual en la caché de principals y en el memo del request
+     */
+    public void evictCurrentUser() {
+        userDetailsService.evictUser(getCurrentUserId());
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.removeAttribute(CURRENT_USER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    private Authentication getAuthentication() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
         if (authentication == null || !authentication.isAuthenticated()) {
             throw new UsernameNotFoundException("Usuario no autenticado");
         }
+        return authentication;
+    }
+
+    private UserSnapshot resolveCurrentUser(Authentication authentication) {
+        if (authentication.getPrincipal() instanceof UserPrincipal principal) {
+            return userDetailsService.loadSnapshotById(principal.getId());
+        }
 
         String email = authentication.getName();
         return userRepository.findByEmail(email)
+                .map(UserSnapshot::from)
                 .orElseThrow(() -> new UsernameNotFoundException(
                         "Usuario no encontrado: " + email
                 ));
     }
-
-    public Long getCurrentUserId() {
-        return getCurrentUser().getId();
-    }
-
-    public String getCurrentUserEmail() {
-        return getCurrentUser().getEmail();
-    }
-}
\ No newline at end of file
+}
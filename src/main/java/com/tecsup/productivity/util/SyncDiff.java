@@ -0,0 +1,94 @@
+// ============================================
+// SyncDiff.java
+// ============================================
+package com.tecsup.productivity.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Diferencia entre las filas guardadas y lo recibido de una fuente externa, por id externo
+ * - inserts: ids nuevos
+ * - updates: ids existentes cuyo hash de contenido cambió (fila guardada + dato recibido)
+ * - deletes: filas cuyo id ya no llegó (o sin id externo)
+ * - duplicates: filas repetidas con el mismo id externo (se conserva la primera según keepOrder)
+ * Los recibidos sin id o con id repetido se ignoran
+ */
+public class SyncDiff<T> {
+
+    private final List<T> inserts = new ArrayList<>();
+    private final List<Update<T>> updates = new ArrayList<>();
+    private final List<T> deletes = new ArrayList<>();
+    private final List<T> duplicates = new ArrayList<>();
+
+    private SyncDiff() {
+    }
+
+    public static <T> SyncDiff<T> compute(Collection<T> existing,
+                                          Collection<T> fetched,
+                                          Function<T, String> externalId,
+                                          Function<T, String> contentHash,
+                                          Comparator<T> keepOrder) {
+        SyncDiff<T> diff = new SyncDiff<>();
+
+        List<T> sorted = new ArrayList<>(existing);
+        sorted.sort(keepOrder);
+
+        Map<String, T> byId = new LinkedHashMap<>();
+        for (T row : sorted) {
+            String id = externalId.apply(row);
+            if (id == null) {
+                diff.deletes.add(row);
+            } else if (byId.putIfAbsent(id, row) != null) {
+                diff.duplicates.add(row);
+            }
+        }
+
+        Set<String> seen = new HashSet<>();
+        for (T item : fetched) {
+            String id = externalId.apply(item);
+            if (id == null || !seen.add(id)) {
+                continue;
+            }
+            T current = byId.remove(id);
+            if (current == null) {
+                diff.inserts.add(item);
+            } else if (!Objects.equals(contentHash.apply(item), contentHash.apply(current))) {
+                diff.updates.add(new Update<>(current, item));
+            }
+        }
+
+        diff.deletes.addAll(byId.values());
+        return diff;
+    }
+
+    public List<T> getInserts() {
+        return inserts;
+    }
+
+    public List<Update<T>> getUpdates() {
+        return updates;
+    }
+
+    public List<T> getDeletes() {
+        return deletes;
+    }
+
+    public List<T> getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Fila guardada y el dato recibido que la reemplaza
+     */
+    public record Update<T>(T current, T fetched) {
+    }
+}
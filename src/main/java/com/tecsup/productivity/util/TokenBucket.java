@@ -0,0 +1,67 @@
+// ============================================
+// TokenBucket.java
+// ============================================
+package com.tecsup.productivity.util;
+
+/**
+ * Token bucket clásico (thread-safe)
+ * - capacity: ráfaga máxima permitida
+ * - refillPerSecond: tokens que se reponen por segundo (cuota sostenida)
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final long capacity;
+    private final double refillPerNano;
+
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(long capacity, double refillPerSecond) {
+        this.capacity = Math.max(1, capacity);
+        this.refillPerNano = Math.max(refillPerSecond, 0.001) / NANOS_PER_SECOND;
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Consume un token si hay disponible
+     */
+    public synchronized boolean tryConsume() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Nanosegundos hasta que haya {@code count} tokens (0 si ya los hay)
+     */
+    public synchronized long nanosUntilAvailable(long count) {
+        refill();
+        double missing = count - tokens;
+        return missing <= 0 ? 0 : (long) Math.ceil(missing / refillPerNano);
+    }
+
+    public synchronized long getAvailableTokens() {
+        refill();
+        return (long) tokens;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public double getRefillPerSecond() {
+        return refillPerNano * NANOS_PER_SECOND;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,87 @@
+package com.tecsup.productivity.security;
+
+import com.tecsup.productivity.entity.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JwtAuthenticationFilterTest {
+
+    private JwtUtil jwtUtil;
+    private CustomUserDetailsService userDetailsService;
+    private TokenRevocationService tokenRevocationService;
+    private JwtAuthenticationFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtil = mock(JwtUtil.class);
+        userDetailsService = mock(CustomUserDetailsService.class);
+        tokenRevocationService = mock(TokenRevocationService.class);
+        filter = new JwtAuthenticationFilter(jwtUtil, userDetailsService, tokenRevocationService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void principalIsBuiltFromClaimsWithoutLoadingTheUser() throws Exception {
+        when(jwtUtil.verifyToken("access")).thenReturn(Optional.of(token(JwtUtil.ACCESS_TOKEN)));
+
+        filter.doFilter(request("access"), new MockHttpServletResponse(), new MockFilterChain());
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        assertThat(authentication).isNotNull();
+        assertThat(authentication.getPrincipal()).isInstanceOf(UserPrincipal.class);
+        assertThat(((UserPrincipal) authentication.getPrincipal()).getId()).isEqualTo(42L);
+        verify(userDetailsService, never()).loadUserByUsername(anyString());
+    }
+
+    @Test
+    void refreshTokensDoNotAuthenticateRequests() throws Exception {
+        when(jwtUtil.verifyToken("refresh")).thenReturn(Optional.of(token(JwtUtil.REFRESH_TOKEN)));
+
+        filter.doFilter(request("refresh"), new MockHttpServletResponse(), new MockFilterChain());
+
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    @Test
+    void revokedTokensDoNotAuthenticateRequests() throws Exception {
+        VerifiedToken token = token(JwtUtil.ACCESS_TOKEN);
+        when(jwtUtil.verifyToken("revoked")).thenReturn(Optional.of(token));
+        when(tokenRevocationService.isRevoked(token.getTokenId())).thenReturn(true);
+
+        filter.doFilter(request("revoked"), new MockHttpServletResponse(), new MockFilterChain());
+
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    private static MockHttpServletRequest request(String jwt) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/tasks");
+        request.addHeader("Authorization", "Bearer " + jwt);
+        return request;
+    }
+
+    private static VerifiedToken token(String type) {
+        return new VerifiedToken("alumno@tecsup.edu.pe", 42L, User.UserType.STUDENT, Instant.now(),
+                Instant.now().plus(1, ChronoUnit.HOURS), "jti-" + type, type);
+    }
+}
@@ -0,0 +1,75 @@
+package com.tecsup.productivity.security;
+
+import com.tecsup.productivity.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtUtilTest {
+
+    private static final String SECRET = "clave-de-pruebas-con-al-menos-32-bytes-para-hs256";
+
+    private JwtUtil jwtUtil;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtil = jwtUtil(SECRET, 60_000L);
+    }
+
+    @Test
+    void verifiedTokenCarriesThePrincipalClaims() {
+        String token = jwtUtil.generateToken("alumno@tecsup.edu.pe", 42L, User.UserType.STUDENT);
+
+        VerifiedToken verified = jwtUtil.verifyToken(token).orElseThrow();
+
+        assertThat(verified.getEmail()).isEqualTo("alumno@tecsup.edu.pe");
+        assertThat(verified.getUserId()).isEqualTo(42L);
+        assertThat(verified.getTipo()).isEqualTo(User.UserType.STUDENT);
+        assertThat(verified.isAccessToken()).isTrue();
+        assertThat(verified.getTokenId()).isNotBlank();
+    }
+
+    @Test
+    void repeatedVerificationIsServedFromTheCache() {
+        String token = jwtUtil.generateToken("alumno@tecsup.edu.pe", 42L, User.UserType.STUDENT);
+
+        VerifiedToken first = jwtUtil.verifyToken(token).orElseThrow();
+        VerifiedToken second = jwtUtil.verifyToken(token).orElseThrow();
+
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    void tamperedOrForeignTokensAreRejected() {
+        String token = jwtUtil.generateToken("alumno@tecsup.edu.pe", 42L, User.UserType.STUDENT);
+        String tampered = token.substring(0, token.length() - 2)
+                + (token.endsWith("AA") ? "BB" : "AA");
+        String foreign = jwtUtil("otra-clave-de-pruebas-con-al-menos-32-bytes-hs256", 60_000L)
+                .generateToken("alumno@tecsup.edu.pe", 42L, User.UserType.STUDENT);
+
+        assertThat(jwtUtil.verifyToken(tampered)).isEmpty();
+        assertThat(jwtUtil.verifyToken(foreign)).isEmpty();
+        assertThat(jwtUtil.verifyToken("no-es-un-jwt")).isEmpty();
+        assertThat(jwtUtil.verifyToken(null)).isEmpty();
+    }
+
+    @Test
+    void expiredTokensAreRejected() {
+        JwtUtil shortLived = jwtUtil(SECRET, -1_000L);
+        String token = shortLived.generateToken("alumno@tecsup.edu.pe", 42L, User.UserType.STUDENT);
+
+        assertThat(jwtUtil.verifyToken(token)).isEmpty();
+    }
+
+    private static JwtUtil jwtUtil(String secret, long expiration) {
+        JwtUtil util = new JwtUtil();
+        ReflectionTestUtils.setField(util, "secret", secret);
+        ReflectionTestUtils.setField(util, "expiration", expiration);
+        ReflectionTestUtils.setField(util, "refreshExpiration", 600_000L);
+        ReflectionTestUtils.setField(util, "verifiedCacheMaxSize", 100);
+        util.init();
+        return util;
+    }
+}
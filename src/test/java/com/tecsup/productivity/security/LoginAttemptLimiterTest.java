@@ -0,0 +1,78 @@
+package com.tecsup.productivity.security;
+
+import com.tecsup.productivity.exception.TooManyRequestsException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LoginAttemptLimiterTest {
+
+    private static final String EMAIL = "alumno@tecsup.edu.pe";
+
+    private LoginAttemptLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new LoginAttemptLimiter();
+        ReflectionTestUtils.setField(limiter, "maxFailures", 3);
+        ReflectionTestUtils.setField(limiter, "windowSeconds", 900L);
+        limiter.init();
+    }
+
+    @Test
+    void allowsAttemptsBelowTheLimit() {
+        limiter.recordFailure(EMAIL);
+        limiter.recordFailure(EMAIL);
+
+        assertThatCode(() -> limiter.checkAllowed(EMAIL)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void blocksOnceTheLimitIsReached() {
+        for (int i = 0; i < 3; i++) {
+            limiter.recordFailure(EMAIL);
+        }
+
+        assertThatThrownBy(() -> limiter.checkAllowed(EMAIL))
+                .isInstanceOf(TooManyRequestsException.class)
+                .satisfies(e -> assertThat(((TooManyRequestsException) e).getRetryAfterSeconds())
+                        .isBetween(1L, 900L));
+    }
+
+    @Test
+    void resetClearsTheFailures() {
+        for (int i = 0; i < 3; i++) {
+            limiter.recordFailure(EMAIL);
+        }
+
+        limiter.reset(EMAIL);
+
+        assertThatCode(() -> limiter.checkAllowed(EMAIL)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void failuresOfOneEmailDoNotBlockAnother() {
+        for (int i = 0; i < 3; i++) {
+            limiter.recordFailure(EMAIL);
+        }
+
+        assertThatCode(() -> limiter.checkAllowed("otro@tecsup.edu.pe")).doesNotThrowAnyException();
+    }
+
+    @Test
+    void failuresOutsideTheWindowAreForgotten() throws InterruptedException {
+        ReflectionTestUtils.setField(limiter, "windowSeconds", 1L);
+        limiter.init();
+        for (int i = 0; i < 3; i++) {
+            limiter.recordFailure(EMAIL);
+        }
+
+        Thread.sleep(1_100);
+
+        assertThatCode(() -> limiter.checkAllowed(EMAIL)).doesNotThrowAnyException();
+    }
+}
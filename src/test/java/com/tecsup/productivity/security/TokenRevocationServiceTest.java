@@ -0,0 +1,198 @@
+package com.tecsup.productivity.security;
+
+import com.tecsup.productivity.entity.RevokedToken;
+import com.tecsup.productivity.repository.RevokedTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TokenRevocationServiceTest {
+
+    private RevokedTokenRepository repository;
+    private TokenRevocationService service;
+
+    // Simula el índice único de jti en la BD
+    private final Set<String> stored = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(RevokedTokenRepository.class);
+        when(repository.findActiveRevokedAfter(any(), anyLong(), any(), any())).thenReturn(List.of());
+        when(repository.insertIfAbsent(anyString(), any(), any()))
+                .thenAnswer(invocation -> stored.add(invocation.getArgument(0)) ? 1 : 0);
+
+        service = new TokenRevocationService(repository);
+        ReflectionTestUtils.setField(service, "expectedEntries", 1000);
+        ReflectionTestUtils.setField(service, "syncOverlap", 300_000L);
+        service.loadOnStartup();
+    }
+
+    @Test
+    void revokedTokenIsRejectedWithoutAnotherInsert() {
+        VerifiedToken token = token(Instant.now().plus(1, ChronoUnit.HOURS));
+
+        assertThat(service.revoke(token)).isTrue();
+        assertThat(service.isRevoked(token.getTokenId())).isTrue();
+        assertThat(service.revoke(token)).isFalse();
+
+        verify(repository, times(1)).insertIfAbsent(anyString(), any(), any());
+    }
+
+    @Test
+    void tokenAlreadyRevokedElsewhereReturnsFalseButIsRemembered() {
+        VerifiedToken token = token(Instant.now().plus(1, ChronoUnit.HOURS));
+        stored.add(token.getTokenId());
+
+        assertThat(service.revoke(token)).isFalse();
+        assertThat(service.isRevoked(token.getTokenId())).isTrue();
+    }
+
+    @Test
+    void onlyOneConcurrentRevocationOfTheSameTokenWins() throws Exception {
+        VerifiedToken token = token(Instant.now().plus(1, ChronoUnit.HOURS));
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return service.revoke(token);
+            }));
+        }
+        start.countDown();
+
+        int winners = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(5, TimeUnit.SECONDS)) {
+                winners++;
+            }
+        }
+        pool.shutdown();
+
+        assertThat(winners).isEqualTo(1);
+    }
+
+    @Test
+    void purgeDropsExpiredTokensAndKeepsActiveOnes() {
+        VerifiedToken expired = token(Instant.now().minus(1, ChronoUnit.MINUTES));
+        VerifiedToken active = token(Instant.now().plus(1, ChronoUnit.HOURS));
+        service.revoke(expired);
+        service.revoke(active);
+
+        service.purgeExpired();
+
+        assertThat(service.isRevoked(expired.getTokenId())).isFalse();
+        assertThat(service.isRevoked(active.getTokenId())).isTrue();
+    }
+
+    @Test
+    void revocationsWrittenDuringABloomRebuildAreNotLost() throws Exception {
+        for (int i = 0; i < 5_000; i++) {
+            service.revoke(token(Instant.now().plus(1, ChronoUnit.HOURS)));
+        }
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<?> purger = pool.submit(() -> {
+            while (writing.get()) {
+                service.purgeExpired();
+            }
+        });
+
+        List<VerifiedToken> revokedDuringRebuild = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            VerifiedToken token = token(Instant.now().plus(1, ChronoUnit.HOURS));
+            service.revoke(token);
+            revokedDuringRebuild.add(token);
+        }
+        writing.set(false);
+        purger.get(10, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertThat(revokedDuringRebuild).allMatch(token -> service.isRevoked(token.getTokenId()));
+    }
+
+    @Test
+    void revocationInsideATransactionIsRememberedOnlyAfterCommit() {
+        VerifiedToken token = token(Instant.now().plus(1, ChronoUnit.HOURS));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertThat(service.revoke(token)).isTrue();
+            assertThat(service.isRevoked(token.getTokenId())).isFalse();
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(service.isRevoked(token.getTokenId())).isTrue();
+    }
+
+    @Test
+    void syncRereadsTheOverlapWindowAndPicksUpLateCommits() {
+        LocalDateTime seenAt = LocalDateTime.of(2026, 5, 11, 10, 0);
+        RevokedToken seen = revokedRow(10L, seenAt);
+        // Transacción que empezó antes pero confirmó después del primer ciclo (id menor, hora menor)
+        RevokedToken lateCommit = revokedRow(5L, seenAt.minusSeconds(1));
+
+        when(repository.findActiveRevokedAfter(any(), anyLong(), any(), any()))
+                .thenReturn(List.of(seen))
+                .thenReturn(List.of(lateCommit, seen));
+
+        service.syncIncrement();
+        service.syncIncrement();
+
+        ArgumentCaptor<LocalDateTime> afterAt = ArgumentCaptor.forClass(LocalDateTime.class);
+        ArgumentCaptor<Long> afterId = ArgumentCaptor.forClass(Long.class);
+        verify(repository, times(3)).findActiveRevokedAfter(afterAt.capture(), afterId.capture(), any(), any());
+        assertThat(afterAt.getAllValues().get(2)).isEqualTo(seenAt.minusMinutes(5));
+        assertThat(afterId.getAllValues().get(2)).isZero();
+        assertThat(service.isRevoked(lateCommit.getJti())).isTrue();
+        assertThat(service.isRevoked(seen.getJti())).isTrue();
+    }
+
+    private static RevokedToken revokedRow(Long id, LocalDateTime revokedAt) {
+        return RevokedToken.builder()
+                .id(id)
+                .jti(UUID.randomUUID().toString())
+                .userId(1L)
+                .expiresAt(LocalDateTime.now().plusHours(1))
+                .revokedAt(revokedAt)
+                .build();
+    }
+
+    private static VerifiedToken token(Instant expiration) {
+        return new VerifiedToken("user@tecsup.edu.pe", 1L, null, Instant.now(), expiration,
+                UUID.randomUUID().toString(), JwtUtil.REFRESH_TOKEN);
+    }
+}
@@ -0,0 +1,99 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.dto.request.CompleteRegisterRequest;
+import com.tecsup.productivity.entity.User;
+import com.tecsup.productivity.repository.HabitRepository;
+import com.tecsup.productivity.repository.UserRepository;
+import com.tecsup.productivity.security.JwtUtil;
+import com.tecsup.productivity.security.LoginAttemptLimiter;
+import com.tecsup.productivity.security.PasswordHashingService;
+import com.tecsup.productivity.security.TokenRevocationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AuthServiceTest {
+
+    private UserRepository userRepository;
+    private HabitRepository habitRepository;
+    private PasswordHashingService passwordHashingService;
+    private CanvasClient canvasClient;
+    private SyncJobService syncJobService;
+    private PlatformTransactionManager transactionManager;
+    private AuthService authService;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        habitRepository = mock(HabitRepository.class);
+        passwordHashingService = mock(PasswordHashingService.class);
+        canvasClient = mock(CanvasClient.class);
+        syncJobService = mock(SyncJobService.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+
+        when(passwordHashingService.encode(anyString())).thenReturn("hash");
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
+            User user = invocation.getArgument(0);
+            user.setId(42L);
+            return user;
+        });
+
+        authService = new AuthService(userRepository, habitRepository, passwordHashingService,
+                mock(LoginAttemptLimiter.class), mock(JwtUtil.class), mock(TokenRevocationService.class),
+                canvasClient, syncJobService, transactionManager);
+    }
+
+    @Test
+    void passwordIsHashedBeforeTheTransactionStartsAndSyncIsEnqueuedAfterCommit() {
+        when(canvasClient.get("/users/self", "canvas-token"))
+                .thenReturn(new ResponseEntity<>(Map.of(), HttpStatus.OK));
+
+        authService.completeRegistration(request(User.UserType.STUDENT, "canvas-token"));
+
+        InOrder order = inOrder(canvasClient, passwordHashingService, transactionManager,
+                userRepository, habitRepository, syncJobService);
+        order.verify(canvasClient).get("/users/self", "canvas-token");
+        order.verify(passwordHashingService).encode("secreto123");
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(userRepository).save(any(User.class));
+        order.verify(habitRepository).saveAll(anyList());
+        order.verify(transactionManager).commit(any());
+        order.verify(syncJobService).submit(42L);
+    }
+
+    @Test
+    void generalUserIsSavedWithoutEnqueuingASync() {
+        var response = authService.completeRegistration(request(User.UserType.GENERAL, null));
+
+        assertThat(response.getUser().getId()).isEqualTo(42L);
+        verify(transactionManager).commit(any());
+        verify(syncJobService, never()).submit(any());
+    }
+
+    private static CompleteRegisterRequest request(User.UserType tipo, String tecsupToken) {
+        return CompleteRegisterRequest.builder()
+                .email("Alumno@Tecsup.edu.pe")
+                .password("secreto123")
+                .name("Alumno")
+                .tipo(tipo)
+                .acceptTerms(true)
+                .tecsupToken(tecsupToken)
+                .preferences(Map.of("chatEnabled", true))
+                .build();
+    }
+}
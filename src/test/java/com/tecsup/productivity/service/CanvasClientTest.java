@@ -0,0 +1,118 @@
+package com.tecsup.productivity.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CanvasClientTest {
+
+    private static final String BASE_URL = "https://tecsup.instructure.com/api/v1";
+
+    private RestTemplate restTemplate;
+    private CanvasClient client;
+
+    @BeforeEach
+    void setUp() {
+        restTemplate = mock(RestTemplate.class);
+        client = new CanvasClient(restTemplate);
+        ReflectionTestUtils.setField(client, "baseUrl", BASE_URL);
+        ReflectionTestUtils.setField(client, "perPage", 100);
+        ReflectionTestUtils.setField(client, "maxPages", 3);
+    }
+
+    @Test
+    void followsNextLinksAndDeliversEachPage() {
+        URI first = URI.create(BASE_URL + "/courses?per_page=100");
+        URI second = URI.create(BASE_URL + "/courses?page=2&per_page=100");
+        respond(first, List.of(item(1), item(2)), second);
+        respond(second, List.of(item(3)), null);
+
+        List<List<Map<String, Object>>> pages = new ArrayList<>();
+        int total = client.forEachPage("/courses", "token", pages::add);
+
+        assertThat(total).isEqualTo(3);
+        assertThat(pages).hasSize(2);
+        assertThat(pages.get(1)).containsExactly(item(3));
+    }
+
+    @Test
+    void failsWhenMorePagesRemainAfterMaxPages() {
+        for (int page = 1; page <= 3; page++) {
+            respond(pageUri(page), List.of(item(page)), pageUri(page + 1));
+        }
+
+        assertThatThrownBy(() -> client.forEachPage("/courses", "token", page -> {
+        })).isInstanceOf(CanvasClient.PageLimitExceededException.class);
+
+        verify(restTemplate, times(3)).exchange(any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class),
+                any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    void ignoresNextLinksToAnotherOrigin() {
+        URI first = URI.create(BASE_URL + "/courses?per_page=100");
+        respond(first, List.of(item(1)), URI.create("https://attacker.example.com/api/v1/courses?page=2"));
+
+        int total = client.forEachPage("/courses", "token", page -> {
+        });
+
+        assertThat(total).isEqualTo(1);
+        verify(restTemplate, times(1)).exchange(any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class),
+                any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    void ignoresNextLinksThatDowngradeToHttp() {
+        URI first = URI.create(BASE_URL + "/courses?per_page=100");
+        respond(first, List.of(item(1)), URI.create("http://tecsup.instructure.com/api/v1/courses?page=2"));
+
+        int total = client.forEachPage("/courses", "token", page -> {
+        });
+
+        assertThat(total).isEqualTo(1);
+        verify(restTemplate, times(1)).exchange(any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class),
+                any(ParameterizedTypeReference.class));
+    }
+
+    private static URI pageUri(int page) {
+        return page == 1
+                ? URI.create(BASE_URL + "/courses?per_page=100")
+                : URI.create(BASE_URL + "/courses?page=" + page + "&per_page=100");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void respond(URI uri, List<Map<String, Object>> body, URI next) {
+        HttpHeaders headers = new HttpHeaders();
+        if (next != null) {
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\", <" + uri + ">; rel=\"current\"");
+        }
+        when(restTemplate.exchange(eq(uri), eq(HttpMethod.GET), any(HttpEntity.class),
+                any(ParameterizedTypeReference.class)))
+                .thenReturn(new ResponseEntity<>(body, headers, HttpStatus.OK));
+    }
+
+    private static Map<String, Object> item(int id) {
+        return Map.of("id", id);
+    }
+}
@@ -0,0 +1,127 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.dto.response.ChatMessageResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatHistoryWriterTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private ChatHistoryWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        writer = new ChatHistoryWriter(jdbcTemplate);
+        // Lote grande: enqueue no dispara flush asíncronos, cada test hace flush explícito
+        ReflectionTestUtils.setField(writer, "batchSize", 10);
+        ReflectionTestUtils.setField(writer, "bufferCapacity", 100);
+        ReflectionTestUtils.setField(writer, "maxBatchAttempts", 2);
+        writer.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pendingMessagesAreWrittenInBatches() {
+        for (int i = 1; i <= 5; i++) {
+            writer.enqueue(message(1L, "pregunta " + i));
+        }
+        ReflectionTestUtils.setField(writer, "batchSize", 2);
+
+        writer.flush();
+
+        assertThat(writer.getStats()).containsEntry("writtenCount", 5L).containsEntry("pending", 0);
+        verify(jdbcTemplate, times(3)).batchUpdate(anyString(), anyList(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedBatchIsKeptAndRetriedOnTheNextFlush() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new QueryTimeoutException("BD lenta"))
+                .thenReturn(new int[][]{{1}});
+        writer.enqueue(message(1L, "pregunta 1"));
+
+        writer.flush();
+        assertThat(writer.getStats()).containsEntry("pending", 1).containsEntry("writtenCount", 0L);
+
+        writer.flush();
+        assertThat(writer.getStats()).containsEntry("pending", 0).containsEntry("writtenCount", 1L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void invalidRowIsDroppedAfterRepeatedBatchFailures() throws Exception {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new DataIntegrityViolationException("fila inválida"));
+        List<String> inserted = new ArrayList<>();
+        doAnswer(invocation -> {
+            PreparedStatement ps = mock(PreparedStatement.class);
+            List<String> values = new ArrayList<>();
+            doAnswer(set -> values.add(set.getArgument(1))).when(ps).setString(anyInt(), any());
+            invocation.<PreparedStatementSetter>getArgument(1).setValues(ps);
+            if (values.get(0).equals("inválida")) {
+                throw new DataIntegrityViolationException("fila inválida");
+            }
+            inserted.add(values.get(0));
+            return 1;
+        }).when(jdbcTemplate).update(anyString(), any(PreparedStatementSetter.class));
+
+        writer.enqueue(message(1L, "inválida"));
+        writer.enqueue(message(1L, "válida"));
+        writer.flush();
+        writer.flush();
+        writer.flush();
+
+        assertThat(inserted).containsExactly("válida");
+        assertThat(writer.getStats()).containsEntry("rejectedRows", 1L).containsEntry("pending", 0);
+    }
+
+    @Test
+    void deletingHistoryAlsoDropsTheUsersPendingMessages() {
+        writer.enqueue(message(1L, "pregunta del usuario 1"));
+        writer.enqueue(message(2L, "pregunta del usuario 2"));
+
+        writer.deleteUserHistory(1L);
+
+        verify(jdbcTemplate).update("DELETE FROM chat_messages WHERE user_id = ?", 1L);
+        assertThat(writer.getStats()).containsEntry("pending", 1);
+    }
+
+    private static ChatMessageResponse message(Long userId, String mensaje) {
+        return ChatMessageResponse.builder()
+                .userId(userId)
+                .mensaje(mensaje)
+                .respuesta("respuesta")
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package com.tecsup.productivity.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChatIntentRouterTest {
+
+    private ChatIntentRouter router;
+
+    @BeforeEach
+    void setUp() {
+        router = new ChatIntentRouter(null);
+        ReflectionTestUtils.setField(router, "enabled", true);
+        ReflectionTestUtils.setField(router, "maxLength", 120);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "crea un hábito de leer",
+            "quiero dejar el hábito de fumar",
+            "mañana tengo examen, ¿qué estudio primero?",
+            "agrega una tarea para mañana",
+            "¿cómo puedo mejorar mis hábitos?",
+            "¿qué tengo esta semana?",
+            "what do I have this week",
+            "¿qué tengo en la mañana?"
+    })
+    void actionsAndOpenQuestionsGoToGemini(String message) {
+        assertThat(router.classify(message)).isEmpty();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"¿Qué hábitos tengo hoy?", "mis hábitos", "how many habits did I complete"})
+    void habitQuestionsAreAnsweredLocally(String message) {
+        assertThat(router.classify(message)).contains(ChatIntentRouter.Intent.HABITS_TODAY);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"¿qué tareas tengo para mañana?", "¿qué tengo mañana?", "what do I have tomorrow",
+            "eventos de mañana"})
+    void tomorrowQuestionsAreAnsweredLocally(String message) {
+        assertThat(router.classify(message)).contains(ChatIntentRouter.Intent.TOMORROW);
+    }
+
+    @Test
+    void tomorrowAnswerListsOnlyTomorrowsEventsAndPendingTasks() {
+        ChatbotContextService contextService = mock(ChatbotContextService.class);
+        when(contextService.getFullContext()).thenReturn(Map.of(
+                "tomorrow", Map.of(
+                        "date", LocalDate.of(2026, 5, 12),
+                        "tasks", List.of(
+                                Map.of("titulo", "Informe de redes", "prioridad", "ALTA", "completed", false),
+                                Map.of("titulo", "Quiz ya hecho", "prioridad", "MEDIA", "completed", true)),
+                        "events", List.of(Map.of("titulo", "Examen parcial", "hora", "08:00"))),
+                "upcoming", Map.of("tasks", List.of(
+                        Map.of("titulo", "Proyecto final", "fechaLimite", LocalDate.of(2026, 5, 16))))));
+        ChatIntentRouter localRouter = new ChatIntentRouter(contextService);
+        ReflectionTestUtils.setField(localRouter, "enabled", true);
+        ReflectionTestUtils.setField(localRouter, "maxLength", 120);
+
+        String answer = localRouter.tryAnswer("¿qué tengo mañana?").orElseThrow();
+
+        assertThat(answer).contains("2026-05-12", "08:00 - Examen parcial", "Informe de redes")
+                .doesNotContain("Quiz ya hecho", "Proyecto final");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"próximas tareas", "tasks due this week", "¿qué tareas tengo esta semana?"})
+    void upcomingTaskQuestionsAreAnsweredLocally(String message) {
+        assertThat(router.classify(message)).contains(ChatIntentRouter.Intent.UPCOMING_TASKS);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"¿qué tareas tengo hoy?", "¿qué tengo para hoy?"})
+    void todayTaskQuestionsAreAnsweredLocally(String message) {
+        assertThat(router.classify(message)).contains(ChatIntentRouter.Intent.TASKS_TODAY);
+    }
+}
@@ -0,0 +1,122 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.entity.Event;
+import com.tecsup.productivity.entity.Task;
+import com.tecsup.productivity.repository.EventRepository;
+import com.tecsup.productivity.repository.TaskRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatRelevanceIndexTest {
+
+    private static final Long USER_ID = 1L;
+
+    private TaskRepository taskRepository;
+    private EventRepository eventRepository;
+    private ChatRelevanceIndex index;
+
+    @BeforeEach
+    void setUp() {
+        taskRepository = mock(TaskRepository.class);
+        eventRepository = mock(EventRepository.class);
+        index = new ChatRelevanceIndex(taskRepository, eventRepository, mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(index, "cacheTtl", 1800L);
+        ReflectionTestUtils.setField(index, "cacheMaxSize", 100L);
+        index.init();
+    }
+
+    @Test
+    void searchesFromMemoryAfterTheFirstBuild() {
+        when(taskRepository.findByUserIdAndCompletedOrderByPrioridadAscCreatedAtDesc(USER_ID, false))
+                .thenReturn(List.of(task(1L, "Informe de redes")));
+        when(eventRepository.findByUserIdAndFechaGreaterThanEqual(anyLong(), any())).thenReturn(List.of());
+
+        ChatRelevanceIndex.IndexedItem first = index.search(USER_ID, "redes", 5).get(0);
+        index.search(USER_ID, "informe", 5);
+
+        assertThat(first.getKey()).isEqualTo("T:1");
+        assertThat(first.getTitulo()).isEqualTo("Informe de redes");
+        assertThat(first.getFecha()).isEqualTo(LocalDate.now().plusDays(2));
+        verify(taskRepository, times(1)).findByUserIdAndCompletedOrderByPrioridadAscCreatedAtDesc(USER_ID, false);
+    }
+
+    @Test
+    void updatesArrivingDuringABuildAreApplied() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(taskRepository.findByUserIdAndCompletedOrderByPrioridadAscCreatedAtDesc(USER_ID, false))
+                .thenAnswer(invocation -> {
+                    reading.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    // Lectura anterior a los cambios: todavía ve la tarea 1 y no la 2
+                    return List.of(task(1L, "Informe de redes"));
+                });
+        when(eventRepository.findByUserIdAndFechaGreaterThanEqual(anyLong(), any())).thenReturn(List.of());
+
+        CompletableFuture<List<ChatRelevanceIndex.IndexedItem>> firstSearch =
+                CompletableFuture.supplyAsync(() -> index.search(USER_ID, "redes", 5));
+        assertThat(reading.await(5, TimeUnit.SECONDS)).isTrue();
+
+        index.onTaskDeleted(USER_ID, 1L);
+        index.onTaskSaved(USER_ID, task(2L, "Proyecto de redes"));
+        release.countDown();
+        firstSearch.get(5, TimeUnit.SECONDS);
+
+        assertThat(index.search(USER_ID, "redes", 5))
+                .extracting(ChatRelevanceIndex.IndexedItem::getKey)
+                .containsExactly("T:2");
+    }
+
+    @Test
+    void updatesAfterTheBuildGoStraightToTheIndex() {
+        when(taskRepository.findByUserIdAndCompletedOrderByPrioridadAscCreatedAtDesc(USER_ID, false))
+                .thenReturn(List.of(task(1L, "Informe de redes")));
+        when(eventRepository.findByUserIdAndFechaGreaterThanEqual(anyLong(), any())).thenReturn(List.of());
+        index.search(USER_ID, "redes", 5);
+
+        Task completed = task(1L, "Informe de redes");
+        completed.setCompleted(true);
+        index.onTaskSaved(USER_ID, completed);
+
+        assertThat(index.search(USER_ID, "redes", 5)).isEmpty();
+    }
+
+    @Test
+    void pastEventsAreNotReturned() {
+        when(taskRepository.findByUserIdAndCompletedOrderByPrioridadAscCreatedAtDesc(USER_ID, false))
+                .thenReturn(List.of());
+        // Indexado cuando aún era próximo (p. ej. el índice se construyó ayer)
+        when(eventRepository.findByUserIdAndFechaGreaterThanEqual(anyLong(), any()))
+                .thenReturn(List.of(event(5L, "Examen de física", LocalDate.now().minusDays(1)),
+                        event(6L, "Laboratorio de física", LocalDate.now().plusDays(1))));
+
+        assertThat(index.search(USER_ID, "física", 5))
+                .extracting(ChatRelevanceIndex.IndexedItem::getKey)
+                .containsExactly("E:6");
+    }
+
+    private static Task task(Long id, String titulo) {
+        return Task.builder().id(id).titulo(titulo).completed(false)
+                .prioridad(Task.TaskPriority.MEDIA).fechaLimite(LocalDate.now().plusDays(2)).build();
+    }
+
+    private static Event event(Long id, String titulo, LocalDate fecha) {
+        return Event.builder().id(id).titulo(titulo).fecha(fecha).build();
+    }
+}
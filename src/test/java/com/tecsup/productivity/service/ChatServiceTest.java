@@ -0,0 +1,146 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.dto.request.ChatMessageRequest;
+import com.tecsup.productivity.dto.response.ChatMessageResponse;
+import com.tecsup.productivity.entity.User;
+import com.tecsup.productivity.exception.TooManyRequestsException;
+import com.tecsup.productivity.repository.ChatMessageRepository;
+import com.tecsup.productivity.security.UserSnapshot;
+import com.tecsup.productivity.util.SecurityUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatServiceTest {
+
+    private static final UserSnapshot USER =
+            new UserSnapshot(1L, "alumno@tecsup.edu.pe", "Alumno", User.UserType.STUDENT, true, true);
+
+    private GeminiAIService geminiAIService;
+    private ChatSessionStore chatSessionStore;
+    private ChatHistoryWriter chatHistoryWriter;
+    private ChatIntentRouter chatIntentRouter;
+    private ChatService chatService;
+
+    @BeforeEach
+    void setUp() {
+        geminiAIService = mock(GeminiAIService.class);
+        chatSessionStore = mock(ChatSessionStore.class);
+        chatHistoryWriter = mock(ChatHistoryWriter.class);
+        chatIntentRouter = mock(ChatIntentRouter.class);
+        ChatbotContextService chatbotContextService = mock(ChatbotContextService.class);
+        ConversationSummarizer conversationSummarizer = mock(ConversationSummarizer.class);
+        SecurityUtil securityUtil = mock(SecurityUtil.class);
+
+        when(securityUtil.getCurrentUserSnapshot()).thenReturn(USER);
+        when(chatIntentRouter.tryAnswer(anyString())).thenReturn(Optional.empty());
+        when(geminiAIService.isConfigured()).thenReturn(true);
+        when(chatbotContextService.generateContextualPrompt(anyString(), any())).thenReturn("prompt");
+        when(conversationSummarizer.getTurnsForPrompt(1L)).thenReturn(List.of());
+
+        chatService = new ChatService(geminiAIService, chatbotContextService, securityUtil, chatSessionStore,
+                chatIntentRouter, chatHistoryWriter, mock(ChatMessageRepository.class), conversationSummarizer);
+    }
+
+    @Test
+    void streamedChunksAreForwardedAndTheFullReplyIsStoredOnCompletion() {
+        when(geminiAIService.streamReply(eq("prompt"), any(), eq("user:1"), any())).thenReturn(Flux.just(
+                GeminiAIService.GeminiReply.of("Tienes 2 "),
+                GeminiAIService.GeminiReply.of("tareas hoy")));
+
+        List<ServerSentEvent<Object>> events = chatService.streamMessage(request()).collectList().block();
+
+        assertThat(events).extracting(ServerSentEvent::event).containsExactly("chunk", "chunk", "done");
+        assertThat(events.get(0).data()).isEqualTo(Map.of("text", "Tienes 2 "));
+        ChatMessageResponse done = (ChatMessageResponse) events.get(2).data();
+        assertThat(done.getRespuesta()).isEqualTo("Tienes 2 tareas hoy");
+        verify(chatSessionStore).append(1L, done);
+        verify(chatHistoryWriter).enqueue(done);
+    }
+
+    @Test
+    void streamedFallbackIsShownButNotStored() {
+        when(geminiAIService.streamReply(anyString(), any(), anyString(), any())).thenReturn(Flux.just(
+                GeminiAIService.GeminiReply.fallback("No puedo conectarme al servicio de IA")));
+
+        List<ServerSentEvent<Object>> events = chatService.streamMessage(request()).collectList().block();
+
+        assertThat(events).extracting(ServerSentEvent::event).containsExactly("chunk", "done");
+        verify(chatSessionStore, never()).append(any(), any());
+        verify(chatHistoryWriter, never()).enqueue(any());
+    }
+
+    @Test
+    void quotaRejectionEndsTheStreamWithAnErrorEvent() {
+        when(geminiAIService.streamReply(anyString(), any(), anyString(), any()))
+                .thenReturn(Flux.error(new TooManyRequestsException("Demasiadas consultas", 7)));
+
+        List<ServerSentEvent<Object>> events = chatService.streamMessage(request()).collectList().block();
+
+        assertThat(events).extracting(ServerSentEvent::event).containsExactly("error");
+        assertThat(events.get(0).data()).isEqualTo(Map.of("message", "Demasiadas consultas", "retryAfter", 7L));
+        verify(chatHistoryWriter, never()).enqueue(any());
+    }
+
+    @Test
+    void replyCompletesWhenGeminiAnswersWithoutBlockingTheRequest() {
+        Sinks.One<GeminiAIService.GeminiReply> reply = Sinks.one();
+        when(geminiAIService.generateReplyAsync(eq("prompt"), any(), eq("user:1"),
+                eq(GeminiRequestScheduler.Priority.INTERACTIVE))).thenReturn(reply.asMono());
+
+        CompletableFuture<ChatMessageResponse> pending = chatService.sendMessage(request()).toFuture();
+
+        // El request no queda bloqueado esperando a Gemini
+        assertThat(pending).isNotDone();
+        verify(chatHistoryWriter, never()).enqueue(any());
+
+        reply.tryEmitValue(GeminiAIService.GeminiReply.of("Tienes 2 tareas hoy"));
+
+        assertThat(pending.join().getRespuesta()).isEqualTo("Tienes 2 tareas hoy");
+        verify(chatHistoryWriter).enqueue(pending.join());
+    }
+
+    @Test
+    void fallbackReplyIsReturnedButNotStored() {
+        when(geminiAIService.generateReplyAsync(anyString(), any(), anyString(), any()))
+                .thenReturn(Mono.just(GeminiAIService.GeminiReply.fallback("No puedo conectarme al servicio de IA")));
+
+        ChatMessageResponse response = chatService.sendMessage(request()).block();
+
+        assertThat(response.getRespuesta()).isEqualTo("No puedo conectarme al servicio de IA");
+        verify(chatSessionStore, never()).append(any(), any());
+        verify(chatHistoryWriter, never()).enqueue(any());
+    }
+
+    @Test
+    void localAnswersSkipGemini() {
+        when(chatIntentRouter.tryAnswer("¿Qué tengo pendiente?")).thenReturn(Optional.of("No tienes tareas pendientes"));
+
+        ChatMessageResponse response = chatService.sendMessage(request()).block();
+
+        assertThat(response.getRespuesta()).isEqualTo("No tienes tareas pendientes");
+        verify(chatHistoryWriter).enqueue(response);
+        verify(geminiAIService, never()).generateReplyAsync(any(), any(), any(), any());
+    }
+
+    private static ChatMessageRequest request() {
+        return new ChatMessageRequest("¿Qué tengo pendiente?");
+    }
+}
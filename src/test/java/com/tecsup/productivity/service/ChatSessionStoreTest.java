@@ -0,0 +1,121 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.dto.response.ChatMessageResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatSessionStoreTest {
+
+    private ChatSessionStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new ChatSessionStore();
+        ReflectionTestUtils.setField(store, "sessionTimeout", 3600);
+        ReflectionTestUtils.setField(store, "maxMessages", 3);
+        ReflectionTestUtils.setField(store, "maxBytes", 1_000_000L);
+        store.init();
+    }
+
+    @Test
+    void keepsOnlyTheLastMaxMessagesInOrder() {
+        for (int i = 1; i <= 5; i++) {
+            store.append(1L, message(i));
+        }
+
+        assertThat(store.getHistory(1L)).extracting(ChatMessageResponse::getMensaje)
+                .containsExactly("pregunta 3", "pregunta 4", "pregunta 5");
+        assertThat(store.getRecentTurns(1L, 2)).extracting(ChatMessageResponse::getMensaje)
+                .containsExactly("pregunta 4", "pregunta 5");
+    }
+
+    @Test
+    void loadsFromTheDatabaseOnlyWhenTheSessionIsMissing() {
+        AtomicInteger loads = new AtomicInteger();
+
+        store.ensureLoaded(1L, max -> {
+            loads.incrementAndGet();
+            return List.of(message(1), message(2));
+        });
+        store.ensureLoaded(1L, max -> {
+            loads.incrementAndGet();
+            return List.of();
+        });
+
+        assertThat(loads).hasValue(1);
+        assertThat(store.getHistory(1L)).hasSize(2);
+    }
+
+    @Test
+    void resetSessionIsNotReloaded() {
+        store.append(1L, message(1));
+        store.reset(1L);
+
+        store.ensureLoaded(1L, max -> List.of(message(2)));
+
+        assertThat(store.getHistory(1L)).isEmpty();
+    }
+
+    @Test
+    void foldedTurnsAreCoveredByTheSummaryAndLeaveThePrompt() {
+        ReflectionTestUtils.setField(store, "maxMessages", 10);
+        store.init();
+        for (int i = 1; i <= 6; i++) {
+            store.append(1L, message(i));
+        }
+
+        ChatSessionStore.FoldTask task = store.beginFold(1L, 2, 3);
+        assertThat(task.getMessages()).extracting(ChatMessageResponse::getMensaje)
+                .containsExactly("pregunta 1", "pregunta 2", "pregunta 3", "pregunta 4");
+        // Solo un plegado en curso por sesión
+        assertThat(store.beginFold(1L, 2, 3)).isNull();
+
+        store.completeFold(1L, task, "Resumen de 1 a 4");
+
+        assertThat(store.getSummary(1L)).isEqualTo("Resumen de 1 a 4");
+        assertThat(store.getUnsummarizedTurns(1L, 2, 8)).extracting(ChatMessageResponse::getMensaje)
+                .containsExactly("pregunta 5", "pregunta 6");
+    }
+
+    @Test
+    void foldFinishingAfterTheSessionWasClearedIsDiscarded() {
+        ReflectionTestUtils.setField(store, "maxMessages", 10);
+        store.init();
+        for (int i = 1; i <= 6; i++) {
+            store.append(1L, message(i));
+        }
+        ChatSessionStore.FoldTask task = store.beginFold(1L, 2, 3);
+
+        store.reset(1L);
+        store.completeFold(1L, task, "Resumen viejo");
+
+        assertThat(store.getSummary(1L)).isNull();
+    }
+
+    @Test
+    void abortedFoldCanBeRetried() {
+        ReflectionTestUtils.setField(store, "maxMessages", 10);
+        store.init();
+        for (int i = 1; i <= 6; i++) {
+            store.append(1L, message(i));
+        }
+
+        store.abortFold(store.beginFold(1L, 2, 3));
+
+        assertThat(store.beginFold(1L, 2, 3)).isNotNull();
+    }
+
+    private static ChatMessageResponse message(int i) {
+        return ChatMessageResponse.builder()
+                .userId(1L)
+                .mensaje("pregunta " + i)
+                .respuesta("respuesta " + i)
+                .build();
+    }
+}
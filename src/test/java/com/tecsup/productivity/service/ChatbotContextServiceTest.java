@@ -0,0 +1,128 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.entity.DailySummary;
+import com.tecsup.productivity.entity.Task;
+import com.tecsup.productivity.entity.User;
+import com.tecsup.productivity.repository.EventRepository;
+import com.tecsup.productivity.repository.HabitLogRepository;
+import com.tecsup.productivity.repository.HabitRepository;
+import com.tecsup.productivity.repository.TaskRepository;
+import com.tecsup.productivity.repository.UserRepository;
+import com.tecsup.productivity.security.UserSnapshot;
+import com.tecsup.productivity.util.SecurityUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatbotContextServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+    private static final UserSnapshot USER =
+            new UserSnapshot(1L, "alumno@tecsup.edu.pe", "Alumno", User.UserType.STUDENT, true, true);
+    private static final String DESCRIPCION =
+            "<p>Revisar la rúbrica del curso y subir el informe final en PDF</p>";
+
+    private TaskRepository taskRepository;
+    private ChatbotContextService service;
+
+    @BeforeEach
+    void setUp() {
+        taskRepository = mock(TaskRepository.class);
+        DailySummaryService dailySummaryService = mock(DailySummaryService.class);
+        when(dailySummaryService.calculateDailySummary(any(), any())).thenReturn(new DailySummary());
+
+        service = new ChatbotContextService(taskRepository, mock(EventRepository.class), mock(HabitRepository.class),
+                mock(HabitLogRepository.class), mock(UserRepository.class), dailySummaryService,
+                mock(SecurityUtil.class), new ConcurrentMapCacheManager("chatContext"),
+                mock(PlatformTransactionManager.class), mock(ChatRelevanceIndex.class));
+        ReflectionTestUtils.setField(service, "maxTasks", 10);
+        ReflectionTestUtils.setField(service, "maxEvents", 5);
+        ReflectionTestUtils.setField(service, "maxDescriptionChars", 30);
+        ReflectionTestUtils.setField(service, "geminiMaxTokens", 500);
+        ReflectionTestUtils.setField(service, "budgetMultiplier", 2.0);
+    }
+
+    @Test
+    void overdueTasksComeFirstAndTheRestIsSummarizedAsACount() {
+        when(taskRepository.findOverdueTasks(1L, TODAY))
+                .thenReturn(List.of(task(1L, "Informe atrasado", TODAY.minusDays(2))));
+        when(taskRepository.findUpcomingTasks(1L, TODAY.plusDays(1), TODAY.plusDays(3)))
+                .thenReturn(upcoming(39));
+
+        String section = service.getContextSectionFor(USER, TODAY);
+
+        // max-tasks = 10: la vencida + 9 próximas
+        assertThat(section).contains("Informe atrasado [ALTA] (Venció: " + TODAY.minusDays(2) + ")");
+        assertThat(section).contains("Tarea próxima 9 [ALTA]").doesNotContain("Tarea próxima 10 ");
+        assertThat(section).contains("… y 30 más");
+        // Descripciones sin HTML y recortadas a max-description-chars
+        assertThat(section).doesNotContain("<p>").contains("Revisar la rúbrica del curso…");
+    }
+
+    @Test
+    void itemsFallBackToTitlesAndStopWhenTheBudgetRunsOut() {
+        // Con descripciones de ~250 tokens ningún item entra completo
+        ReflectionTestUtils.setField(service, "geminiMaxTokens", 100);
+        ReflectionTestUtils.setField(service, "maxDescriptionChars", 2000);
+        List<Task> tareas = upcoming(10);
+        tareas.forEach(t -> t.setDescripcion(DESCRIPCION.repeat(16)));
+        when(taskRepository.findUpcomingTasks(1L, TODAY.plusDays(1), TODAY.plusDays(3))).thenReturn(tareas);
+
+        String section = service.getContextSectionFor(USER, TODAY);
+
+        long shown = section.lines().filter(line -> line.contains("• Tarea próxima")).count();
+        assertThat(shown).isPositive().isLessThan(10);
+        assertThat(section).contains("… y " + (10 - shown) + " más");
+        assertThat(section).doesNotContain("Revisar la rúbrica");
+    }
+
+    @Test
+    void contextIsRenderedOncePerUserAndDayUntilInvalidated() {
+        when(taskRepository.findOverdueTasks(1L, TODAY))
+                .thenReturn(List.of(task(1L, "Informe atrasado", TODAY.minusDays(2))));
+
+        String first = service.getContextSectionFor(USER, TODAY);
+        String second = service.getContextSectionFor(USER, TODAY);
+
+        assertThat(second).isEqualTo(first);
+        verify(taskRepository, times(1)).findOverdueTasks(1L, TODAY);
+
+        // Sin transacción activa se invalida de inmediato
+        when(taskRepository.findOverdueTasks(1L, TODAY)).thenReturn(List.of());
+        service.invalidateContext(1L);
+
+        assertThat(service.getContextSectionFor(USER, TODAY)).doesNotContain("Informe atrasado");
+        verify(taskRepository, times(2)).findOverdueTasks(1L, TODAY);
+    }
+
+    private static List<Task> upcoming(int count) {
+        return IntStream.rangeClosed(1, count)
+                .mapToObj(i -> task(100L + i, "Tarea próxima " + i, TODAY.plusDays(2)))
+                .toList();
+    }
+
+    private static Task task(Long id, String titulo, LocalDate fechaLimite) {
+        return Task.builder()
+                .id(id)
+                .titulo(titulo)
+                .descripcion(DESCRIPCION)
+                .prioridad(Task.TaskPriority.ALTA)
+                .fechaLimite(fechaLimite)
+                .completed(false)
+                .source("user")
+                .build();
+    }
+}
@@ -0,0 +1,76 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.dto.response.ChatMessageResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConversationSummarizerTest {
+
+    private ChatSessionStore chatSessionStore;
+    private GeminiAIService geminiAIService;
+    private ConversationSummarizer summarizer;
+
+    @BeforeEach
+    void setUp() {
+        chatSessionStore = mock(ChatSessionStore.class);
+        geminiAIService = mock(GeminiAIService.class);
+        when(geminiAIService.isConfigured()).thenReturn(true);
+        when(geminiAIService.generateBackgroundAsync(anyString(), anyString(), anyString()))
+                .thenReturn(Mono.just("El estudiante tiene un informe para el viernes."));
+
+        summarizer = new ConversationSummarizer(chatSessionStore, geminiAIService);
+        ReflectionTestUtils.setField(summarizer, "enabled", true);
+        ReflectionTestUtils.setField(summarizer, "historyTurns", 6);
+        ReflectionTestUtils.setField(summarizer, "foldThreshold", 4);
+        ReflectionTestUtils.setField(summarizer, "maxChars", 1200);
+    }
+
+    @Test
+    void eachUserFoldsInItsOwnBackgroundQueue() {
+        ChatSessionStore.FoldTask first = foldTask();
+        ChatSessionStore.FoldTask second = foldTask();
+        when(chatSessionStore.beginFold(eq(1L), anyInt(), anyInt())).thenReturn(first);
+        when(chatSessionStore.beginFold(eq(2L), anyInt(), anyInt())).thenReturn(second);
+
+        summarizer.maybeFold(1L);
+        summarizer.maybeFold(2L);
+
+        verify(geminiAIService).generateBackgroundAsync(anyString(), anyString(), eq("background:summary:1"));
+        verify(geminiAIService).generateBackgroundAsync(anyString(), anyString(), eq("background:summary:2"));
+        verify(chatSessionStore).completeFold(eq(1L), same(first), anyString());
+        verify(chatSessionStore).completeFold(eq(2L), same(second), anyString());
+    }
+
+    @Test
+    void failedFoldReleasesTheReservedTurns() {
+        ChatSessionStore.FoldTask task = foldTask();
+        when(chatSessionStore.beginFold(anyLong(), anyInt(), anyInt())).thenReturn(task);
+        when(geminiAIService.generateBackgroundAsync(anyString(), anyString(), any()))
+                .thenReturn(Mono.error(new IllegalStateException("cuota agotada")));
+
+        summarizer.maybeFold(1L);
+
+        verify(chatSessionStore).abortFold(task);
+    }
+
+    private static ChatSessionStore.FoldTask foldTask() {
+        return new ChatSessionStore.FoldTask(null, null, List.of(ChatMessageResponse.builder()
+                .mensaje("¿Qué entrego el viernes?")
+                .respuesta("El informe de redes.")
+                .build()), 1L);
+    }
+}
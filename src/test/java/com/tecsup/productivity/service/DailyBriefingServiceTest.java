@@ -0,0 +1,73 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.repository.ChatMessageRepository;
+import com.tecsup.productivity.repository.DailyBriefingRepository;
+import com.tecsup.productivity.repository.ScheduledRunRepository;
+import com.tecsup.productivity.repository.UserRepository;
+import com.tecsup.productivity.util.SecurityUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DailyBriefingServiceTest {
+
+    private ChatMessageRepository chatMessageRepository;
+    private ScheduledRunRepository scheduledRunRepository;
+    private DailyBriefingService service;
+
+    @BeforeEach
+    void setUp() {
+        chatMessageRepository = mock(ChatMessageRepository.class);
+        scheduledRunRepository = mock(ScheduledRunRepository.class);
+        GeminiAIService geminiAIService = mock(GeminiAIService.class);
+        when(geminiAIService.isConfigured()).thenReturn(true);
+        when(chatMessageRepository.findActiveUserIdsSince(any())).thenReturn(List.of());
+
+        service = new DailyBriefingService(mock(DailyBriefingRepository.class), chatMessageRepository,
+                scheduledRunRepository, mock(UserRepository.class), mock(ChatbotContextService.class),
+                geminiAIService, mock(SecurityUtil.class));
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "activeDays", 7);
+        ReflectionTestUtils.setField(service, "concurrency", 2);
+    }
+
+    @Test
+    void onlyTheInstanceThatClaimsTheDayGeneratesBriefings() {
+        when(scheduledRunRepository.claim("daily-briefing", LocalDate.now())).thenReturn(0);
+
+        service.generateAll();
+
+        verify(chatMessageRepository, never()).findActiveUserIdsSince(any());
+    }
+
+    @Test
+    void claimedRunLoadsActiveUsers() {
+        when(scheduledRunRepository.claim("daily-briefing", LocalDate.now())).thenReturn(1);
+
+        service.generateAll();
+
+        verify(chatMessageRepository).findActiveUserIdsSince(any());
+    }
+
+    @Test
+    void losingTheClaimDoesNotBlockLaterRuns() {
+        when(scheduledRunRepository.claim(eq("daily-briefing"), any())).thenReturn(0, 1);
+
+        service.generateAll();
+        service.generateAll();
+
+        verify(scheduledRunRepository, times(2)).claim(eq("daily-briefing"), any());
+        verify(chatMessageRepository).findActiveUserIdsSince(any());
+    }
+}
@@ -0,0 +1,187 @@
+package com.tecsup.productivity.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tecsup.productivity.dto.response.ChatMessageResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GeminiAIServiceTest {
+
+    private static final String OK_BODY =
+            "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"Tienes 2 tareas para hoy\"}]}}]}";
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private HttpStatus nextStatus;
+    private volatile String lastUrl;
+    private volatile String lastBody;
+    private GeminiInstructionCache instructionCache;
+    private GeminiAIService service;
+
+    @BeforeEach
+    void setUp() {
+        nextStatus = HttpStatus.OK;
+        // Respuesta con retraso para que las peticiones iguales se solapen
+        WebClient.Builder builder = WebClient.builder().exchangeFunction(request -> {
+            calls.incrementAndGet();
+            HttpStatus status = nextStatus;
+            MockClientHttpRequest sent = new MockClientHttpRequest(request.method(), request.url());
+            return request.writeTo(sent, ExchangeStrategies.withDefaults())
+                    .then(Mono.defer(sent::getBodyAsString))
+                    .doOnNext(body -> {
+                        lastUrl = request.url().toString();
+                        lastBody = body;
+                    })
+                    .then(Mono.delay(Duration.ofMillis(200)))
+                    .map(tick -> ClientResponse.create(status)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(status.is2xxSuccessful() ? OK_BODY : "{\"error\":{}}")
+                            .build());
+        });
+
+        GeminiRequestScheduler scheduler = mock(GeminiRequestScheduler.class);
+        when(scheduler.acquire(any(), any())).thenReturn(Mono.empty());
+
+        instructionCache = mock(GeminiInstructionCache.class);
+        when(instructionCache.toBetaUrl(any()))
+                .thenAnswer(invocation -> invocation.<String>getArgument(0).replace("/v1/", "/v1beta/"));
+
+        service = new GeminiAIService(builder, new ObjectMapper(), instructionCache, scheduler);
+        ReflectionTestUtils.setField(service, "apiUrl",
+                "https://gemini.test/v1/models/gemini-2.5-flash:generateContent");
+        ReflectionTestUtils.setField(service, "modelName", "gemini-2.5-flash");
+        ReflectionTestUtils.setField(service, "lightModelName", "");
+        ReflectionTestUtils.setField(service, "maxTokens", 500);
+        ReflectionTestUtils.setField(service, "temperature", 0.7);
+        ReflectionTestUtils.setField(service, "breakerFailureThreshold", 5);
+        ReflectionTestUtils.setField(service, "breakerOpenDuration", 30_000L);
+        ReflectionTestUtils.setField(service, "breakerHalfOpenCalls", 1);
+        ReflectionTestUtils.setField(service, "bulkheadMaxConcurrent", 20);
+        ReflectionTestUtils.setField(service, "bulkheadMaxQueue", 20);
+        ReflectionTestUtils.setField(service, "bulkheadMaxWait", 5_000L);
+        ReflectionTestUtils.setField(service, "responseCacheEnabled", true);
+        ReflectionTestUtils.setField(service, "responseCacheTtl", 600L);
+        ReflectionTestUtils.setField(service, "responseCacheMaxSize", 1000L);
+        ReflectionTestUtils.setField(service, "latencyWindow", 200);
+        // Sin API key init() no hace el test de conexión; se configura después
+        service.init();
+        ReflectionTestUtils.setField(service, "apiKey", "AIzaTest");
+    }
+
+    @Test
+    void identicalConcurrentRequestsShareOneGeminiCall() {
+        CompletableFuture<GeminiAIService.GeminiReply> first = reply("¿Qué tengo hoy?", List.of()).toFuture();
+        CompletableFuture<GeminiAIService.GeminiReply> second = reply("  ¿Qué tengo   hoy? ", List.of()).toFuture();
+
+        assertThat(first.join().getText()).isEqualTo("Tienes 2 tareas para hoy");
+        assertThat(second.join().getText()).isEqualTo("Tienes 2 tareas para hoy");
+        assertThat(calls).hasValue(1);
+
+        // Ya resuelta: se sirve desde la caché
+        assertThat(reply("¿Qué tengo hoy?", List.of()).block().isFallback()).isFalse();
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void differentHistoryIsADifferentCacheEntry() {
+        ChatMessageResponse previous = ChatMessageResponse.builder()
+                .mensaje("Hola")
+                .respuesta("¡Hola! ¿En qué te ayudo?")
+                .build();
+
+        reply("¿Qué tengo hoy?", List.of()).block();
+        reply("¿Qué tengo hoy?", List.of(previous)).block();
+
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void failedCallsAreNotCached() {
+        nextStatus = HttpStatus.INTERNAL_SERVER_ERROR;
+        assertThat(reply("¿Qué tengo hoy?", List.of()).block().isFallback()).isTrue();
+
+        nextStatus = HttpStatus.OK;
+        GeminiAIService.GeminiReply retried = reply("¿Qué tengo hoy?", List.of()).block();
+
+        assertThat(retried.isFallback()).isFalse();
+        assertThat(retried.getText()).isEqualTo("Tienes 2 tareas para hoy");
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void instructionsAreSentAsSystemInstructionWhenThereIsNoCachedContent() throws Exception {
+        reply("¿Qué tengo hoy?", List.of()).block();
+
+        JsonNode body = new ObjectMapper().readTree(lastBody);
+        assertThat(lastUrl).contains("/v1/models/gemini-2.5-flash:generateContent");
+        assertThat(body.path("systemInstruction").path("parts").path(0).path("text").asText())
+                .isEqualTo(ChatbotContextService.SYSTEM_INSTRUCTION);
+        assertThat(body.has("cachedContent")).isFalse();
+        // El prompt ya no lleva las instrucciones: solo el turno del usuario
+        assertThat(body.path("contents")).hasSize(1);
+        assertThat(body.path("contents").path(0).path("parts").path(0).path("text").asText())
+                .isEqualTo("¿Qué tengo hoy?");
+    }
+
+    @Test
+    void activeCachedContentReplacesTheInstructionsAndUsesV1beta() throws Exception {
+        when(instructionCache.getActiveCachedContent()).thenReturn("cachedContents/productibot-1");
+
+        reply("¿Qué tengo hoy?", List.of()).block();
+
+        JsonNode body = new ObjectMapper().readTree(lastBody);
+        assertThat(lastUrl).contains("/v1beta/models/gemini-2.5-flash:generateContent");
+        assertThat(body.path("cachedContent").asText()).isEqualTo("cachedContents/productibot-1");
+        assertThat(body.has("systemInstruction")).isFalse();
+    }
+
+    @Test
+    void backgroundCallsSendTheirOwnInstructionWithoutCachedContent() throws Exception {
+        when(instructionCache.getActiveCachedContent()).thenReturn("cachedContents/productibot-1");
+
+        service.generateBackgroundAsync("Resume la conversación", "Hola", "background:summary:1").block();
+
+        JsonNode body = new ObjectMapper().readTree(lastBody);
+        assertThat(body.path("systemInstruction").path("parts").path(0).path("text").asText())
+                .isEqualTo("Resume la conversación");
+        assertThat(body.has("cachedContent")).isFalse();
+    }
+
+    @Test
+    void smallPromptsAreRoutedToTheLightModel() {
+        ReflectionTestUtils.setField(service, "lightModelName", "gemini-2.5-flash-lite");
+        ReflectionTestUtils.setField(service, "lightMaxPromptTokens", 10L);
+        ReflectionTestUtils.setField(service, "routingMinSamples", 20);
+        service.init();
+        ReflectionTestUtils.setField(service, "apiKey", "AIzaTest");
+
+        reply("¿Qué tengo hoy?", List.of()).block();
+        assertThat(lastUrl).contains("/models/gemini-2.5-flash-lite:generateContent");
+
+        reply("Explícame con detalle cómo organizar mis tareas de toda la semana", List.of()).block();
+        assertThat(lastUrl).contains("/models/gemini-2.5-flash:generateContent");
+    }
+
+    private Mono<GeminiAIService.GeminiReply> reply(String prompt, List<ChatMessageResponse> history) {
+        return service.generateReplyAsync(prompt, history, "user:1", GeminiRequestScheduler.Priority.INTERACTIVE);
+    }
+}
@@ -0,0 +1,99 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.exception.TooManyRequestsException;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GeminiRequestSchedulerTest {
+
+    private static final GeminiRequestScheduler.Priority INTERACTIVE = GeminiRequestScheduler.Priority.INTERACTIVE;
+
+    @Test
+    void grantsImmediatelyWhileThereIsQuota() {
+        GeminiRequestScheduler scheduler = scheduler(60, 2, 10, 3, 5000);
+
+        scheduler.acquire("user:1", INTERACTIVE).block();
+        scheduler.acquire("user:1", INTERACTIVE).block();
+
+        assertThat(scheduler.getStats()).containsEntry("grantedCount", 2L);
+    }
+
+    @Test
+    void servesQueuedCallersInRoundRobin() throws InterruptedException {
+        GeminiRequestScheduler scheduler = scheduler(1200, 1, 10, 3, 5000);
+        scheduler.acquire("user:a", INTERACTIVE).block();
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(4);
+        for (String caller : List.of("user:a", "user:a", "user:a", "user:b")) {
+            scheduler.acquire(caller, INTERACTIVE).subscribe(null, error -> done.countDown(), () -> {
+                order.add(caller);
+                done.countDown();
+            });
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        // user:b no espera a que user:a vacíe su cola
+        assertThat(order).containsExactly("user:a", "user:b", "user:a", "user:a");
+    }
+
+    @Test
+    void rejectsWhenTheCallerQueueIsFull() {
+        GeminiRequestScheduler scheduler = scheduler(60, 1, 10, 2, 60000);
+        scheduler.acquire("user:1", INTERACTIVE).block();
+        scheduler.acquire("user:1", INTERACTIVE).subscribe();
+        scheduler.acquire("user:1", INTERACTIVE).subscribe();
+
+        assertThatThrownBy(() -> scheduler.acquire("user:1", INTERACTIVE).block())
+                .isInstanceOf(TooManyRequestsException.class);
+        assertThat(scheduler.getStats()).containsEntry("queued", 2);
+    }
+
+    @Test
+    void rejectsUpFrontWhenTheEstimatedWaitExceedsMaxWait() {
+        GeminiRequestScheduler scheduler = scheduler(60, 1, 10, 3, 500);
+        scheduler.acquire("user:1", INTERACTIVE).block();
+
+        assertThatThrownBy(() -> scheduler.acquire("user:2", INTERACTIVE).block())
+                .isInstanceOf(TooManyRequestsException.class)
+                .satisfies(e -> assertThat(((TooManyRequestsException) e).getRetryAfterSeconds()).isPositive());
+        assertThat(scheduler.getStats()).containsEntry("queued", 0);
+    }
+
+    @Test
+    void cancelledCallerLeavesTheQueue() {
+        GeminiRequestScheduler scheduler = scheduler(60, 1, 10, 3, 60000);
+        scheduler.acquire("user:1", INTERACTIVE).block();
+
+        Disposable waiting = scheduler.acquire("user:2", INTERACTIVE).subscribe();
+        assertThat(scheduler.getStats()).containsEntry("queued", 1);
+        assertThat(scheduler.tryAcquireNow()).isFalse();
+
+        waiting.dispose();
+
+        assertThat(scheduler.getStats()).containsEntry("queued", 0).containsEntry("activeCallers", 0);
+    }
+
+    private GeminiRequestScheduler scheduler(int requestsPerMinute, int burst, int maxQueue,
+                                             int maxQueuePerUser, long maxWaitMillis) {
+        GeminiRequestScheduler scheduler = new GeminiRequestScheduler();
+        ReflectionTestUtils.setField(scheduler, "requestsPerMinute", requestsPerMinute);
+        ReflectionTestUtils.setField(scheduler, "burst", burst);
+        ReflectionTestUtils.setField(scheduler, "maxQueue", maxQueue);
+        ReflectionTestUtils.setField(scheduler, "maxQueuePerUser", maxQueuePerUser);
+        ReflectionTestUtils.setField(scheduler, "maxWaitMillis", maxWaitMillis);
+        ReflectionTestUtils.setField(scheduler, "interactiveWeight", 1);
+        ReflectionTestUtils.setField(scheduler, "backgroundWeight", 1);
+        scheduler.init();
+        return scheduler;
+    }
+}
@@ -0,0 +1,107 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.dto.response.SyncResponse;
+import com.tecsup.productivity.entity.SyncJob;
+import com.tecsup.productivity.repository.SyncJobRepository;
+import com.tecsup.productivity.util.SecurityUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SyncJobServiceTest {
+
+    private SyncJobRepository repository;
+    private TecsupSyncService tecsupSyncService;
+    private JdbcTemplate jdbcTemplate;
+    private SyncJobService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(SyncJobRepository.class);
+        tecsupSyncService = mock(TecsupSyncService.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+
+        service = new SyncJobService(repository, tecsupSyncService, mock(SecurityUtil.class), jdbcTemplate);
+        ReflectionTestUtils.setField(service, "workers", 2);
+        ReflectionTestUtils.setField(service, "staleAfterMillis", 120_000L);
+        ReflectionTestUtils.setField(service, "maxAttempts", 3);
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void claimedJobIsFinishedWithTheAttemptItWasClaimedWith() throws Exception {
+        ResultSet row = mock(ResultSet.class);
+        when(row.getLong("id")).thenReturn(7L);
+        when(row.getLong("user_id")).thenReturn(3L);
+        when(row.getInt("attempts")).thenReturn(2);
+        when(jdbcTemplate.query(startsWith("UPDATE sync_jobs SET status = 'RUNNING'"), any(RowMapper.class),
+                any(Object[].class)))
+                .thenAnswer(invocation -> List.of(invocation.<RowMapper<Object>>getArgument(1).mapRow(row, 0)));
+
+        SyncResponse result = SyncResponse.builder()
+                .eventosSincronizados(4)
+                .tareasSincronizadas(5)
+                .mensaje("ok")
+                .build();
+        when(tecsupSyncService.runSync(eq(3L), any())).thenAnswer(invocation -> {
+            invocation.<BiConsumer<Integer, Integer>>getArgument(1).accept(1, 2);
+            return result;
+        });
+
+        service.poll();
+
+        verify(repository, timeout(5000)).finishAttempt(eq(7L), eq(2), eq(SyncJob.JobStatus.COMPLETED), any(),
+                eq("ok"), eq(4), eq(5), isNull());
+        // El progreso nunca retrocede y solo aplica al intento reclamado
+        verify(jdbcTemplate).update(
+                startsWith("UPDATE sync_jobs SET cursos_total = ?, cursos_procesados = GREATEST(cursos_procesados, ?)"),
+                eq(2), eq(1), any(), eq(7L), eq(2));
+    }
+
+    @Test
+    void failedSyncIsClosedAsFailedForTheClaimedAttempt() throws Exception {
+        ResultSet row = mock(ResultSet.class);
+        when(row.getLong("id")).thenReturn(8L);
+        when(row.getLong("user_id")).thenReturn(4L);
+        when(row.getInt("attempts")).thenReturn(1);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class)))
+                .thenAnswer(invocation -> List.of(invocation.<RowMapper<Object>>getArgument(1).mapRow(row, 0)));
+        when(tecsupSyncService.runSync(eq(4L), any())).thenThrow(new IllegalStateException("Canvas caído"));
+
+        service.poll();
+
+        verify(repository, timeout(5000)).finishAttempt(eq(8L), eq(1), eq(SyncJob.JobStatus.FAILED), any(),
+                eq("Error al sincronizar con TECSUP"), isNull(), isNull(), isNull());
+    }
+
+    @Test
+    void staleRunningJobsAreRequeuedUntilMaxAttempts() {
+        service.maintenance();
+
+        verify(jdbcTemplate).update(startsWith("UPDATE sync_jobs SET status = 'PENDING'"), any(), eq(3));
+        verify(jdbcTemplate).update(startsWith("UPDATE sync_jobs SET status = 'FAILED'"), any(), any(), eq(3));
+    }
+}
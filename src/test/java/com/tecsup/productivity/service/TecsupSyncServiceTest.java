@@ -0,0 +1,230 @@
+package com.tecsup.productivity.service;
+
+import com.tecsup.productivity.dto.response.SyncResponse;
+import com.tecsup.productivity.entity.Task;
+import com.tecsup.productivity.entity.User;
+import com.tecsup.productivity.repository.EventRepository;
+import com.tecsup.productivity.repository.TaskRepository;
+import com.tecsup.productivity.repository.UserRepository;
+import com.tecsup.productivity.security.CustomUserDetailsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TecsupSyncServiceTest {
+
+    private static final String TOKEN = "canvas-token";
+
+    private TaskRepository taskRepository;
+    private EventRepository eventRepository;
+    private UserRepository userRepository;
+    private CanvasClient canvasClient;
+    private TecsupSyncService service;
+
+    private final List<Task> stored = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        taskRepository = mock(TaskRepository.class);
+        eventRepository = mock(EventRepository.class);
+        userRepository = mock(UserRepository.class);
+        canvasClient = mock(CanvasClient.class);
+
+        service = new TecsupSyncService(eventRepository, taskRepository, userRepository, null,
+                mock(ChatbotContextService.class), mock(ChatRelevanceIndex.class), canvasClient,
+                mock(CustomUserDetailsService.class), mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(service, "parallelism", 2);
+        ReflectionTestUtils.setField(service, "jobWorkers", 1);
+        ReflectionTestUtils.setField(service, "deadlineMillis", 5_000L);
+        service.init();
+
+        User user = User.builder().id(1L).email("alumno@tecsup.edu.pe").tecsupToken(TOKEN)
+                .tipo(User.UserType.STUDENT).preferences(new HashMap<>()).build();
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(taskRepository.findByUserIdAndSource(1L, "tecsup")).thenAnswer(invocation -> stored);
+        when(eventRepository.findByUserIdAndSource(1L, "tecsup")).thenReturn(List.of());
+
+        stored.add(task(1L, "10"));
+        stored.add(task(2L, "99"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void deletesTasksThatDisappearedWhenEveryCourseWasRead() {
+        courses(course(100));
+        assignments(100, assignment(10));
+        noEvents();
+
+        SyncResponse response = service.runSync(1L, (done, total) -> {
+        });
+
+        assertThat(response.getCursosConError()).isEmpty();
+        verify(taskRepository).deleteAllInBatch(List.of(stored.get(1)));
+    }
+
+    @Test
+    void keepsTasksThatDisappearedWhenACourseFailed() {
+        courses(course(100), course(200));
+        assignments(100, assignment(10));
+        when(canvasClient.forEachPage(eq("/courses/200/assignments"), anyString(), any()))
+                .thenThrow(new HttpServerErrorException(HttpStatus.BAD_GATEWAY));
+        noEvents();
+
+        SyncResponse response = service.runSync(1L, (done, total) -> {
+        });
+
+        assertThat(response.getCursosConError()).hasSize(1);
+        verify(taskRepository, never()).deleteAllInBatch(anyList());
+    }
+
+    @Test
+    void unchangedTasksAreNotRewritten() {
+        courses(course(100));
+        assignments(100, assignment(10));
+        noEvents();
+        service.runSync(1L, (done, total) -> {
+        });
+        verify(taskRepository).saveAll(List.of(stored.get(0)));
+
+        // Segunda sincronización: el hash guardado coincide con lo recibido
+        service.runSync(1L, (done, total) -> {
+        });
+
+        verify(taskRepository, times(1)).saveAll(anyList());
+    }
+
+    @Test
+    void anotherSyncDoesNotConsumeThisSyncsDeadline() throws Exception {
+        restart(1, 2, 2_000L);
+        courses(course(100));
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            slowStarted.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return 0;
+        }).when(canvasClient).forEachPage(eq("/courses/100/assignments"), anyString(), any());
+        noEvents();
+
+        User other = User.builder().id(2L).email("otro@tecsup.edu.pe").tecsupToken("other-token")
+                .tipo(User.UserType.STUDENT).preferences(new HashMap<>()).build();
+        when(userRepository.findById(2L)).thenReturn(Optional.of(other));
+        when(taskRepository.findByUserIdAndSource(2L, "tecsup")).thenReturn(List.of());
+        when(eventRepository.findByUserIdAndSource(2L, "tecsup")).thenReturn(List.of());
+        when(canvasClient.getAll("/courses", "other-token")).thenReturn(List.of(course(200)));
+        assignments(200, assignment(20));
+
+        ExecutorService slowSync = Executors.newSingleThreadExecutor();
+        try {
+            Future<SyncResponse> slow = slowSync.submit(() -> service.runSync(1L, (done, total) -> {
+            }));
+            assertThat(slowStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // Con un pool compartido de "parallelism" hilos este curso esperaría detrás del lento
+            SyncResponse fast = service.runSync(2L, (done, total) -> {
+            });
+            assertThat(fast.getCursosConError()).isEmpty();
+            assertThat(fast.getTareasSincronizadas()).isEqualTo(1);
+
+            release.countDown();
+            assertThat(slow.get(5, TimeUnit.SECONDS).getCursosConError()).isEmpty();
+        } finally {
+            release.countDown();
+            slowSync.shutdownNow();
+        }
+    }
+
+    @Test
+    void coursesThatCouldNotStartBeforeTheDeadlineAreReportedAndNotFetched() {
+        restart(1, 1, 300L);
+        courses(course(100), course(200));
+        doAnswer(invocation -> {
+            new CountDownLatch(1).await(5, TimeUnit.SECONDS);
+            return 0;
+        }).when(canvasClient).forEachPage(eq("/courses/100/assignments"), anyString(), any());
+        noEvents();
+
+        SyncResponse response = service.runSync(1L, (done, total) -> {
+        });
+
+        assertThat(response.getCursosConError())
+                .extracting(SyncResponse.CourseError::getCourseId)
+                .containsExactly(100L, 200L);
+        verify(canvasClient, never()).forEachPage(eq("/courses/200/assignments"), anyString(), any());
+        verify(taskRepository, never()).deleteAllInBatch(anyList());
+    }
+
+    private void restart(int parallelism, int workers, long deadlineMillis) {
+        service.shutdown();
+        ReflectionTestUtils.setField(service, "parallelism", parallelism);
+        ReflectionTestUtils.setField(service, "jobWorkers", workers);
+        ReflectionTestUtils.setField(service, "deadlineMillis", deadlineMillis);
+        service.init();
+    }
+
+    @SafeVarargs
+    private void courses(Map<String, Object>... courses) {
+        when(canvasClient.getAll("/courses", TOKEN)).thenReturn(List.of(courses));
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    private void assignments(int courseId, Map<String, Object>... assignments) {
+        doAnswer(invocation -> {
+            ((Consumer<List<Map<String, Object>>>) invocation.getArgument(2)).accept(List.of(assignments));
+            return assignments.length;
+        }).when(canvasClient).forEachPage(eq("/courses/" + courseId + "/assignments"), anyString(), any());
+    }
+
+    private void noEvents() {
+        when(canvasClient.forEachPage(startsWith("/calendar_events"), anyString(), any()))
+                .thenReturn(0);
+    }
+
+    private static Map<String, Object> course(int id) {
+        return Map.of("id", id, "name", "Curso " + id);
+    }
+
+    private static Map<String, Object> assignment(int id) {
+        return Map.of("id", id, "name", "Tarea " + id, "due_at", LocalDate.now().plusDays(3) + "T23:59:00Z");
+    }
+
+    private static Task task(Long id, String externalId) {
+        return Task.builder().id(id).tecsupExternalId(externalId).titulo("Tarea " + externalId)
+                .source("tecsup").completed(false).contentHash("old").build();
+    }
+}
@@ -0,0 +1,68 @@
+package com.tecsup.productivity.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Bm25IndexTest {
+
+    private Bm25Index index;
+
+    @BeforeEach
+    void setUp() {
+        index = new Bm25Index();
+        index.put("t1", "Informe de laboratorio de redes");
+        index.put("t2", "Examen parcial de matemática");
+        index.put("t3", "Proyecto final de redes y seguridad de redes");
+    }
+
+    @Test
+    void ranksDocumentsByRelevance() {
+        List<Bm25Index.ScoredDocument> results = index.search("redes", 10);
+
+        assertThat(results).extracting(Bm25Index.ScoredDocument::getKey).containsExactly("t3", "t1");
+        assertThat(results.get(0).getScore()).isGreaterThan(results.get(1).getScore());
+    }
+
+    @Test
+    void respectsTheLimit() {
+        assertThat(index.search("redes", 1)).extracting(Bm25Index.ScoredDocument::getKey).containsExactly("t3");
+    }
+
+    @Test
+    void removedDocumentsAreNoLongerFound() {
+        index.remove("t3");
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.search("redes seguridad", 10))
+                .extracting(Bm25Index.ScoredDocument::getKey).containsExactly("t1");
+    }
+
+    @Test
+    void putReplacesThePreviousText() {
+        index.put("t2", "Examen de física");
+
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.search("matemática", 10)).isEmpty();
+        assertThat(index.search("física", 10)).extracting(Bm25Index.ScoredDocument::getKey).containsExactly("t2");
+    }
+
+    @Test
+    void matchesIgnoringCaseAndAccents() {
+        assertThat(index.search("MATEMATICA", 10)).extracting(Bm25Index.ScoredDocument::getKey).containsExactly("t2");
+    }
+
+    @Test
+    void queriesWithOnlyStopwordsReturnNothing() {
+        assertThat(index.search("de la y", 10)).isEmpty();
+    }
+
+    @Test
+    void tokenizeDropsStopwordsAndKeepsEnye() {
+        assertThat(Bm25Index.tokenize("La tarea de Diseño para mañana"))
+                .containsExactly("tarea", "diseño", "mañana");
+    }
+}
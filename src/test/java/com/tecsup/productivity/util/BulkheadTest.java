@@ -0,0 +1,111 @@
+package com.tecsup.productivity.util;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BulkheadTest {
+
+    @Test
+    void rejectsWhenConcurrencyAndQueueAreFull() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 0, Duration.ofSeconds(1));
+        Sinks.One<String> first = Sinks.one();
+        bulkhead.execute(first::asMono).subscribe();
+
+        assertThatThrownBy(() -> bulkhead.execute(() -> Mono.just("second")).block())
+                .isInstanceOf(Bulkhead.BulkheadFullException.class);
+
+        first.tryEmitValue("done");
+        assertThat(inFlight(bulkhead)).isZero();
+        assertThat(bulkhead.execute(() -> Mono.just("third")).block()).isEqualTo("third");
+    }
+
+    @Test
+    void waiterGetsThePermitWhenTheRunningCallCompletes() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1, Duration.ofSeconds(5));
+        Sinks.One<String> first = Sinks.one();
+        bulkhead.execute(first::asMono).subscribe();
+
+        AtomicReference<String> second = new AtomicReference<>();
+        bulkhead.execute(() -> Mono.just("second")).subscribe(second::set);
+        assertThat(waiting(bulkhead)).isEqualTo(1);
+        assertThat(second.get()).isNull();
+
+        first.tryEmitValue("done");
+
+        assertThat(second.get()).isEqualTo("second");
+        assertThat(waiting(bulkhead)).isZero();
+        assertThat(inFlight(bulkhead)).isZero();
+    }
+
+    @Test
+    void waitTimeoutRejectsAndLeavesNoPermitBehind() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1, Duration.ofMillis(50));
+        Sinks.One<String> first = Sinks.one();
+        bulkhead.execute(first::asMono).subscribe();
+
+        assertThatThrownBy(() -> bulkhead.execute(() -> Mono.just("second")).block())
+                .isInstanceOf(Bulkhead.BulkheadFullException.class);
+        assertThat(waiting(bulkhead)).isZero();
+
+        first.tryEmitValue("done");
+        assertThat(inFlight(bulkhead)).isZero();
+        assertThat(bulkhead.getStats()).containsEntry("rejectedCount", 1L);
+    }
+
+    @Test
+    void cancellingARunningCallReleasesItsPermit() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 0, Duration.ofSeconds(1));
+        Disposable running = bulkhead.execute(() -> Mono.never()).subscribe();
+        assertThat(inFlight(bulkhead)).isEqualTo(1);
+
+        running.dispose();
+
+        assertThat(inFlight(bulkhead)).isZero();
+        assertThat(bulkhead.execute(() -> Mono.just("next")).block()).isEqualTo("next");
+    }
+
+    @Test
+    void cancelledWaiterDoesNotKeepAPermit() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1, Duration.ofSeconds(5));
+        Sinks.One<String> first = Sinks.one();
+        bulkhead.execute(first::asMono).subscribe();
+
+        Disposable waiter = bulkhead.execute(() -> Mono.just("second")).subscribe();
+        assertThat(waiting(bulkhead)).isEqualTo(1);
+        waiter.dispose();
+        assertThat(waiting(bulkhead)).isZero();
+
+        first.tryEmitValue("done");
+        assertThat(inFlight(bulkhead)).isZero();
+    }
+
+    @Test
+    void streamReleasesItsPermitOnCompletionAndError() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 0, Duration.ofSeconds(1));
+
+        assertThat(bulkhead.executeMany(() -> Flux.just(1, 2, 3)).collectList().block())
+                .containsExactly(1, 2, 3);
+        assertThatThrownBy(() -> bulkhead.executeMany(
+                () -> Flux.error(new IllegalStateException("boom"))).blockLast())
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(inFlight(bulkhead)).isZero();
+    }
+
+    private static int inFlight(Bulkhead bulkhead) {
+        return (Integer) bulkhead.getStats().get("inFlight");
+    }
+
+    private static int waiting(Bulkhead bulkhead) {
+        return (Integer) bulkhead.getStats().get("waiting");
+    }
+}
@@ -0,0 +1,43 @@
+package com.tecsup.productivity.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentileIsMinusOneWithoutSamples() {
+        LatencyHistogram histogram = new LatencyHistogram("gemini-flash", 10);
+
+        assertThat(histogram.percentile(0.5)).isEqualTo(-1);
+        assertThat(histogram.getStats()).doesNotContainKey("p50");
+    }
+
+    @Test
+    void percentilesAreNearestRankOverTheWindow() {
+        LatencyHistogram histogram = new LatencyHistogram("gemini-flash", 100);
+        LongStream.rangeClosed(1, 100).map(i -> 101 - i).forEach(histogram::record);
+
+        assertThat(histogram.percentile(0.5)).isEqualTo(50);
+        assertThat(histogram.percentile(0.9)).isEqualTo(90);
+        assertThat(histogram.percentile(1.0)).isEqualTo(100);
+        assertThat(histogram.getStats()).containsEntry("p99", 99L).containsEntry("max", 100L);
+    }
+
+    @Test
+    void onlyTheLatestSamplesCount() {
+        LatencyHistogram histogram = new LatencyHistogram("gemini-flash", 3);
+        histogram.record(5_000);
+        histogram.record(4_000);
+        histogram.record(100);
+        histogram.record(200);
+        histogram.record(300);
+
+        assertThat(histogram.getSampleCount()).isEqualTo(3);
+        assertThat(histogram.percentile(1.0)).isEqualTo(300);
+        assertThat(histogram.getStats()).containsEntry("totalCount", 5L);
+    }
+}
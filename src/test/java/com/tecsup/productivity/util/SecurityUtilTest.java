@@ -0,0 +1,109 @@
+package com.tecsup.productivity.util;
+
+import com.tecsup.productivity.entity.User;
+import com.tecsup.productivity.repository.UserRepository;
+import com.tecsup.productivity.security.CustomUserDetailsService;
+import com.tecsup.productivity.security.UserPrincipal;
+import com.tecsup.productivity.security.UserSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SecurityUtilTest {
+
+    private UserRepository userRepository;
+    private CustomUserDetailsService userDetailsService;
+    private SecurityUtil securityUtil;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        userDetailsService = mock(CustomUserDetailsService.class);
+        securityUtil = new SecurityUtil(userRepository, userDetailsService);
+
+        UserPrincipal principal = new UserPrincipal(7L, "alumno@tecsup.edu.pe", User.UserType.STUDENT, null);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, List.of()));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void snapshotIsResolvedOncePerRequest() {
+        when(userDetailsService.loadSnapshotById(7L)).thenReturn(UserSnapshot.from(user()));
+
+        UserSnapshot first = securityUtil.getCurrentUserSnapshot();
+        UserSnapshot second = securityUtil.getCurrentUserSnapshot();
+
+        assertThat(second).isSameAs(first);
+        verify(userDetailsService, times(1)).loadSnapshotById(7L);
+    }
+
+    @Test
+    void currentUserIsAFreshEntityOnEveryCall() {
+        when(userRepository.findById(7L)).thenAnswer(invocation -> Optional.of(user()));
+
+        User first = securityUtil.getCurrentUser();
+        first.getPreferences().put("chatEnabled", false);
+        User second = securityUtil.getCurrentUser();
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getPreferences()).containsEntry("chatEnabled", true);
+    }
+
+    @Test
+    void currentUserIdComesFromTheTokenWithoutLoadingTheUser() {
+        assertThat(securityUtil.getCurrentUserId()).isEqualTo(7L);
+
+        verify(userRepository, times(0)).findById(7L);
+        verify(userDetailsService, times(0)).loadSnapshotById(7L);
+    }
+
+    @Test
+    void snapshotDoesNotChangeWhenTheEntityIsModified() {
+        User user = user();
+        UserSnapshot snapshot = UserSnapshot.from(user);
+
+        user.getPreferences().put("chatEnabled", false);
+        user.setTecsupToken(null);
+        user.setName("Otro");
+
+        assertThat(snapshot.isChatEnabled()).isTrue();
+        assertThat(snapshot.isTecsupSync()).isTrue();
+        assertThat(snapshot.getName()).isEqualTo("Alumno");
+    }
+
+    private static User user() {
+        Map<String, Object> preferences = new HashMap<>();
+        preferences.put("chatEnabled", true);
+        return User.builder()
+                .id(7L)
+                .email("alumno@tecsup.edu.pe")
+                .name("Alumno")
+                .tipo(User.UserType.STUDENT)
+                .tecsupToken("token")
+                .preferences(preferences)
+                .build();
+    }
+}
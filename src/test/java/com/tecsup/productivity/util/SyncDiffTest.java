@@ -0,0 +1,107 @@
+package com.tecsup.productivity.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SyncDiffTest {
+
+    private record Row(Long id, String externalId, String content, boolean completed) {
+    }
+
+    private static final Comparator<Row> KEEP_COMPLETED_THEN_LOWEST_ID =
+            Comparator.comparing((Row r) -> !r.completed()).thenComparing(Row::id);
+
+    private static SyncDiff<Row> diff(List<Row> existing, List<Row> fetched) {
+        return SyncDiff.compute(existing, fetched, Row::externalId, Row::content, KEEP_COMPLETED_THEN_LOWEST_ID);
+    }
+
+    private static Row stored(long id, String externalId, String content) {
+        return new Row(id, externalId, content, false);
+    }
+
+    private static Row fetched(String externalId, String content) {
+        return new Row(null, externalId, content, false);
+    }
+
+    @Test
+    void splitsIntoInsertsUpdatesAndDeletes() {
+        Row unchanged = stored(1, "a", "v1");
+        Row changed = stored(2, "b", "v1");
+        Row gone = stored(3, "c", "v1");
+        Row newB = fetched("b", "v2");
+        Row newD = fetched("d", "v1");
+
+        SyncDiff<Row> diff = diff(List.of(unchanged, changed, gone), List.of(fetched("a", "v1"), newB, newD));
+
+        assertThat(diff.getInserts()).containsExactly(newD);
+        assertThat(diff.getUpdates()).containsExactly(new SyncDiff.Update<>(changed, newB));
+        assertThat(diff.getDeletes()).containsExactly(gone);
+        assertThat(diff.getDuplicates()).isEmpty();
+    }
+
+    @Test
+    void duplicatesKeepTheFirstRowByKeepOrder() {
+        Row pending = stored(1, "a", "v1");
+        Row completed = new Row(5L, "a", "v1", true);
+        Row newer = stored(7, "a", "v1");
+
+        SyncDiff<Row> diff = diff(List.of(pending, completed, newer), List.of(fetched("a", "v2")));
+
+        assertThat(diff.getDuplicates()).containsExactlyInAnyOrder(pending, newer);
+        assertThat(diff.getUpdates()).extracting(SyncDiff.Update::current).containsExactly(completed);
+        assertThat(diff.getInserts()).isEmpty();
+        assertThat(diff.getDeletes()).isEmpty();
+    }
+
+    @Test
+    void duplicatesWithoutACompletedRowKeepTheLowestId() {
+        Row first = stored(2, "a", "v1");
+        Row second = stored(9, "a", "v1");
+
+        SyncDiff<Row> diff = diff(List.of(second, first), List.of(fetched("a", "v1")));
+
+        assertThat(diff.getDuplicates()).containsExactly(second);
+        assertThat(diff.getUpdates()).isEmpty();
+    }
+
+    @Test
+    void storedRowsWithoutExternalIdAreDeleted() {
+        Row orphan = stored(1, null, "v1");
+
+        SyncDiff<Row> diff = diff(List.of(orphan), List.of());
+
+        assertThat(diff.getDeletes()).containsExactly(orphan);
+        assertThat(diff.getDuplicates()).isEmpty();
+    }
+
+    @Test
+    void fetchedItemsWithoutExternalIdAreIgnored() {
+        SyncDiff<Row> diff = diff(List.of(), List.of(fetched(null, "v1")));
+
+        assertThat(diff.getInserts()).isEmpty();
+    }
+
+    @Test
+    void repeatedFetchedIdsAreInsertedOnce() {
+        Row first = fetched("a", "v1");
+
+        SyncDiff<Row> diff = diff(List.of(), List.of(first, fetched("a", "v2")));
+
+        assertThat(diff.getInserts()).containsExactly(first);
+    }
+
+    @Test
+    void repeatedFetchedIdsDoNotDeleteTheStoredRow() {
+        Row current = stored(1, "a", "v1");
+
+        SyncDiff<Row> diff = diff(List.of(current), List.of(fetched("a", "v1"), fetched("a", "v2")));
+
+        assertThat(diff.getUpdates()).isEmpty();
+        assertThat(diff.getInserts()).isEmpty();
+        assertThat(diff.getDeletes()).isEmpty();
+    }
+}
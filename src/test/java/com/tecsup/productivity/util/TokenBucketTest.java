@@ -0,0 +1,52 @@
+package com.tecsup.productivity.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    @Test
+    void startsFullAndAllowsABurstUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(3, 0.001);
+
+        assertThat(bucket.tryConsume()).isTrue();
+        assertThat(bucket.tryConsume()).isTrue();
+        assertThat(bucket.tryConsume()).isTrue();
+        assertThat(bucket.tryConsume()).isFalse();
+    }
+
+    @Test
+    void refillsOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1, 20);
+        assertThat(bucket.tryConsume()).isTrue();
+        assertThat(bucket.tryConsume()).isFalse();
+
+        Thread.sleep(80);
+
+        assertThat(bucket.tryConsume()).isTrue();
+    }
+
+    @Test
+    void neverExceedsCapacity() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(2, 1000);
+
+        Thread.sleep(20);
+
+        assertThat(bucket.getAvailableTokens()).isEqualTo(2);
+    }
+
+    @Test
+    void estimatesTimeUntilTokensAreAvailable() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+        assertThat(bucket.nanosUntilAvailable(1)).isZero();
+
+        bucket.tryConsume();
+
+        long wait = bucket.nanosUntilAvailable(2);
+        assertThat(wait).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(1900))
+                .isLessThanOrEqualTo(TimeUnit.SECONDS.toNanos(2));
+    }
+}